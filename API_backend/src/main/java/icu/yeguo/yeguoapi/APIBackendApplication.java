@@ -4,10 +4,12 @@ import org.apache.dubbo.config.spring.context.annotation.EnableDubbo;
 import org.mybatis.spring.annotation.MapperScan;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
 @MapperScan("icu.yeguo.yeguoapi.mapper")
 @EnableDubbo
+@EnableScheduling
 public class APIBackendApplication {
 
     public static void main(String[] args) {
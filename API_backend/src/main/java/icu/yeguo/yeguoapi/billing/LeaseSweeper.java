@@ -0,0 +1,60 @@
+package icu.yeguo.yeguoapi.billing;
+
+import icu.yeguo.apicommon.service.CommonService;
+import icu.yeguo.yeguoapi.mapper.BillingLedgerMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 超时租约退回
+ * 网关正常关闭或空闲时会结清租约，异常退出时租出的金币留在租约中；
+ * 超过 expire-seconds 仍未结清的租约按租出的数额整笔退回给用户，已在网关本地消费的部分不再追回
+ */
+@Slf4j
+@Component
+public class LeaseSweeper {
+
+    private static final int BATCH_SIZE = 100;
+
+    @Autowired
+    private BillingLedgerMapper billingLedgerMapper;
+
+    @Autowired
+    private CommonService commonService;
+
+    private final long expireMillis;
+
+    public LeaseSweeper(@Value("${yeguo.billing.lease.expire-seconds:3600}") long expireSeconds) {
+        this.expireMillis = TimeUnit.SECONDS.toMillis(expireSeconds);
+    }
+
+    @Scheduled(fixedDelayString = "${yeguo.billing.lease.sweep-interval:60000}")
+    public void sweep() {
+        try {
+            Date before = new Date(System.currentTimeMillis() - expireMillis);
+            List<String> leaseIds;
+            int refunded;
+            do {
+                leaseIds = billingLedgerMapper.selectExpiredLeaseIds(before, BATCH_SIZE);
+                refunded = 0;
+                for (String leaseId : leaseIds) {
+                    // 退回金币和标记流水在同一个事务中完成 期间被网关结清的租约不会退回
+                    if (commonService.returnGoldCoins(leaseId)) {
+                        refunded++;
+                        log.warn("租约超时未结清，已退回====" + leaseId);
+                    }
+                }
+                // 整批都未能退回(用户已删除等)时停止，避免反复查询同一批
+            } while (leaseIds.size() == BATCH_SIZE && refunded > 0);
+        } catch (Exception e) {
+            log.error("超时租约退回失败", e);
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package icu.yeguo.yeguoapi.constant;
 
+import icu.yeguo.apicommon.constant.SignatureConstant;
+
 public interface SecretConstant {
     String PASSWORD_SECRET_KEY = "野果_API平台";
-    String SIGNATURE_KEY =  "野果API";
+    String SIGNATURE_KEY = SignatureConstant.SIGNATURE_KEY;
 }
@@ -0,0 +1,109 @@
+package icu.yeguo.yeguoapi.counter;
+
+import icu.yeguo.yeguoapi.mapper.InterfaceInfoMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 接口调用次数写后聚合
+ * 调用时只在内存中累加，定时把各接口的增量合并成一条 UPDATE 落库，关闭前再落库一次
+ */
+@Slf4j
+@Component
+public class InvokingCountAggregator {
+
+    private final ConcurrentHashMap<Long, LongAdder> counters = new ConcurrentHashMap<>();
+
+    @Autowired
+    private InterfaceInfoMapper interfaceInfoMapper;
+
+    /**
+     * 上次成功落库的时间
+     */
+    private volatile long lastFlushTime = System.currentTimeMillis();
+
+    public InvokingCountAggregator(MeterRegistry meterRegistry) {
+        Gauge.builder("yeguo.invoking.flush.lag", this, aggregator -> aggregator.getFlushLag())
+                .description("距上次调用次数落库的时间(ms)")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+        Gauge.builder("yeguo.invoking.pending", this, aggregator -> aggregator.getPendingCount())
+                .description("尚未落库的调用次数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 累加一次调用
+     *
+     * @return 该接口尚未落库的调用次数
+     */
+    public long increment(long interfaceInfoId) {
+        LongAdder adder = counters.computeIfAbsent(interfaceInfoId, id -> new LongAdder());
+        adder.increment();
+        return adder.sum();
+    }
+
+    /**
+     * 累加多次调用，网关批量上报时使用
+     */
+    public void add(long interfaceInfoId, long count) {
+        if (count > 0) {
+            counters.computeIfAbsent(interfaceInfoId, id -> new LongAdder()).add(count);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${yeguo.invoking.flush-interval:1000}")
+    public synchronized void flush() {
+        Map<Long, Long> deltas = new HashMap<>();
+        counters.forEach((interfaceInfoId, adder) -> {
+            long delta = adder.sumThenReset();
+            if (delta > 0) {
+                deltas.put(interfaceInfoId, delta);
+            }
+        });
+        if (deltas.isEmpty()) {
+            lastFlushTime = System.currentTimeMillis();
+            return;
+        }
+        try {
+            interfaceInfoMapper.incrementInvokingCounts(deltas);
+            lastFlushTime = System.currentTimeMillis();
+            log.info("接口调用次数落库成功====" + deltas.size() + "个接口");
+        } catch (Exception e) {
+            // 落库失败 把增量加回去 下次再试
+            deltas.forEach((interfaceInfoId, delta) ->
+                    counters.computeIfAbsent(interfaceInfoId, id -> new LongAdder()).add(delta));
+            log.error("接口调用次数落库失败", e);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        flush();
+        if (getPendingCount() > 0) {
+            log.error("关闭前接口调用次数未能全部落库，丢失：" + getPendingCount());
+        }
+    }
+
+    public long getFlushLag() {
+        return System.currentTimeMillis() - lastFlushTime;
+    }
+
+    public long getPendingCount() {
+        long pending = 0;
+        for (LongAdder adder : counters.values()) {
+            pending += adder.sum();
+        }
+        return pending;
+    }
+}
@@ -0,0 +1,64 @@
+package icu.yeguo.yeguoapi.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import icu.yeguo.yeguoapi.model.entity.BillingLedger;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+/**
+* @author yeguo
+* @description 针对表【billing_ledger(扣费流水表)】的数据库操作Mapper
+* @Entity icu.yeguo.yeguoapi.model.entity.BillingLedger
+*/
+public interface BillingLedgerMapper extends BaseMapper<BillingLedger> {
+    /**
+     * 写入扣费流水，请求id已存在时忽略
+     *
+     * @return 1 新写入，0 重复请求
+     */
+    int insertIgnore(BillingLedger billingLedger);
+
+    /**
+     * 多行写入扣费流水，请求id已存在的行忽略
+     *
+     * @return 新写入的行数
+     */
+    int insertIgnoreBatch(@Param("ledgers") List<BillingLedger> ledgers);
+
+    /**
+     * 查询已存在流水的请求id
+     */
+    List<String> selectExistingRequestIds(@Param("requestIds") Collection<String> requestIds);
+
+    /**
+     * 把未返还的流水标记为已返还，事务提交前锁住该流水，并发返还同一请求时只有一个成功
+     *
+     * @return 0 表示流水不存在或已返还
+     */
+    int markRefunded(String requestId);
+
+    /**
+     * 把未结清的租约标记为已结清，已结清或已被退回的租约不变
+     *
+     * @return 本次结清的租约数
+     */
+    int settleLeases(@Param("userId") Long userId, @Param("leaseIds") Collection<String> leaseIds);
+
+    /**
+     * 租出超过指定时间仍未结清的租约id，网关异常退出时留下
+     */
+    List<String> selectExpiredLeaseIds(@Param("before") Date before, @Param("limit") int limit);
+
+    /**
+     * 按请求id查询流水
+     */
+    BillingLedger selectByRequestId(String requestId);
+
+    /**
+     * 最近一天扣费次数最多的用户的 accessKey，不含余额租约流水
+     */
+    List<String> selectHotAccessKeys(@Param("limit") int limit);
+}
@@ -2,6 +2,9 @@ package icu.yeguo.yeguoapi.mapper;
 
 import icu.yeguo.yeguoapi.model.entity.InterfaceInfo;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Map;
 
 /**
 * @author yeguo
@@ -10,7 +13,17 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 * @Entity com.yeguo.yeguoapi.model.entity.InterfaceInfo
 */
 public interface InterfaceInfoMapper extends BaseMapper<InterfaceInfo> {
+    /**
+     * 路由版本号：未删除接口的数量 + 路由相关字段的校验和
+     */
+    String selectRouteVersion();
 
+    /**
+     * 批量累加调用次数，一条语句更新所有接口
+     *
+     * @param deltas 接口id -> 调用次数增量
+     */
+    int incrementInvokingCounts(@Param("deltas") Map<Long, Long> deltas);
 }
 
 
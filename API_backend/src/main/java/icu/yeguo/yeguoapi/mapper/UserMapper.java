@@ -2,6 +2,11 @@ package icu.yeguo.yeguoapi.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import icu.yeguo.apicommon.model.entity.User;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 
 /**
 * @author yeguo
@@ -10,7 +15,35 @@ import icu.yeguo.apicommon.model.entity.User;
 * @Entity com.yeguo.apicommon.model.entity.User
 */
 public interface UserMapper extends BaseMapper<User> {
+    /**
+     * 条件扣减金币，余额不足时不更新
+     *
+     * @return 1 扣减成功，0 余额不足或用户不存在
+     */
+    int deductGoldCoin(@Param("userId") Long userId, @Param("amount") Long amount);
+
+    /**
+     * 增加金币
+     */
+    int addGoldCoin(@Param("userId") Long userId, @Param("amount") Long amount);
+
+    /**
+     * 查询余额并锁定该行，用于在同一事务中按余额决定扣减数额
+     */
+    Long selectGoldCoinForUpdate(@Param("userId") Long userId);
+
+    /**
+     * 批量查询余额并锁定这些行，按id顺序加锁，结果只有 id 和 goldCoin
+     */
+    List<User> selectGoldCoinsForUpdate(@Param("userIds") Collection<Long> userIds);
 
+    /**
+     * 多行条件扣减金币，一条 UPDATE 完成，余额不足的用户不更新
+     *
+     * @param amounts 用户id到扣减数额
+     * @return 扣减成功的用户数
+     */
+    int deductGoldCoins(@Param("amounts") Map<Long, Long> amounts);
 }
 
 
@@ -23,4 +23,9 @@ public class InterfaceInfoUpdateRequest implements Serializable {
     private Long invokingCount;
     private String avatarUrl;
     private Long requiredGoldCoins;
+    private Integer rateLimit;
+    private Integer cacheTtl;
+    private Integer isIdempotent;
+    private String upstreamPool;
+    private Integer compressible;
 }
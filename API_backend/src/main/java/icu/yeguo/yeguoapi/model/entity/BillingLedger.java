@@ -0,0 +1,69 @@
+package icu.yeguo.yeguoapi.model.entity;
+
+import com.baomidou.mybatisplus.annotation.*;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.Date;
+import lombok.Data;
+
+/**
+ * 扣费流水，只追加，按网关请求id幂等
+ * @TableName billing_ledger
+ */
+@TableName(value ="billing_ledger")
+@Data
+public class BillingLedger implements Serializable {
+    /**
+     * 自增长id
+     */
+    @TableId(value = "id", type = IdType.AUTO)
+    private Long id;
+
+    /**
+     * 网关请求id
+     */
+    @TableField(value = "request_id")
+    private String requestId;
+
+    /**
+     * 用户id
+     */
+    @TableField(value = "user_id")
+    private Long userId;
+
+    /**
+     * 接口id，余额租约和租约归还为 0
+     */
+    @TableField(value = "interface_info_id")
+    private Long interfaceInfoId;
+
+    /**
+     * 扣除金币数
+     */
+    @TableField(value = "amount")
+    private Long amount;
+
+    /**
+     * 状态（0 已扣费 1 已返还 2 租约已结清）
+     * 租约流水租出时为 0，网关归还时结清为 2，超时未结清由后台退回为 1；租约归还流水为 1
+     */
+    @TableField(value = "status")
+    private Integer status;
+
+    /**
+     * 创建时间
+     */
+    @TableField(value = "create_time")
+    private Date createTime;
+
+    /**
+     * 更新时间
+     */
+    @TableField(value = "update_time")
+    private Date updateTime;
+
+    @Serial
+    @TableField(exist = false)
+    private static final long serialVersionUID = 1L;
+}
@@ -104,6 +104,36 @@ public class InterfaceInfo implements Serializable {
     @TableField(value = "required_gold_coins")
     private Long requiredGoldCoins;
 
+    /**
+     * 每秒最大请求数 0-不限流
+     */
+    @TableField(value = "rate_limit")
+    private Integer rateLimit;
+
+    /**
+     * 响应缓存时间(s) 0-不缓存
+     */
+    @TableField(value = "cache_ttl")
+    private Integer cacheTtl;
+
+    /**
+     * 是否幂等 0-否 1-是
+     */
+    @TableField(value = "is_idempotent")
+    private Integer isIdempotent;
+
+    /**
+     * 上游实例池，对应网关 yeguo.gateway.upstream.pools 中的名称
+     */
+    @TableField(value = "upstream_pool")
+    private String upstreamPool;
+
+    /**
+     * 是否压缩响应 0-否 1-是，图片等已压缩的响应设为 0
+     */
+    @TableField(value = "compressible")
+    private Integer compressible;
+
     /**
      * 请求头
      */
@@ -25,6 +25,11 @@ public class InterfaceInfoVO implements Serializable {
     private Long invokingCount;
     private String avatarUrl;
     private Long requiredGoldCoins;
+    private Integer rateLimit;
+    private Integer cacheTtl;
+    private Integer isIdempotent;
+    private String upstreamPool;
+    private Integer compressible;
     private String requestHeader;
     private String responseHeader;
     private Date createTime;
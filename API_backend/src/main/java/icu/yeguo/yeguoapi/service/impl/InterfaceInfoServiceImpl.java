@@ -60,6 +60,11 @@ public class InterfaceInfoServiceImpl extends ServiceImpl<InterfaceInfoMapper, I
         interfaceInfo.setInvokingCount(interfaceInfoRegisterRequest.getInvokingCount());
         interfaceInfo.setAvatarUrl(interfaceInfoRegisterRequest.getAvatarUrl());
         interfaceInfo.setRequiredGoldCoins(interfaceInfoRegisterRequest.getRequiredGoldCoins());
+        interfaceInfo.setRateLimit(interfaceInfoRegisterRequest.getRateLimit());
+        interfaceInfo.setCacheTtl(interfaceInfoRegisterRequest.getCacheTtl());
+        interfaceInfo.setIsIdempotent(interfaceInfoRegisterRequest.getIsIdempotent());
+        interfaceInfo.setUpstreamPool(interfaceInfoRegisterRequest.getUpstreamPool());
+        interfaceInfo.setCompressible(interfaceInfoRegisterRequest.getCompressible());
 
         int result;
         try {
@@ -118,6 +123,11 @@ public class InterfaceInfoServiceImpl extends ServiceImpl<InterfaceInfoMapper, I
         interfaceInfo.setInvokingCount(interfaceInfoUpdateRequest.getInvokingCount());
         interfaceInfo.setAvatarUrl(interfaceInfoUpdateRequest.getAvatarUrl());
         interfaceInfo.setRequiredGoldCoins(interfaceInfoUpdateRequest.getRequiredGoldCoins());
+        interfaceInfo.setRateLimit(interfaceInfoUpdateRequest.getRateLimit());
+        interfaceInfo.setCacheTtl(interfaceInfoUpdateRequest.getCacheTtl());
+        interfaceInfo.setIsIdempotent(interfaceInfoUpdateRequest.getIsIdempotent());
+        interfaceInfo.setUpstreamPool(interfaceInfoUpdateRequest.getUpstreamPool());
+        interfaceInfo.setCompressible(interfaceInfoUpdateRequest.getCompressible());
 
         int result;
         try {
@@ -210,6 +220,11 @@ public class InterfaceInfoServiceImpl extends ServiceImpl<InterfaceInfoMapper, I
         interfaceInfoVO.setInvokingCount(interfaceInfo.getInvokingCount());
         interfaceInfoVO.setAvatarUrl(interfaceInfo.getAvatarUrl());
         interfaceInfoVO.setRequiredGoldCoins(interfaceInfo.getRequiredGoldCoins());
+        interfaceInfoVO.setRateLimit(interfaceInfo.getRateLimit());
+        interfaceInfoVO.setCacheTtl(interfaceInfo.getCacheTtl());
+        interfaceInfoVO.setIsIdempotent(interfaceInfo.getIsIdempotent());
+        interfaceInfoVO.setUpstreamPool(interfaceInfo.getUpstreamPool());
+        interfaceInfoVO.setCompressible(interfaceInfo.getCompressible());
         interfaceInfoVO.setRequestHeader(interfaceInfo.getRequestHeader());
         interfaceInfoVO.setResponseHeader(interfaceInfo.getResponseHeader());
         interfaceInfoVO.setCreateTime(interfaceInfo.getCreateTime());
@@ -6,6 +6,7 @@ import cn.hutool.crypto.symmetric.SymmetricCrypto;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import icu.yeguo.apicommon.model.entity.User;
+import icu.yeguo.apicommon.service.GatewayCacheService;
 import icu.yeguo.yeguoapi.common.ResponseCode;
 import icu.yeguo.yeguoapi.constant.SecretConstant;
 import icu.yeguo.yeguoapi.constant.UserConstant;
@@ -20,6 +21,7 @@ import icu.yeguo.yeguoapi.mapper.UserMapper;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpSession;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.dubbo.config.annotation.DubboReference;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -50,6 +52,10 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User>
     @Autowired
     private UserMapper userMapper;
 
+    // 广播到所有网关节点
+    @DubboReference(cluster = "broadcast", check = false)
+    private GatewayCacheService gatewayCacheService;
+
     /**
      * 用户注册
      *
@@ -226,13 +232,17 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User>
     @Override
     public int rmByid(Long id) {
         int result;
+        User user;
         try {
+            user = userMapper.selectById(id);
             result = userMapper.deleteById(id);
         } catch (RuntimeException e) {
             throw new RuntimeException(e.getMessage());
         }
         if (result < 1)
             throw new BusinessException(ResponseCode.SYSTEM_ERROR, "删除失败,请检查代码");
+        if (user != null)
+            evictGatewayCredential(user.getAccessKey());
         return result;
     }
 
@@ -256,13 +266,18 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User>
         user.setUserStatus(userUpdateRequest.getUserStatus());
         user.setUserRole(userUpdateRequest.getUserRole());
         int result;
+        User dataUser;
         try {
+            dataUser = userMapper.selectById(user.getId());
             result = userMapper.updateById(user);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
         if (result < 1)
             throw new BusinessException(ResponseCode.SYSTEM_ERROR, "更新失败,请检查代码");
+        // 用户状态可能被修改(禁用)，失效网关凭证缓存
+        if (dataUser != null)
+            evictGatewayCredential(dataUser.getAccessKey());
         return result;
     }
 
@@ -460,6 +475,7 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User>
         }
         if (user == null)
             throw new BusinessException(ResponseCode.NOT_FOUND_ERROR, "用户不存在");
+        String oldAccessKey = user.getAccessKey();
         user.setAccessKey(keys.get("accessKey"));
         user.setSecretKey(keys.get("secretKey"));
         try {
@@ -469,6 +485,8 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User>
         }
         if (i < 0)
             throw new BusinessException(ResponseCode.SYSTEM_ERROR, "更新失败");
+        // 旧密钥立即失效
+        evictGatewayCredential(oldAccessKey);
         return new ASKeyVO(keys.get("accessKey"), keys.get("secretKey"));
     }
 
@@ -581,6 +599,19 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User>
         return userVO;
     }
 
+    /**
+     * 通知网关失效凭证缓存，失败只记录日志，网关缓存过期后兜底
+     */
+    private void evictGatewayCredential(String accessKey) {
+        if (accessKey == null)
+            return;
+        try {
+            gatewayCacheService.evictCredential(accessKey);
+        } catch (Exception e) {
+            log.warn("网关凭证缓存失效通知失败:{}", e.getMessage());
+        }
+    }
+
     private User getASKeyUser() {
         /*
          *  生成accessKey 和 secretKey
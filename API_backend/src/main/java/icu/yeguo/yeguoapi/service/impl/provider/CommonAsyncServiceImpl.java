@@ -0,0 +1,77 @@
+package icu.yeguo.yeguoapi.service.impl.provider;
+
+import icu.yeguo.apicommon.model.dto.AuthPrincipal;
+import icu.yeguo.apicommon.model.dto.Charge;
+import icu.yeguo.apicommon.service.CommonAsyncService;
+import icu.yeguo.apicommon.service.CommonService;
+import org.apache.dubbo.config.annotation.DubboService;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 异步接口，服务端仍在 Dubbo 业务线程中同步执行，委托给 CommonService(保留事务)
+ */
+@DubboService
+public class CommonAsyncServiceImpl implements CommonAsyncService {
+
+    @Autowired
+    private CommonService commonService;
+
+    @Override
+    public CompletableFuture<AuthPrincipal> getAuthPrincipal(String accessKey) {
+        return CompletableFuture.completedFuture(commonService.getAuthPrincipal(accessKey));
+    }
+
+    @Override
+    public CompletableFuture<Map<String, AuthPrincipal>> getAuthPrincipals(Collection<String> accessKeys) {
+        return CompletableFuture.completedFuture(commonService.getAuthPrincipals(accessKeys));
+    }
+
+    @Override
+    public CompletableFuture<Long> invokingCount(long interfaceInfoId) {
+        return CompletableFuture.completedFuture(commonService.invokingCount(interfaceInfoId));
+    }
+
+    @Override
+    public CompletableFuture<Void> recordInvocations(Map<Long, Long> counts) {
+        commonService.recordInvocations(counts);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public CompletableFuture<Long> getInterfaceInfoId(String url) {
+        return CompletableFuture.completedFuture(commonService.getInterfaceInfoId(url));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> deductGoldCoin(String requestId, Long userId, Long interfaceInfoId,
+                                                     Long amount) {
+        return CompletableFuture.completedFuture(
+                commonService.deductGoldCoin(requestId, userId, interfaceInfoId, amount));
+    }
+
+    @Override
+    public CompletableFuture<List<Boolean>> deductGoldCoins(List<Charge> charges) {
+        return CompletableFuture.completedFuture(commonService.deductGoldCoins(charges));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> returnGoldCoins(String requestId) {
+        return CompletableFuture.completedFuture(commonService.returnGoldCoins(requestId));
+    }
+
+    @Override
+    public CompletableFuture<Long> leaseGoldCoins(String leaseId, Long userId, Long amount) {
+        return CompletableFuture.completedFuture(commonService.leaseGoldCoins(leaseId, userId, amount));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> releaseGoldCoins(String releaseId, Long userId, Long amount,
+                                                       List<String> leaseIds) {
+        return CompletableFuture.completedFuture(commonService.releaseGoldCoins(releaseId, userId, amount, leaseIds));
+    }
+}
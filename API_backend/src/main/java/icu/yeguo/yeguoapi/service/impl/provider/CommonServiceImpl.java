@@ -4,16 +4,34 @@ package icu.yeguo.yeguoapi.service.impl.provider;
 import cn.hutool.crypto.digest.HMac;
 import cn.hutool.crypto.digest.HmacAlgorithm;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import icu.yeguo.apicommon.constant.SignatureConstant;
+import icu.yeguo.apicommon.model.dto.AuthPrincipal;
+import icu.yeguo.apicommon.model.dto.Charge;
+import icu.yeguo.apicommon.model.dto.InterfaceRoute;
 import icu.yeguo.yeguoapi.constant.SecretConstant;
+import icu.yeguo.yeguoapi.counter.InvokingCountAggregator;
 import icu.yeguo.apicommon.model.entity.User;
 import icu.yeguo.apicommon.service.CommonService;
+import icu.yeguo.yeguoapi.mapper.BillingLedgerMapper;
 import icu.yeguo.yeguoapi.mapper.InterfaceInfoMapper;
 import icu.yeguo.yeguoapi.mapper.UserMapper;
+import icu.yeguo.yeguoapi.model.entity.BillingLedger;
 import icu.yeguo.yeguoapi.model.entity.InterfaceInfo;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.dubbo.config.annotation.DubboService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @Slf4j
 @DubboService
@@ -25,6 +43,12 @@ public class CommonServiceImpl implements CommonService {
     @Autowired
     private InterfaceInfoMapper interfaceInfoMapper;
 
+    @Autowired
+    private BillingLedgerMapper billingLedgerMapper;
+
+    @Autowired
+    private InvokingCountAggregator invokingCountAggregator;
+
     @Override
     public String sayHello(String name) {
         System.out.println("DubboService_name:" + name);
@@ -32,49 +56,61 @@ public class CommonServiceImpl implements CommonService {
     }
 
     @Override
-    public User getUser(String accessKey) {
-        // 查询数据库
+    public AuthPrincipal getAuthPrincipal(String accessKey) {
+        // 只查询鉴权和计费需要的列
+        LambdaQueryWrapper<User> lambdaQueryWrapper = new LambdaQueryWrapper<>();
+        lambdaQueryWrapper.select(User::getId, User::getAccessKey, User::getSecretKey, User::getUserStatus,
+                        User::getGoldCoin)
+                .eq(User::getAccessKey, accessKey);
+        User user = userMapper.selectOne(lambdaQueryWrapper);
+        return user != null ? toAuthPrincipal(user) : null;
+    }
+
+    @Override
+    public Map<String, AuthPrincipal> getAuthPrincipals(Collection<String> accessKeys) {
+        Map<String, AuthPrincipal> principals = new HashMap<>();
+        if (accessKeys == null || accessKeys.isEmpty()) {
+            return principals;
+        }
         LambdaQueryWrapper<User> lambdaQueryWrapper = new LambdaQueryWrapper<>();
-        lambdaQueryWrapper.eq(User::getAccessKey, accessKey);
-        return userMapper.selectOne(lambdaQueryWrapper);
+        lambdaQueryWrapper.select(User::getId, User::getAccessKey, User::getSecretKey, User::getUserStatus,
+                        User::getGoldCoin)
+                .in(User::getAccessKey, accessKeys);
+        for (User user : userMapper.selectList(lambdaQueryWrapper)) {
+            principals.put(user.getAccessKey(), toAuthPrincipal(user));
+        }
+        return principals;
+    }
+
+    private AuthPrincipal toAuthPrincipal(User user) {
+        // secretKey 不出后台，只传签名摘要和派生的防重放密钥
+        String replayKey = new HMac(HmacAlgorithm.HmacMD5, user.getSecretKey().getBytes(StandardCharsets.UTF_8))
+                .digestHex(SignatureConstant.REPLAY_KEY_MESSAGE);
+        return new AuthPrincipal(user.getId(), user.getAccessKey(),
+                generateSignature(user.getAccessKey() + user.getSecretKey()), replayKey, user.getUserStatus(),
+                user.getGoldCoin());
     }
 
     @Override
     public String generateSignature(String message) {
-        // 此处密钥如果有非ASCII字符
-        byte[] key = SecretConstant.SIGNATURE_KEY.getBytes();
+        // 密钥包含非ASCII字符，固定按 UTF-8 编码，与网关本地校验保持一致
+        byte[] key = SecretConstant.SIGNATURE_KEY.getBytes(StandardCharsets.UTF_8);
         HMac mac = new HMac(HmacAlgorithm.HmacMD5, key);
         // 生成签名
         return mac.digestHex(message);
     }
 
-    @Transactional
     @Override
     public Long invokingCount(long interfaceInfoId) {
-        // 查询当前接口
-        InterfaceInfo interfaceInfo = interfaceInfoMapper.selectById(interfaceInfoId);
-        Long invokingCount = interfaceInfo.getInvokingCount();
-        // 更新 ID 为 interfaceInfoId 的接口的调用次数
-        InterfaceInfo updateInterfaceInfo = new InterfaceInfo();
-        updateInterfaceInfo.setId(interfaceInfoId);
-        updateInterfaceInfo.setInvokingCount(++invokingCount);
-        int rows;
-        InterfaceInfo updatedInterfaceInfo;
-        try {
-            rows = interfaceInfoMapper.updateById(updateInterfaceInfo);
-            if (rows < 0) {
-                log.warn("接口调用次数更新失败");
-                return -1L;
-            }
-            log.info("接口调用次数更新成功====" + interfaceInfo.getName());
-            updatedInterfaceInfo = interfaceInfoMapper.selectById(interfaceInfoId);
-            if (updatedInterfaceInfo == null)
-                return -1L;
-        } catch (Exception e) {
-            log.error("invokingCount error", e);
-            throw new RuntimeException(e);
+        // 写后聚合 定时批量落库
+        return invokingCountAggregator.increment(interfaceInfoId);
+    }
+
+    @Override
+    public void recordInvocations(Map<Long, Long> counts) {
+        if (counts != null) {
+            counts.forEach(invokingCountAggregator::add);
         }
-        return updatedInterfaceInfo.getInvokingCount();
     }
 
     @Override
@@ -88,49 +124,264 @@ public class CommonServiceImpl implements CommonService {
 
     @Transactional
     @Override
-    public User deductGoldCoin(Long interfaceInfoId, User user) {
+    public boolean deductGoldCoin(String requestId, Long userId, Long interfaceInfoId, Long amount) {
         try {
-            InterfaceInfo interfaceInfo = interfaceInfoMapper.selectById(interfaceInfoId);
-            if (interfaceInfo == null)
-                return null;
-            // 消耗金币
-            Long requiredGoldCoins = interfaceInfo.getRequiredGoldCoins();
-            // 设置用户，设置消费后的金币
-            if (user.getGoldCoin() < requiredGoldCoins)
-                return null;
-
-            user.setGoldCoin(user.getGoldCoin() - requiredGoldCoins);
-            // 更新用户信息
-            int i = userMapper.updateById(user);
-            if (i < 0)
-                return null;
+            if (amount == null) {
+                InterfaceInfo interfaceInfo = interfaceInfoMapper.selectById(interfaceInfoId);
+                if (interfaceInfo == null)
+                    return false;
+                amount = interfaceInfo.getRequiredGoldCoins();
+            }
+            // 先写流水 请求id重复说明已扣过费 直接返回
+            BillingLedger billingLedger = new BillingLedger();
+            billingLedger.setRequestId(requestId);
+            billingLedger.setUserId(userId);
+            billingLedger.setInterfaceInfoId(interfaceInfoId);
+            billingLedger.setAmount(amount);
+            if (billingLedgerMapper.insertIgnore(billingLedger) == 0) {
+                log.info("重复扣费请求====" + requestId);
+                return true;
+            }
+            // 条件扣减 余额判断和扣减在同一条语句中完成
+            if (userMapper.deductGoldCoin(userId, amount) == 0) {
+                // 余额不足 撤销流水
+                TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+                return false;
+            }
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
-        return userMapper.selectOne(new LambdaQueryWrapper<User>().eq(User::getId, user.getId()));
+        return true;
     }
 
     @Transactional
     @Override
-    public Long returnGoldCoins(Long interfaceInfoId, User user) {
-        User dataUser;
+    public List<Boolean> deductGoldCoins(List<Charge> charges) {
+        Boolean[] results = new Boolean[charges.size()];
+        if (charges.isEmpty()) {
+            return Arrays.asList(results);
+        }
+        // 已有流水的请求 与逐条扣费一样视为已扣过费
+        Set<String> requestIds = new HashSet<>();
+        Set<Long> userIds = new HashSet<>();
+        Set<Long> unpricedInterfaceIds = new HashSet<>();
+        for (Charge charge : charges) {
+            requestIds.add(charge.getRequestId());
+            userIds.add(charge.getUserId());
+            if (charge.getAmount() == null) {
+                unpricedInterfaceIds.add(charge.getInterfaceInfoId());
+            }
+        }
+        Set<String> existing = new HashSet<>(billingLedgerMapper.selectExistingRequestIds(requestIds));
+        Map<Long, Long> prices = new HashMap<>();
+        if (!unpricedInterfaceIds.isEmpty()) {
+            for (InterfaceInfo interfaceInfo : interfaceInfoMapper.selectBatchIds(unpricedInterfaceIds)) {
+                prices.put(interfaceInfo.getId(), interfaceInfo.getRequiredGoldCoins());
+            }
+        }
+        // 锁定本批用户的余额 同一用户的多笔扣费按顺序在内存中扣减
+        Map<Long, Long> balances = new HashMap<>();
+        for (User user : userMapper.selectGoldCoinsForUpdate(userIds)) {
+            balances.put(user.getId(), user.getGoldCoin());
+        }
+        Map<String, Boolean> decided = new HashMap<>();
+        Map<Long, Long> amounts = new HashMap<>();
+        List<BillingLedger> ledgers = new ArrayList<>();
+        for (int i = 0; i < results.length; i++) {
+            Charge charge = charges.get(i);
+            String requestId = charge.getRequestId();
+            if (existing.contains(requestId)) {
+                results[i] = true;
+                continue;
+            }
+            // 本批内重复的请求id 与第一次的结果相同
+            Boolean previous = decided.get(requestId);
+            if (previous != null) {
+                results[i] = previous;
+                continue;
+            }
+            Long amount = charge.getAmount() != null ? charge.getAmount() : prices.get(charge.getInterfaceInfoId());
+            Long balance = balances.get(charge.getUserId());
+            boolean success = amount != null && balance != null && balance >= amount;
+            if (success) {
+                balances.put(charge.getUserId(), balance - amount);
+                amounts.merge(charge.getUserId(), amount, Long::sum);
+                BillingLedger billingLedger = new BillingLedger();
+                billingLedger.setRequestId(requestId);
+                billingLedger.setUserId(charge.getUserId());
+                billingLedger.setInterfaceInfoId(charge.getInterfaceInfoId());
+                billingLedger.setAmount(amount);
+                ledgers.add(billingLedger);
+            }
+            decided.put(requestId, success);
+            results[i] = success;
+        }
+        if (ledgers.isEmpty()) {
+            return Arrays.asList(results);
+        }
+        // 并发写入了同一请求id的流水时 整批回滚 由网关逐条重试
+        if (billingLedgerMapper.insertIgnoreBatch(ledgers) != ledgers.size()) {
+            throw new IllegalStateException("批量扣费流水冲突，整批回滚");
+        }
+        // 余额已锁定并校验过 正常情况下全部扣减成功
+        if (userMapper.deductGoldCoins(amounts) != amounts.size()) {
+            throw new IllegalStateException("批量扣减金币失败，整批回滚");
+        }
+        return Arrays.asList(results);
+    }
+
+    @Transactional
+    @Override
+    public boolean returnGoldCoins(String requestId) {
+        try {
+            // 先标记流水 已返还或不存在时不返还金币
+            if (billingLedgerMapper.markRefunded(requestId) == 0) {
+                log.warn("流水不存在或已返还====" + requestId);
+                return false;
+            }
+            BillingLedger billingLedger = billingLedgerMapper.selectByRequestId(requestId);
+            if (userMapper.addGoldCoin(billingLedger.getUserId(), billingLedger.getAmount()) == 0) {
+                // 用户不存在 撤销标记
+                TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+                log.warn("用户不存在，无法返还====" + requestId);
+                return false;
+            }
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        return true;
+    }
+
+    @Transactional
+    @Override
+    public long leaseGoldCoins(String leaseId, Long userId, Long amount) {
+        try {
+            // 锁定用户行 同一用户的租约串行发放
+            Long goldCoin = userMapper.selectGoldCoinForUpdate(userId);
+            if (goldCoin == null)
+                return 0;
+            // 重复请求 返回已租出的数额
+            BillingLedger existing = billingLedgerMapper.selectByRequestId(leaseId);
+            if (existing != null)
+                return existing.getAmount();
+            long granted = Math.min(goldCoin, amount);
+            if (granted <= 0)
+                return 0;
+            BillingLedger billingLedger = new BillingLedger();
+            billingLedger.setRequestId(leaseId);
+            billingLedger.setUserId(userId);
+            billingLedger.setInterfaceInfoId(0L);
+            billingLedger.setAmount(granted);
+            billingLedgerMapper.insertIgnore(billingLedger);
+            userMapper.deductGoldCoin(userId, granted);
+            log.info("用户" + userId + "租用金币：" + granted);
+            return granted;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Transactional
+    @Override
+    public boolean releaseGoldCoins(String releaseId, Long userId, Long amount, List<String> leaseIds) {
         try {
-            // 查询接口 所需金币
-            InterfaceInfo interfaceInfo = interfaceInfoMapper.selectById(interfaceInfoId);
-            if (interfaceInfo == null)
-                return -1L;
-            // 查询用户 为用户加上被扣掉的金币
-            dataUser = userMapper.selectOne(new LambdaQueryWrapper<User>().eq(User::getId, user.getId()));
-            if (dataUser == null)
-                return -1L;
-            dataUser.setGoldCoin(dataUser.getGoldCoin() + interfaceInfo.getRequiredGoldCoins());
-            // 更新用户信息
-            int i = userMapper.updateById(dataUser);
-            if (i < 0)
-                return -1L;
+            boolean settling = leaseIds != null && !leaseIds.isEmpty();
+            if ((amount == null || amount <= 0) && !settling)
+                return true;
+            long released = amount != null ? Math.max(amount, 0) : 0;
+            BillingLedger billingLedger = new BillingLedger();
+            billingLedger.setRequestId(releaseId);
+            billingLedger.setUserId(userId);
+            billingLedger.setInterfaceInfoId(0L);
+            billingLedger.setAmount(released);
+            billingLedger.setStatus(1);
+            // 归还id重复说明已归还过
+            if (billingLedgerMapper.insertIgnore(billingLedger) == 0)
+                return true;
+            if (settling)
+                released = settleLeases(userId, released, leaseIds);
+            if (released == 0)
+                return true;
+            userMapper.addGoldCoin(userId, released);
+            log.info("用户" + userId + "归还租用金币：" + released);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
-        return dataUser.getGoldCoin();
+        return true;
+    }
+
+    /**
+     * 逐个结清租约，只归还本次结清的租约中的剩余额度
+     * 网关按租用先后消费额度，剩余额度从最近的租约往前按各租约租出的数额分摊；
+     * 已被超时整笔退回的租约，其分摊的剩余额度已包含在退回的金币中，不再归还
+     *
+     * @return 需要归还的金币数
+     */
+    private long settleLeases(Long userId, long remaining, List<String> leaseIds) {
+        long credited = 0;
+        for (int i = leaseIds.size() - 1; i >= 0; i--) {
+            String leaseId = leaseIds.get(i);
+            BillingLedger lease = billingLedgerMapper.selectByRequestId(leaseId);
+            long share = lease != null ? Math.min(remaining, lease.getAmount()) : 0;
+            remaining -= share;
+            if (billingLedgerMapper.settleLeases(userId, List.of(leaseId)) > 0) {
+                credited += share;
+            } else if (share > 0) {
+                log.warn("用户" + userId + "的租约已被超时退回，不再归还：" + leaseId + "=" + share);
+            }
+        }
+        if (remaining > 0)
+            log.warn("用户" + userId + "归还的金币超过租约租出的数额，超出部分不归还：" + remaining);
+        return credited;
+    }
+
+    @Override
+    public List<InterfaceRoute> listInterfaceRoutes() {
+        // 只查询路由需要的字段
+        LambdaQueryWrapper<InterfaceInfo> lambdaQueryWrapper = new LambdaQueryWrapper<>();
+        lambdaQueryWrapper.select(InterfaceInfo::getId, InterfaceInfo::getUrl, InterfaceInfo::getMethod,
+                InterfaceInfo::getInterfaceStatus, InterfaceInfo::getRequiredGoldCoins, InterfaceInfo::getRateLimit,
+                InterfaceInfo::getCacheTtl, InterfaceInfo::getIsIdempotent, InterfaceInfo::getUpstreamPool,
+                InterfaceInfo::getCompressible);
+        return interfaceInfoMapper.selectList(lambdaQueryWrapper).stream().map(interfaceInfo -> {
+            InterfaceRoute route = new InterfaceRoute();
+            route.setId(interfaceInfo.getId());
+            route.setUrl(interfaceInfo.getUrl());
+            route.setMethod(interfaceInfo.getMethod());
+            route.setInterfaceStatus(interfaceInfo.getInterfaceStatus());
+            route.setRequiredGoldCoins(interfaceInfo.getRequiredGoldCoins());
+            route.setRateLimit(interfaceInfo.getRateLimit());
+            route.setCacheTtl(interfaceInfo.getCacheTtl());
+            route.setIsIdempotent(interfaceInfo.getIsIdempotent());
+            route.setUpstreamPool(interfaceInfo.getUpstreamPool());
+            route.setCompressible(interfaceInfo.getCompressible());
+            return route;
+        }).toList();
+    }
+
+    @Override
+    public String getInterfaceRouteVersion() {
+        return interfaceInfoMapper.selectRouteVersion();
+    }
+
+    @Override
+    public List<String> listHotAccessKeys(int limit) {
+        if (limit <= 0) {
+            return List.of();
+        }
+        return billingLedgerMapper.selectHotAccessKeys(limit);
+    }
+
+    @Override
+    public List<Long> listHotInterfaceIds(int limit) {
+        if (limit <= 0) {
+            return List.of();
+        }
+        LambdaQueryWrapper<InterfaceInfo> lambdaQueryWrapper = new LambdaQueryWrapper<>();
+        lambdaQueryWrapper.select(InterfaceInfo::getId)
+                .eq(InterfaceInfo::getInterfaceStatus, 1)
+                .orderByDesc(InterfaceInfo::getInvokingCount)
+                .last("LIMIT " + limit);
+        return interfaceInfoMapper.selectList(lambdaQueryWrapper).stream().map(InterfaceInfo::getId).toList();
     }
 }
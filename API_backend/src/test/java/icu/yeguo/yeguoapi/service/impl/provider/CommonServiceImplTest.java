@@ -0,0 +1,307 @@
+package icu.yeguo.yeguoapi.service.impl.provider;
+
+import com.baomidou.mybatisplus.extension.spring.MybatisSqlSessionFactoryBean;
+import icu.yeguo.apicommon.model.dto.Charge;
+import icu.yeguo.apicommon.service.CommonService;
+import icu.yeguo.yeguoapi.counter.InvokingCountAggregator;
+import icu.yeguo.yeguoapi.mapper.BillingLedgerMapper;
+import icu.yeguo.yeguoapi.mapper.UserMapper;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mybatis.spring.annotation.MapperScan;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.EnableTransactionManagement;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+
+/**
+ * 扣费和余额租约 在 H2(MySQL 模式)上执行 UserMapper.xml 和 BillingLedgerMapper.xml 中的真实语句
+ */
+@SpringJUnitConfig(CommonServiceImplTest.Config.class)
+class CommonServiceImplTest {
+
+    @Configuration
+    @EnableTransactionManagement
+    @MapperScan("icu.yeguo.yeguoapi.mapper")
+    @Import(CommonServiceImpl.class)
+    static class Config {
+
+        @Bean
+        DataSource dataSource() {
+            // user 在 H2 中是关键字
+            return new EmbeddedDatabaseBuilder()
+                    .setType(EmbeddedDatabaseType.H2)
+                    .setName("billing;MODE=MySQL;NON_KEYWORDS=USER")
+                    .addScript("billing-schema-h2.sql")
+                    .build();
+        }
+
+        @Bean
+        SqlSessionFactory sqlSessionFactory(DataSource dataSource) throws Exception {
+            MybatisSqlSessionFactoryBean factoryBean = new MybatisSqlSessionFactoryBean();
+            factoryBean.setDataSource(dataSource);
+            factoryBean.setMapperLocations(new PathMatchingResourcePatternResolver()
+                    .getResources("classpath*:/mapper/**/*.xml"));
+            return factoryBean.getObject();
+        }
+
+        @Bean
+        PlatformTransactionManager transactionManager(DataSource dataSource) {
+            return new DataSourceTransactionManager(dataSource);
+        }
+
+        @Bean
+        JdbcTemplate jdbcTemplate(DataSource dataSource) {
+            return new JdbcTemplate(dataSource);
+        }
+
+        @Bean
+        InvokingCountAggregator invokingCountAggregator() {
+            return Mockito.mock(InvokingCountAggregator.class);
+        }
+    }
+
+    @Autowired
+    private CommonService commonService;
+
+    @Autowired
+    private UserMapper userMapper;
+
+    @Autowired
+    private BillingLedgerMapper billingLedgerMapper;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.update("DELETE FROM billing_ledger");
+        jdbcTemplate.update("DELETE FROM user");
+        jdbcTemplate.update("INSERT INTO user (id, gold_coin, access_key, secret_key) VALUES (1, 100, 'ak1', 'sk1')");
+        jdbcTemplate.update("INSERT INTO user (id, gold_coin, access_key, secret_key) VALUES (2, 100, 'ak2', 'sk2')");
+    }
+
+    private static Charge charge(String requestId, long userId, long amount) {
+        return new Charge(requestId, userId, 10L, amount);
+    }
+
+    private long goldCoin(long userId) {
+        return jdbcTemplate.queryForObject("SELECT gold_coin FROM user WHERE id = ?", Long.class, userId);
+    }
+
+    private int ledgerCount() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM billing_ledger", Integer.class);
+    }
+
+    @Test
+    void duplicateRequestIdInBatchChargedOnce() {
+        List<Boolean> results = commonService.deductGoldCoins(List.of(
+                charge("r1", 1, 10), charge("r1", 1, 10), charge("r2", 1, 10)));
+        assertEquals(List.of(true, true, true), results);
+        assertEquals(80, goldCoin(1));
+        assertEquals(2, ledgerCount());
+    }
+
+    @Test
+    void existingLedgerTreatedAsCharged() {
+        jdbcTemplate.update("INSERT INTO billing_ledger (request_id, user_id, interface_info_id, amount) "
+                + "VALUES ('r1', 1, 10, 10)");
+        List<Boolean> results = commonService.deductGoldCoins(List.of(charge("r1", 1, 10), charge("r2", 1, 10)));
+        assertEquals(List.of(true, true), results);
+        // 已有流水的请求不再扣减
+        assertEquals(90, goldCoin(1));
+        assertEquals(2, ledgerCount());
+    }
+
+    @Test
+    void chargesForOneUserStopAtBalance() {
+        jdbcTemplate.update("UPDATE user SET gold_coin = 25 WHERE id = 1");
+        List<Boolean> results = commonService.deductGoldCoins(List.of(
+                charge("r1", 1, 10), charge("r2", 2, 5), charge("r3", 1, 10), charge("r4", 1, 10),
+                charge("r5", 1, 5)));
+        // 同一用户按顺序扣减 余额不足的一笔失败 后面金额更小的仍可扣
+        assertEquals(List.of(true, true, true, false, true), results);
+        assertEquals(0, goldCoin(1));
+        assertEquals(95, goldCoin(2));
+        assertEquals(4, ledgerCount());
+    }
+
+    @Test
+    void conflictingLedgerRollsBackWholeBatch() {
+        // 查询已有流水之后 另一个网关实例写入了同一请求id
+        BillingLedgerMapper racingMapper = Mockito.mock(BillingLedgerMapper.class,
+                Mockito.withSettings().defaultAnswer(invocation ->
+                        invocation.getMethod().invoke(billingLedgerMapper, invocation.getArguments())));
+        doAnswer(invocation -> {
+            List<String> existing = billingLedgerMapper.selectExistingRequestIds(invocation.getArgument(0));
+            // 另开连接自动提交 不参与扣费事务
+            try (Connection connection = jdbcTemplate.getDataSource().getConnection();
+                 Statement statement = connection.createStatement()) {
+                statement.executeUpdate("INSERT INTO billing_ledger "
+                        + "(request_id, user_id, interface_info_id, amount) VALUES ('r2', 2, 10, 10)");
+            }
+            return existing;
+        }).when(racingMapper).selectExistingRequestIds(any(Collection.class));
+        Object target = AopTestUtils.getTargetObject(commonService);
+        ReflectionTestUtils.setField(target, "billingLedgerMapper", racingMapper);
+        try {
+            assertThrows(IllegalStateException.class, () -> commonService.deductGoldCoins(List.of(
+                    charge("r1", 1, 10), charge("r2", 2, 10))));
+        } finally {
+            ReflectionTestUtils.setField(target, "billingLedgerMapper", billingLedgerMapper);
+        }
+        assertEquals(100, goldCoin(1));
+        assertEquals(100, goldCoin(2));
+        // 只剩另一个实例写入的流水
+        assertEquals(1, ledgerCount());
+    }
+
+    @Test
+    void duplicateRequestIdChargedOnce() {
+        assertTrue(commonService.deductGoldCoin("r1", 1L, 10L, 10L));
+        // 网关重试同一个请求id
+        assertTrue(commonService.deductGoldCoin("r1", 1L, 10L, 10L));
+        assertEquals(90, goldCoin(1));
+        assertEquals(1, ledgerCount());
+    }
+
+    @Test
+    void insufficientBalanceRollsBackLedger() {
+        jdbcTemplate.update("UPDATE user SET gold_coin = 5 WHERE id = 1");
+        assertFalse(commonService.deductGoldCoin("r1", 1L, 10L, 10L));
+        assertEquals(5, goldCoin(1));
+        assertEquals(0, ledgerCount());
+        // 流水已撤销 充值后同一个请求id可以重新扣费
+        jdbcTemplate.update("UPDATE user SET gold_coin = 10 WHERE id = 1");
+        assertTrue(commonService.deductGoldCoin("r1", 1L, 10L, 10L));
+        assertEquals(0, goldCoin(1));
+        assertEquals(1, ledgerCount());
+    }
+
+    @Test
+    void concurrentChargesDoNotOverdraw() throws Exception {
+        jdbcTemplate.update("UPDATE user SET gold_coin = 50 WHERE id = 1");
+        int threads = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch ready = new CountDownLatch(threads);
+        CountDownLatch go = new CountDownLatch(1);
+        List<Future<Boolean>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < threads; i++) {
+                String requestId = "r" + i;
+                futures.add(executor.submit(() -> {
+                    ready.countDown();
+                    go.await();
+                    return commonService.deductGoldCoin(requestId, 1L, 10L, 10L);
+                }));
+            }
+            ready.await();
+            go.countDown();
+            int charged = 0;
+            for (Future<Boolean> future : futures) {
+                if (future.get(10, TimeUnit.SECONDS)) {
+                    charged++;
+                }
+            }
+            // 余额只够 5 次
+            assertEquals(5, charged);
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(0, goldCoin(1));
+        assertEquals(5, ledgerCount());
+    }
+
+    @Test
+    void refundCreditsOnce() {
+        assertTrue(commonService.deductGoldCoin("r1", 1L, 10L, 10L));
+        assertEquals(90, goldCoin(1));
+        assertTrue(commonService.returnGoldCoins("r1"));
+        assertEquals(100, goldCoin(1));
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT status FROM billing_ledger WHERE request_id = 'r1'",
+                Integer.class));
+        // 重复返还不再增加余额
+        assertFalse(commonService.returnGoldCoins("r1"));
+        assertEquals(100, goldCoin(1));
+        // 没有流水的请求
+        assertFalse(commonService.returnGoldCoins("r2"));
+    }
+
+    @Test
+    void batchDeductSkipsUsersWithoutBalance() {
+        jdbcTemplate.update("UPDATE user SET is_deleted = 1 WHERE id = 2");
+        int rows = userMapper.deductGoldCoins(Map.of(1L, 30L, 2L, 30L));
+        assertEquals(1, rows);
+        assertEquals(70, goldCoin(1));
+        assertEquals(100, goldCoin(2));
+        assertEquals(0, userMapper.deductGoldCoins(Map.of(1L, 80L)));
+        assertEquals(70, goldCoin(1));
+    }
+
+    private int leaseStatus(String leaseId) {
+        return jdbcTemplate.queryForObject("SELECT status FROM billing_ledger WHERE request_id = ?", Integer.class,
+                leaseId);
+    }
+
+    @Test
+    void releaseSettlesLeasesOnce() {
+        assertEquals(10, commonService.leaseGoldCoins("l1", 1L, 10L));
+        assertEquals(10, commonService.leaseGoldCoins("l2", 1L, 10L));
+        assertEquals(80, goldCoin(1));
+        // 网关本地用掉 5 个
+        assertTrue(commonService.releaseGoldCoins("rel1", 1L, 15L, List.of("l1", "l2")));
+        assertEquals(95, goldCoin(1));
+        assertEquals(2, leaseStatus("l1"));
+        assertEquals(2, leaseStatus("l2"));
+        // 同一个归还id重试不重复归还
+        assertTrue(commonService.releaseGoldCoins("rel1", 1L, 15L, List.of("l1", "l2")));
+        assertEquals(95, goldCoin(1));
+    }
+
+    @Test
+    void releaseCreditsOnlyLeasesItSettles() {
+        commonService.leaseGoldCoins("l1", 1L, 10L);
+        commonService.leaseGoldCoins("l2", 1L, 10L);
+        // l1 超时被后台整笔退回
+        jdbcTemplate.update("UPDATE billing_ledger SET status = 1 WHERE request_id = 'l1'");
+        jdbcTemplate.update("UPDATE user SET gold_coin = gold_coin + 10 WHERE id = 1");
+        assertEquals(90, goldCoin(1));
+        // 剩余 15 个：l2 分摊 10 个照常归还，l1 分摊的 5 个已包含在退回的金币中
+        assertTrue(commonService.releaseGoldCoins("rel1", 1L, 15L, List.of("l1", "l2")));
+        assertEquals(100, goldCoin(1));
+        assertEquals(1, leaseStatus("l1"));
+        assertEquals(2, leaseStatus("l2"));
+    }
+}
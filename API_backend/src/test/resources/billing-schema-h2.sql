@@ -0,0 +1,24 @@
+-- 批量扣费测试用表结构 只保留扣费相关的列 与 sql/app.sql 保持一致
+CREATE TABLE IF NOT EXISTS `user`
+(
+    `id`         bigint       NOT NULL AUTO_INCREMENT,
+    `gold_coin`  bigint       NOT NULL DEFAULT 100,
+    `access_key` varchar(512) NOT NULL,
+    `secret_key` varchar(512) NOT NULL,
+    `is_deleted` tinyint      NOT NULL DEFAULT 0,
+    PRIMARY KEY (`id`)
+);
+
+CREATE TABLE IF NOT EXISTS `billing_ledger`
+(
+    `id`                bigint      NOT NULL AUTO_INCREMENT,
+    `request_id`        varchar(64) NOT NULL,
+    `user_id`           bigint      NOT NULL,
+    `interface_info_id` bigint      NOT NULL,
+    `amount`            bigint      NOT NULL,
+    `status`            tinyint     NOT NULL DEFAULT 0,
+    `create_time`       datetime    NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    `update_time`       datetime    NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (`id`),
+    UNIQUE KEY `uk_request_id` (`request_id`)
+);
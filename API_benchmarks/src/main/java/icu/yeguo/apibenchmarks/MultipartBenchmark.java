@@ -0,0 +1,112 @@
+package icu.yeguo.apibenchmarks;
+
+import icu.yeguo.apigateway.body.MultipartFieldScanner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * POST 请求中查找 accessKey 和 signature
+ * 请求体 1KB~3MB(3MB 为 multipart 上限)，按 Netty 默认的 8KB 数据块输入；凭证字段在文件前(head)或文件后(tail)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MultipartBenchmark {
+
+    private static final String BOUNDARY = "----WebKitFormBoundary7MA4YWxkTrZu0gW";
+    private static final Set<String> FIELDS = Set.of("accessKey", "signature");
+    private static final int CHUNK_SIZE = 8 * 1024;
+
+    @Param({"1024", "65536", "1048576", "3145728"})
+    public int fileSize;
+
+    @Param({"head", "tail"})
+    public String fieldPosition;
+
+    private List<ByteBuffer> chunks;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        byte[] file = new byte[fileSize];
+        new Random(42).nextBytes(file);
+        String credentials = "--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"accessKey\"\r\n\r\n"
+                + "7F48461FA9DB04287F8DF2C21CE39BB7\r\n"
+                + "--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"signature\"\r\n\r\n"
+                + "0b5e4c5d6a7a1f1d2c3b4a5968778695\r\n";
+        String fileHeader = "--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"qr.png\"\r\n"
+                + "Content-Type: image/png\r\n\r\n";
+        ByteArrayOutputStream out = new ByteArrayOutputStream(fileSize + 1024);
+        if ("head".equals(fieldPosition)) {
+            out.writeBytes(credentials.getBytes(StandardCharsets.UTF_8));
+        }
+        out.writeBytes(fileHeader.getBytes(StandardCharsets.UTF_8));
+        out.writeBytes(file);
+        out.writeBytes("\r\n".getBytes(StandardCharsets.UTF_8));
+        if ("tail".equals(fieldPosition)) {
+            out.writeBytes(credentials.getBytes(StandardCharsets.UTF_8));
+        }
+        out.writeBytes(("--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.UTF_8));
+        byte[] body = out.toByteArray();
+        chunks = new ArrayList<>();
+        for (int offset = 0; offset < body.length; offset += CHUNK_SIZE) {
+            chunks.add(ByteBuffer.wrap(body, offset, Math.min(CHUNK_SIZE, body.length - offset)).slice());
+        }
+    }
+
+    @Benchmark
+    public String scanFields() {
+        MultipartFieldScanner scanner = new MultipartFieldScanner(BOUNDARY, FIELDS);
+        for (ByteBuffer chunk : chunks) {
+            if (scanner.feed(chunk)) {
+                break;
+            }
+        }
+        return scanner.getField("signature");
+    }
+
+    /**
+     * 解析 Content-Type 中的 boundary，与请求体大小无关
+     */
+    @State(Scope.Benchmark)
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @Warmup(iterations = 3, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    @Fork(1)
+    public static class Boundary {
+
+        @Param({"multipart/form-data; boundary=" + BOUNDARY,
+                "multipart/form-data; charset=UTF-8; boundary=\"" + BOUNDARY + "\""})
+        public String contentType;
+
+        @Benchmark
+        public String getBoundary() {
+            return MultipartFieldScanner.getBoundary(contentType);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package icu.yeguo.apibenchmarks;
+
+import icu.yeguo.apigateway.auth.ReplayGuard;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * nonce 防重放检查吞吐，目标每个网关节点 10 万次/s 以上
+ * 压测每秒写入的 nonce 远超预计请求数，按真实时间会把同一个桶写满，测到的是饱和的布隆过滤器；
+ * 因此每次迭代重建防重放，时间戳改用虚拟时钟：所有线程合计每写入 EXPECTED_RATE 个 nonce 前进 1 秒，
+ * 每个桶按设计容量填充，并覆盖桶轮转
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class ReplayGuardBenchmark {
+
+    private static final long EXPECTED_RATE = 100_000;
+
+    private ReplayGuard replayGuard;
+    private long startSeconds;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        replayGuard = new ReplayGuard("required", 120, 30, EXPECTED_RATE);
+        startSeconds = System.currentTimeMillis() / 1000;
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+        private final String accessKey = "ak-" + Thread.currentThread().getId();
+        private long noncesPerSecond;
+        private long sequence;
+
+        @Setup(Level.Iteration)
+        public void setUp(ThreadParams threadParams) {
+            noncesPerSecond = Math.max(1, EXPECTED_RATE / threadParams.getThreadCount());
+            sequence = 0;
+        }
+    }
+
+    @Benchmark
+    public ReplayGuard.Result check(Client client) {
+        long now = startSeconds + client.sequence / client.noncesPerSecond;
+        return replayGuard.check(client.accessKey, now, Long.toString(client.sequence++), now);
+    }
+}
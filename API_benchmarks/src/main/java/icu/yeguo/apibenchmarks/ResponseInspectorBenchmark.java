@@ -0,0 +1,96 @@
+package icu.yeguo.apibenchmarks;
+
+import com.alibaba.fastjson2.JSON;
+import icu.yeguo.apigateway.Response;
+import icu.yeguo.apigateway.body.ResponseInspector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * 上游响应结果判定：网关当前的增量判定(inspect) 与改造前整体解码后做 SVG 正则、fastjson2 解析为 Response 的做法(fullParse)对比
+ * json 响应的 code 字段放在 result 之后，增量判定需要读完整个响应
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseInspectorBenchmark {
+
+    private static final int CHUNK_SIZE = 8 * 1024;
+    private static final Pattern SVG_PATTERN = Pattern.compile(
+            "<svg[^>]*xmlns=\"http://www.w3.org/2000/svg\"[^>]*>",
+            Pattern.CASE_INSENSITIVE
+    );
+
+    @Param({"json", "svg"})
+    public String kind;
+
+    @Param({"1024", "65536", "1048576"})
+    public int size;
+
+    private byte[] body;
+    private List<ByteBuffer> chunks;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        StringBuilder text = new StringBuilder(size + 256);
+        if ("svg".equals(kind)) {
+            text.append("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"256\" height=\"256\">");
+            while (text.length() < size) {
+                text.append("<rect x=\"1\" y=\"2\" width=\"3\" height=\"4\" fill=\"#000\"/>");
+            }
+            text.append("</svg>");
+        } else {
+            text.append("{\"result\":{\"items\":[");
+            while (text.length() < size) {
+                text.append("{\"id\":1,\"name\":\"yeguo\",\"tags\":[\"a\",\"b\"],\"code\":500},");
+            }
+            text.append("{}]},\"msg\":\"ok\",\"code\":200}");
+        }
+        body = text.toString().getBytes(StandardCharsets.UTF_8);
+        chunks = new ArrayList<>();
+        for (int offset = 0; offset < body.length; offset += CHUNK_SIZE) {
+            chunks.add(ByteBuffer.wrap(body, offset, Math.min(CHUNK_SIZE, body.length - offset)).slice());
+        }
+    }
+
+    @Benchmark
+    public ResponseInspector.Outcome inspect() {
+        ResponseInspector inspector = new ResponseInspector();
+        for (ByteBuffer chunk : chunks) {
+            if (inspector.feed(chunk) != null) {
+                return inspector.getOutcome();
+            }
+        }
+        return inspector.finish();
+    }
+
+    @Benchmark
+    public ResponseInspector.Outcome fullParse() {
+        String text = new String(body, StandardCharsets.UTF_8);
+        if (SVG_PATTERN.matcher(text).find()) {
+            return ResponseInspector.Outcome.SUCCESS;
+        }
+        Response<?> response = JSON.parseObject(text, Response.class);
+        return response.getCode() == 200 ? ResponseInspector.Outcome.SUCCESS : ResponseInspector.Outcome.FAILURE;
+    }
+}
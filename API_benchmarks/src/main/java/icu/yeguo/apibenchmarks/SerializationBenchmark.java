@@ -0,0 +1,117 @@
+package icu.yeguo.apibenchmarks;
+
+import icu.yeguo.apicommon.model.dto.AuthPrincipal;
+import icu.yeguo.apicommon.model.entity.User;
+import org.apache.dubbo.common.URL;
+import org.apache.dubbo.common.serialize.ObjectInput;
+import org.apache.dubbo.common.serialize.ObjectOutput;
+import org.apache.dubbo.common.serialize.Serialization;
+import org.apache.dubbo.common.utils.SerializeSecurityManager;
+import org.apache.dubbo.rpc.model.FrameworkModel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 鉴权信息在 Dubbo 上的序列化：完整 User 实体与 AuthPrincipal 对比，分别用 hessian2 和 fastjson2
+ * 每组参数的序列化字节数在 Setup 时输出
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+
+    private static final URL URL = org.apache.dubbo.common.URL.valueOf(
+            "dubbo://127.0.0.1:20880/icu.yeguo.apicommon.service.CommonAsyncService");
+    private static final String ACCESS_KEY = "7F48461FA9DB04287F8DF2C21CE39BB7";
+    private static final String SECRET_KEY = "A1C5D1F0E8B94B47A1E8F1D3C5B7A9E1";
+
+    @Param({"hessian2", "fastjson2"})
+    private String serialization;
+
+    @Param({"user", "principal"})
+    private String payload;
+
+    private Serialization serializer;
+    private Object value;
+    private Class<?> type;
+    private byte[] bytes;
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(1024);
+
+    @Setup
+    public void setUp() throws Exception {
+        FrameworkModel frameworkModel = FrameworkModel.defaultModel();
+        serializer = frameworkModel.getExtensionLoader(Serialization.class).getExtension(serialization);
+        // 正常运行时服务接口用到的类自动加入白名单，这里没有暴露服务，需要手动加入
+        SerializeSecurityManager securityManager = frameworkModel.getBeanFactory()
+                .getOrRegisterBean(SerializeSecurityManager.class);
+        securityManager.addToAllowed(User.class.getName());
+        securityManager.addToAllowed(AuthPrincipal.class.getName());
+        if ("user".equals(payload)) {
+            value = user();
+            type = User.class;
+        } else {
+            value = new AuthPrincipal(1780000000000000001L, ACCESS_KEY, "9b1d6c0e4f3a2b7c8d5e6f7a8b9c0d1e",
+                    "4e7a1c9d2b8f3e6a5c0d7b1f9e2a8c4d", 0, 100_000L);
+            type = AuthPrincipal.class;
+        }
+        bytes = serialize();
+        if (!type.isInstance(deserialize())) {
+            throw new IllegalStateException("反序列化结果类型错误");
+        }
+        System.out.println(serialization + "/" + payload + " 序列化字节数:" + bytes.length);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        buffer.reset();
+        ObjectOutput output = serializer.serialize(URL, buffer);
+        output.writeObject(value);
+        output.flushBuffer();
+        return buffer.toByteArray();
+    }
+
+    @Benchmark
+    public Object deserialize() throws IOException, ClassNotFoundException {
+        ObjectInput input = serializer.deserialize(URL, new ByteArrayInputStream(bytes));
+        return input.readObject(type);
+    }
+
+    private static User user() {
+        User user = new User();
+        user.setId(1780000000000000001L);
+        user.setUsername("夜果");
+        user.setUserAccount("yeguo");
+        user.setUserPassword("b0baee9d279d34fa1dfd71aadb908c3f");
+        user.setAvatarUrl("https://yeguo.icu/avatar/1780000000000000001.png");
+        user.setGender(1);
+        user.setPhone("13800000000");
+        user.setEmail("yeguo@yeguo.icu");
+        user.setGoldCoin(100_000L);
+        user.setAccessKey(ACCESS_KEY);
+        user.setSecretKey(SECRET_KEY);
+        user.setUserStatus(0);
+        user.setUserRole(0);
+        user.setCreateTime(new Date());
+        user.setUpdateTime(new Date());
+        user.setIsDeleted(0);
+        return user;
+    }
+}
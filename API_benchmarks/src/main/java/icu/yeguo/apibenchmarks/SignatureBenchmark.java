@@ -0,0 +1,65 @@
+package icu.yeguo.apibenchmarks;
+
+import icu.yeguo.apicommon.utils.SignatureUtil;
+import icu.yeguo.apigateway.auth.Credential;
+import icu.yeguo.apigateway.auth.SignatureVerifier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 签名生成与校验：静态签名直接比较缓存的期望签名，带时间戳和 nonce 的签名每次都要计算 HMAC
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class SignatureBenchmark {
+
+    private static final String ACCESS_KEY = "7F48461FA9DB04287F8DF2C21CE39BB7";
+    private static final String SECRET_KEY = "A1C5D1F0E8B94B47A1E8F1D3C5B7A9E1";
+    private static final String TIMESTAMP = "1700000000";
+    private static final String NONCE = "3f2b8c1e9a7d4e6f";
+
+    private final SignatureVerifier signatureVerifier = new SignatureVerifier();
+    private Credential credential;
+    private String signature;
+    private String timestampedSignature;
+
+    @Setup
+    public void setUp() {
+        signature = SignatureUtil.sign(ACCESS_KEY + SECRET_KEY);
+        String replayKey = SignatureUtil.replayKey(SECRET_KEY);
+        timestampedSignature = SignatureUtil.signTimestamped(replayKey, ACCESS_KEY, TIMESTAMP, NONCE);
+        credential = new Credential(1L, ACCESS_KEY, 0, signature.getBytes(StandardCharsets.US_ASCII), replayKey);
+    }
+
+    @Benchmark
+    public String sign() {
+        return SignatureUtil.sign(ACCESS_KEY + SECRET_KEY);
+    }
+
+    @Benchmark
+    public boolean verifyStatic() {
+        return signatureVerifier.verify(credential, signature);
+    }
+
+    @Benchmark
+    public boolean verifyTimestamped() {
+        return signatureVerifier.verify(credential, timestampedSignature, TIMESTAMP, NONCE);
+    }
+}
@@ -0,0 +1,20 @@
+package icu.yeguo.apicommon.constant;
+
+public interface SignatureConstant {
+    /**
+     * 签名算法
+     */
+    String SIGNATURE_ALGORITHM = "HmacMD5";
+
+    /**
+     * 签名密钥，按 UTF-8 编码
+     */
+    String SIGNATURE_KEY = "野果API";
+
+    /**
+     * 带时间戳和 nonce 的请求用每个用户的防重放密钥签名：
+     * 防重放密钥 = HmacMD5(key=secretKey, REPLAY_KEY_MESSAGE) 的小写十六进制，
+     * 签名 = HmacMD5(key=防重放密钥, accessKey + timestamp + nonce) 的小写十六进制
+     */
+    String REPLAY_KEY_MESSAGE = "replay";
+}
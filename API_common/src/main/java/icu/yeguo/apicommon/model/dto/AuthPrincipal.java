@@ -0,0 +1,54 @@
+package icu.yeguo.apicommon.model.dto;
+
+import lombok.Getter;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+/**
+ * 网关鉴权和计费需要的用户信息，不可变
+ * 不含密码、头像、邮箱、手机号、时间等字段，也不含 secretKey 原文，只传签名摘要
+ */
+@Getter
+public final class AuthPrincipal implements Serializable {
+    /**
+     * 用户id
+     */
+    private final Long userId;
+
+    private final String accessKey;
+
+    /**
+     * 签名摘要，即 accessKey + secretKey 的签名(HmacMD5，小写十六进制)，网关据此校验签名
+     */
+    private final String signatureDigest;
+
+    /**
+     * 防重放密钥，由 secretKey 派生(见 SignatureConstant.REPLAY_KEY_MESSAGE)，网关据此校验带时间戳和 nonce 的签名
+     * 不会出现在请求中，截获的请求无法用来伪造新的时间戳和 nonce
+     */
+    private final String replayKey;
+
+    /**
+     * 用户状态 0-正常
+     */
+    private final Integer userStatus;
+
+    /**
+     * 查询时的金币余额，仅供参考，扣费以后台为准
+     */
+    private final Long goldCoin;
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    public AuthPrincipal(Long userId, String accessKey, String signatureDigest, String replayKey, Integer userStatus,
+                         Long goldCoin) {
+        this.userId = userId;
+        this.accessKey = accessKey;
+        this.signatureDigest = signatureDigest;
+        this.replayKey = replayKey;
+        this.userStatus = userStatus;
+        this.goldCoin = goldCoin;
+    }
+}
@@ -0,0 +1,39 @@
+package icu.yeguo.apicommon.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+/**
+ * 一次扣费，参数与 deductGoldCoin 一致，用于批量扣费
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class Charge implements Serializable {
+    /**
+     * 网关请求id，按此幂等
+     */
+    private String requestId;
+
+    /**
+     * 用户id
+     */
+    private Long userId;
+
+    /**
+     * 接口id
+     */
+    private Long interfaceInfoId;
+
+    /**
+     * 扣除金币数，为空时按接口当前所需金币扣除
+     */
+    private Long amount;
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+}
@@ -0,0 +1,65 @@
+package icu.yeguo.apicommon.model.dto;
+
+import lombok.Data;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+/**
+ * 网关路由信息，interface_info 中网关转发和计费需要的字段
+ */
+@Data
+public class InterfaceRoute implements Serializable {
+    /**
+     * 接口id
+     */
+    private Long id;
+
+    /**
+     * 接口地址
+     */
+    private String url;
+
+    /**
+     * 接口方法
+     */
+    private String method;
+
+    /**
+     * 接口状态 0-关闭 1-开启
+     */
+    private Integer interfaceStatus;
+
+    /**
+     * 调用一次所需金币
+     */
+    private Long requiredGoldCoins;
+
+    /**
+     * 每秒最大请求数 0-不限流
+     */
+    private Integer rateLimit;
+
+    /**
+     * 响应缓存时间(s) 0-不缓存
+     */
+    private Integer cacheTtl;
+
+    /**
+     * 是否幂等 0-否 1-是，幂等的 GET 接口合并并发的相同请求
+     */
+    private Integer isIdempotent;
+
+    /**
+     * 上游实例池，对应网关 yeguo.gateway.upstream.pools 中的名称
+     */
+    private String upstreamPool;
+
+    /**
+     * 是否压缩响应 0-否 1-是，图片等已压缩的响应设为 0
+     */
+    private Integer compressible;
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+}
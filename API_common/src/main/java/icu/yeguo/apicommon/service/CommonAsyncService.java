@@ -0,0 +1,26 @@
+package icu.yeguo.apicommon.service;
+
+import icu.yeguo.apicommon.model.dto.AuthPrincipal;
+import icu.yeguo.apicommon.model.dto.Charge;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * CommonService 的异步版本，供网关在事件循环线程上非阻塞调用
+ */
+public interface CommonAsyncService {
+    CompletableFuture<AuthPrincipal> getAuthPrincipal(String accessKey);
+    CompletableFuture<Map<String, AuthPrincipal>> getAuthPrincipals(Collection<String> accessKeys);
+    CompletableFuture<Long> invokingCount(long interfaceInfoId);
+    CompletableFuture<Void> recordInvocations(Map<Long, Long> counts);
+    CompletableFuture<Long> getInterfaceInfoId(String url);
+    CompletableFuture<Boolean> deductGoldCoin(String requestId, Long userId, Long interfaceInfoId, Long amount);
+    CompletableFuture<List<Boolean>> deductGoldCoins(List<Charge> charges);
+    CompletableFuture<Boolean> returnGoldCoins(String requestId);
+    CompletableFuture<Long> leaseGoldCoins(String leaseId, Long userId, Long amount);
+    CompletableFuture<Boolean> releaseGoldCoins(String releaseId, Long userId, Long amount,
+                                                List<String> leaseIds);
+}
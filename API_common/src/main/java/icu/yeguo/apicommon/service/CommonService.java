@@ -1,13 +1,105 @@
 package icu.yeguo.apicommon.service;
 
-import icu.yeguo.apicommon.model.entity.User;
+import icu.yeguo.apicommon.model.dto.AuthPrincipal;
+import icu.yeguo.apicommon.model.dto.Charge;
+import icu.yeguo.apicommon.model.dto.InterfaceRoute;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 
 public interface CommonService {
     String sayHello(String name);
-    User getUser(String accessKey);
+
+    /**
+     * 网关鉴权信息，只含鉴权和计费需要的字段
+     *
+     * @return 用户不存在时为 null
+     */
+    AuthPrincipal getAuthPrincipal(String accessKey);
+
+    /**
+     * 批量查询网关鉴权信息，一条 SQL 完成
+     *
+     * @return accessKey 到鉴权信息，不存在的用户不在结果中
+     */
+    Map<String, AuthPrincipal> getAuthPrincipals(Collection<String> accessKeys);
+
     String generateSignature(String message);
+
+    /**
+     * 记录一次接口调用，写后聚合定时落库
+     *
+     * @return 该接口尚未落库的调用次数
+     */
     Long invokingCount(long interfaceInfoId);
+
+    /**
+     * 批量记录接口调用，写后聚合定时落库
+     *
+     * @param counts 接口id到调用次数
+     */
+    void recordInvocations(Map<Long, Long> counts);
     Long getInterfaceInfoId(String url);
-    User deductGoldCoin(Long interfaceInfoId,User user);
-    Long returnGoldCoins(Long interfaceInfoId, User user);
+
+    /**
+     * 按网关请求id幂等扣费
+     *
+     * @param amount 扣除金币数，为空时按接口当前所需金币扣除
+     * @return 余额不足或接口不存在时为 false，重复请求返回 true 且不重复扣费
+     */
+    boolean deductGoldCoin(String requestId, Long userId, Long interfaceInfoId, Long amount);
+
+    /**
+     * 批量扣费，语义与逐条 deductGoldCoin 相同，在一个事务中用多行 SQL 完成
+     * 同一用户的多笔扣费按顺序扣减，余额不足的那笔及之后超出余额的扣费失败
+     *
+     * @return 与 charges 顺序一致的扣费结果
+     */
+    List<Boolean> deductGoldCoins(List<Charge> charges);
+
+    /**
+     * 返还该请求扣除的金币，未扣费或已返还的请求不做处理
+     */
+    boolean returnGoldCoins(String requestId);
+
+    /**
+     * 网关租用一部分余额在本地扣费，按租约id幂等
+     *
+     * @param amount 期望租用的金币数，余额不足时只租出剩余余额
+     * @return 实际租出的金币数
+     */
+    long leaseGoldCoins(String leaseId, Long userId, Long amount);
+
+    /**
+     * 归还租约中未用完的金币并结清这些租约，按归还id幂等
+     * 未结清的租约超时后由后台整笔退回；剩余额度从最近的租约往前分摊，已被退回的租约分摊到的部分不再归还
+     *
+     * @param leaseIds 本次结清的租约，按租用先后排列；返还调用失败的金币时为空
+     */
+    boolean releaseGoldCoins(String releaseId, Long userId, Long amount, List<String> leaseIds);
+
+    /**
+     * 全量路由信息，供网关构建本地路由表
+     */
+    List<InterfaceRoute> listInterfaceRoutes();
+
+    /**
+     * 路由版本号，路由相关字段变化时改变，网关据此判断是否需要重新拉取
+     */
+    String getInterfaceRouteVersion();
+
+    /**
+     * 最近一天调用最多的用户，网关启动预热时预加载其凭证
+     *
+     * @return 按调用次数从多到少排列的 accessKey
+     */
+    List<String> listHotAccessKeys(int limit);
+
+    /**
+     * 累计调用次数最多的已开启接口，网关启动预热时优先对其发送合成请求
+     *
+     * @return 按调用次数从多到少排列的接口id
+     */
+    List<Long> listHotInterfaceIds(int limit);
 }
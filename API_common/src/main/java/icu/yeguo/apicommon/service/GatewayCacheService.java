@@ -0,0 +1,11 @@
+package icu.yeguo.apicommon.service;
+
+/**
+ * 网关本地缓存管理，由网关提供，后台以广播方式调用，通知所有网关节点
+ */
+public interface GatewayCacheService {
+    /**
+     * 失效指定 accessKey 的凭证缓存
+     */
+    void evictCredential(String accessKey);
+}
@@ -0,0 +1,78 @@
+package icu.yeguo.apicommon.utils;
+
+import icu.yeguo.apicommon.constant.SignatureConstant;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+
+/**
+ * 客户端生成签名，算法见 SignatureConstant，与后台 generateSignature 和网关 SignatureVerifier 的校验一致
+ * 网关只校验签名，生成签名供调用方、压测和测试使用
+ */
+public final class SignatureUtil {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * Mac 非线程安全，每个线程复用一个实例，避免每次签名重新初始化密钥
+     */
+    private static final ThreadLocal<Mac> MAC = ThreadLocal.withInitial(() -> {
+        try {
+            Mac mac = Mac.getInstance(SignatureConstant.SIGNATURE_ALGORITHM);
+            mac.init(new SecretKeySpec(SignatureConstant.SIGNATURE_KEY.getBytes(StandardCharsets.UTF_8),
+                    SignatureConstant.SIGNATURE_ALGORITHM));
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("签名算法初始化失败", e);
+        }
+    });
+
+    private SignatureUtil() {
+    }
+
+    /**
+     * 生成静态签名，message 为 accessKey + secretKey
+     */
+    public static String sign(String message) {
+        // doFinal 后 Mac 自动重置，可直接复用
+        return hex(MAC.get().doFinal(message.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * 由 secretKey 派生防重放密钥，与后台下发给网关的一致
+     */
+    public static String replayKey(String secretKey) {
+        return hmac(secretKey, SignatureConstant.REPLAY_KEY_MESSAGE);
+    }
+
+    /**
+     * 生成带时间戳和 nonce 的签名
+     */
+    public static String signTimestamped(String replayKey, String accessKey, String timestamp, String nonce) {
+        return hmac(replayKey, accessKey + timestamp + nonce);
+    }
+
+    /**
+     * 小写十六进制
+     */
+    public static String hex(byte[] digest) {
+        char[] chars = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i++) {
+            chars[i * 2] = HEX[(digest[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX[digest[i] & 0xF];
+        }
+        return new String(chars);
+    }
+
+    private static String hmac(String key, String message) {
+        try {
+            Mac mac = Mac.getInstance(SignatureConstant.SIGNATURE_ALGORITHM);
+            mac.init(new SecretKeySpec(key.getBytes(StandardCharsets.UTF_8), SignatureConstant.SIGNATURE_ALGORITHM));
+            return hex(mac.doFinal(message.getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("签名生成失败", e);
+        }
+    }
+}
@@ -4,9 +4,11 @@ import org.apache.dubbo.config.spring.context.annotation.EnableDubbo;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication(exclude = {DataSourceAutoConfiguration.class }) // 排除数据库自动配置
 @EnableDubbo
+@EnableScheduling
 public class ApiGatewayApplication {
 
 	public static void main(String[] args) {
@@ -1,23 +1,46 @@
 package icu.yeguo.apigateway;
 
-import com.alibaba.fastjson2.JSON;
-import com.alibaba.fastjson2.JSONException;
-import icu.yeguo.apicommon.model.entity.User;
-import icu.yeguo.apicommon.service.CommonService;
+import icu.yeguo.apicommon.model.dto.InterfaceRoute;
+import icu.yeguo.apicommon.service.CommonAsyncService;
+import icu.yeguo.apigateway.accesslog.AccessLog;
+import icu.yeguo.apigateway.accesslog.AccessLogger;
+import icu.yeguo.apigateway.accesslog.BodyCapture;
+import icu.yeguo.apigateway.auth.Credential;
+import icu.yeguo.apigateway.auth.CredentialCache;
+import icu.yeguo.apigateway.auth.ReplayGuard;
+import icu.yeguo.apigateway.auth.SignatureVerifier;
+import icu.yeguo.apigateway.batch.BatchingCommonService;
+import icu.yeguo.apigateway.billing.GoldCoinBilling;
+import icu.yeguo.apigateway.body.InspectingResponse;
+import icu.yeguo.apigateway.body.MultipartFieldScanner;
+import icu.yeguo.apigateway.body.ResponseInspector;
+import icu.yeguo.apigateway.body.ScannedBody;
+import icu.yeguo.apigateway.cache.CachedResponse;
+import icu.yeguo.apigateway.cache.CachingResponse;
+import icu.yeguo.apigateway.cache.ResponseCache;
+import icu.yeguo.apigateway.cache.SharedResponse;
+import icu.yeguo.apigateway.cache.SingleFlight;
+import icu.yeguo.apigateway.metrics.GatewayMetrics;
+import icu.yeguo.apigateway.ratelimit.GatewayRateLimiter;
+import icu.yeguo.apigateway.resilience.UpstreamGuard;
+import icu.yeguo.apigateway.resilience.UpstreamPermit;
+import icu.yeguo.apigateway.route.RouteTable;
+import icu.yeguo.apigateway.warmup.GatewayWarmup;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.dubbo.config.annotation.DubboReference;
-import org.apache.commons.fileupload.MultipartStream;
 import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cloud.gateway.filter.GatewayFilterChain;
 import org.springframework.cloud.gateway.filter.GlobalFilter;
 import org.springframework.core.annotation.Order;
 import org.springframework.core.io.buffer.DataBuffer;
-import org.springframework.core.io.buffer.DataBufferFactory;
-import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
 import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.http.server.reactive.ServerHttpRequestDecorator;
 import org.springframework.http.server.reactive.ServerHttpResponse;
@@ -28,15 +51,11 @@ import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
 import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Objects;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Supplier;
 
 @Component
 @Slf4j
@@ -44,288 +63,465 @@ import java.util.regex.Pattern;
 public class CustomGlobalFilter implements GlobalFilter {
     @Value("${yeguo.gateway.base-url}")
     private String baseUrl;
-    private static final Pattern SVG_PATTERN = Pattern.compile(
-            "<svg[^>]*xmlns=\"http://www.w3.org/2000/svg\"[^>]*>",
-            Pattern.CASE_INSENSITIVE
-    );
+    private static final Set<String> CREDENTIAL_FIELDS = Set.of("accessKey", "signature");
+    private static final Set<String> TIMESTAMPED_CREDENTIAL_FIELDS = Set.of("accessKey", "signature", "timestamp",
+            "nonce");
+    private static final int MAX_NONCE_LENGTH = 64;
     @DubboReference
-    private CommonService commonService;
+    private CommonAsyncService commonAsyncService;
+    @Autowired
+    private RouteTable routeTable;
+    @Autowired
+    private GoldCoinBilling goldCoinBilling;
+    @Autowired
+    private GatewayRateLimiter rateLimiter;
+    @Autowired
+    private CredentialCache credentialCache;
+    @Autowired
+    private SignatureVerifier signatureVerifier;
+    @Autowired
+    private ReplayGuard replayGuard;
+    @Autowired
+    private AccessLogger accessLogger;
+    @Autowired
+    private GatewayMetrics gatewayMetrics;
+    @Autowired
+    private ResponseCache responseCache;
+    @Autowired
+    private SingleFlight singleFlight;
+    @Autowired
+    private UpstreamGuard upstreamGuard;
+    @Autowired
+    private BatchingCommonService batchingCommonService;
+    @Autowired
+    private GatewayWarmup gatewayWarmup;
 
     @Override
     public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
-        try {
-            ServerHttpRequest request = exchange.getRequest();
-            logRequestDetails(request);
-
-            String requestUrl = baseUrl + request.getPath();
-            log.info("请求接口URL:" + requestUrl);
-            Long interfaceInfoId = commonService.getInterfaceInfoId(requestUrl);
-            if (interfaceInfoId == null) {
-                log.error("接口不存在");
-                exchange.getResponse().setStatusCode(HttpStatus.NOT_FOUND);
-                return exchange.getResponse().setComplete();
-            }
-            // POST 请求处理
-            if (HttpMethod.POST.equals(request.getMethod())) {
-                return DataBufferUtils.join(exchange.getRequest().getBody()).flatMap(dataBuffer -> {
-                    byte[] bytes = new byte[dataBuffer.readableByteCount()];
-                    dataBuffer.read(bytes);
-                    DataBufferUtils.release(dataBuffer);
-                    String bodyString = new String(bytes, StandardCharsets.UTF_8);
-                    log.info("requestBody = {}", bodyString);
-
-                    Map<String, String> formData = parseMultipartFormData(bytes,
-                            Objects.requireNonNull(request.getHeaders().getContentType()).toString());
-                    String accessKey = formData.get("accessKey");
-                    String signature = formData.get("signature");
-
-                    if (accessKey == null || signature == null) {
-                        log.error("POST请求中缺少 accessKey 或 signature 参数");
-                        exchange.getResponse().setStatusCode(HttpStatus.BAD_REQUEST);
-                        return exchange.getResponse().setComplete();
-                    }
-
-                    log.info("POST请求参数：accessKey=" + accessKey + ", signature=" + signature);
+        ServerHttpRequest request = exchange.getRequest();
+        AccessLog accessLog = accessLogger.start(exchange);
+        // 启动预热的合成请求不限流，也不计入访问日志和请求指标
+        boolean warmup = gatewayWarmup.isWarmupRequest(request);
 
-                    ServerHttpRequest mutatedRequest = new ServerHttpRequestDecorator(exchange.getRequest()) {
-                        @Override
-                        @NonNull
-                        public Flux<DataBuffer> getBody() {
-                            return Flux.defer(() -> Mono.just(exchange.getResponse().bufferFactory().wrap(bytes)));
+        String requestUrl = baseUrl + request.getPath();
+        return gatewayMetrics.time(GatewayMetrics.STAGE_ROUTE, null, resolveRoute(requestUrl))
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .flatMap(optionalRoute -> {
+                    if (optionalRoute.isEmpty()) {
+                        return complete(exchange, HttpStatus.NOT_FOUND, "接口不存在");
+                    }
+                    InterfaceRoute route = optionalRoute.get();
+                    accessLog.setInterfaceInfoId(route.getId());
+                    Mono<Boolean> acquired = warmup ? Mono.just(true) : rateLimiter.acquireInterface(route);
+                    return acquired.flatMap(allowed -> {
+                        if (!allowed) {
+                            return complete(exchange, HttpStatus.TOO_MANY_REQUESTS, "接口请求过多，已限流");
                         }
-                    };
-
-                    return processRequest(exchange.mutate().request(mutatedRequest).build(), chain, accessKey,
-                            signature, interfaceInfoId);
+                        // 熔断时直接拒绝，不再鉴权扣费；命中缓存的请求不访问上游，照常处理
+                        if (!upstreamGuard.isCallPermitted(route) && !hasCachedResponse(request, route)) {
+                            return complete(exchange, HttpStatus.SERVICE_UNAVAILABLE, "接口熔断中，请稍后再试",
+                                    UpstreamPermit.REJECTED_CIRCUIT_OPEN);
+                        }
+                        return dispatch(exchange, chain, route);
+                    });
+                })
+                .onErrorResume(e -> {
+                    log.error("过滤器处理请求时发生异常", e);
+                    if (exchange.getResponse().isCommitted()) {
+                        return Mono.error(e);
+                    }
+                    return complete(exchange, HttpStatus.INTERNAL_SERVER_ERROR, "网关处理异常");
+                })
+                .doFinally(signalType -> {
+                    if (!warmup) {
+                        accessLogger.finish(accessLog, exchange);
+                    }
                 });
-            } else {
-                // GET请求处理
-                MultiValueMap<String, String> queryParams = request.getQueryParams();
-                String accessKey = queryParams.getFirst("accessKey");
-                String signature = queryParams.getFirst("signature");
-                log.info("GET请求参数：accessKey=" + accessKey + ", signature=" + signature);
-                return processRequest(exchange, chain, accessKey, signature, interfaceInfoId);
-            }
-        } catch (Exception e) {
-            log.error("过滤器处理请求时发生异常", e);
-            exchange.getResponse().setStatusCode(HttpStatus.INTERNAL_SERVER_ERROR);
-            return exchange.getResponse().setComplete();
-        }
     }
 
-    private void logRequestDetails(ServerHttpRequest request) {
-        log.info("新的请求 =======================================================================================");
-        log.info("请求id:" + request.getId());
-        log.info("请求方法:" + request.getMethod());
-        log.info("请求接口URI:" + request.getURI());
-        log.info("请求路径:" + request.getPath());
-        log.info("请求Cookies:" + request.getCookies());
-        log.info("请求参数:" + request.getQueryParams());
-        log.info("本地网关地址:" + request.getLocalAddress());
-        log.info("远程请求地址:" + request.getRemoteAddress());
-        log.info("请求头:" + request.getHeaders());
+    private boolean hasCachedResponse(ServerHttpRequest request, InterfaceRoute route) {
+        return responseCache.isCacheable(request, route) && responseCache.get(responseCache.key(request)) != null;
     }
 
-    private Mono<Void> processRequest(ServerWebExchange exchange, GatewayFilterChain chain,
-                                      String accessKey, String signature, Long interfaceInfoId) {
-        log.info("accessKey:" + accessKey);
-        log.info("signature:" + signature);
+    private Mono<Void> dispatch(ServerWebExchange exchange, GatewayFilterChain chain, InterfaceRoute route) {
+        ServerHttpRequest request = exchange.getRequest();
+        // POST 请求处理
+        if (HttpMethod.POST.equals(request.getMethod())) {
+            return filterPost(exchange, chain, route);
+        }
+        // GET请求处理
+        MultiValueMap<String, String> queryParams = request.getQueryParams();
+        String accessKey = queryParams.getFirst("accessKey");
+        String signature = queryParams.getFirst("signature");
+        String timestamp = queryParams.getFirst("timestamp");
+        String nonce = queryParams.getFirst("nonce");
+        return processRequest(exchange, chain, accessKey, signature, timestamp, nonce, route);
+    }
 
+    private Mono<Void> filterPost(ServerWebExchange exchange, GatewayFilterChain chain, InterfaceRoute route) {
         ServerHttpRequest request = exchange.getRequest();
-        String X_Online_Invoking = request.getHeaders().getFirst("X-Online-invoking");
+        String boundary = MultipartFieldScanner.getBoundary(request.getHeaders().getFirst(HttpHeaders.CONTENT_TYPE));
+        if (boundary == null) {
+            return complete(exchange, HttpStatus.BAD_REQUEST, "POST请求不是 multipart/form-data");
+        }
+        // 边读边扫描，找到 accessKey 和 signature 即停止，原始数据块原样转发
+        // 开启防重放时还要找 timestamp 和 nonce，没带的请求会扫描完整个请求体
+        MultipartFieldScanner scanner = new MultipartFieldScanner(boundary,
+                replayGuard.isEnabled() ? TIMESTAMPED_CREDENTIAL_FIELDS : CREDENTIAL_FIELDS);
+        return ScannedBody.scan(request.getBody(), scanner).flatMap(scannedBody -> {
+            String accessKey = scannedBody.getField("accessKey");
+            String signature = scannedBody.getField("signature");
+            String timestamp = scannedBody.getField("timestamp");
+            String nonce = scannedBody.getField("nonce");
 
-        try {
-            User user = commonService.getUser(accessKey);
-            if (user == null) {
-                log.info("用户不存在");
-                exchange.getResponse().setStatusCode(HttpStatus.UNAUTHORIZED);
-                return exchange.getResponse().setComplete();
+            if (accessKey == null || signature == null) {
+                scannedBody.discard();
+                return complete(exchange, HttpStatus.BAD_REQUEST, "POST请求中缺少 accessKey 或 signature 参数");
             }
 
-            String message = user.getAccessKey() + user.getSecretKey();
-            String generatedSignature = commonService.generateSignature(message);
-            log.info("服务端验证签名:" + generatedSignature);
+            BodyCapture requestBody = AccessLog.of(exchange).getRequestBody();
+            ServerHttpRequest mutatedRequest = new ServerHttpRequestDecorator(request) {
+                @Override
+                @NonNull
+                public Flux<DataBuffer> getBody() {
+                    return requestBody != null ? requestBody.tap(scannedBody.getBody()) : scannedBody.getBody();
+                }
+            };
 
-            if (!generatedSignature.equals(signature)) {
-                log.info("签名不一致");
-                exchange.getResponse().setStatusCode(HttpStatus.UNAUTHORIZED);
-                return exchange.getResponse().setComplete();
-            }
+            return processRequest(exchange.mutate().request(mutatedRequest).build(), chain, accessKey,
+                    signature, timestamp, nonce, route)
+                    // 鉴权或扣费失败时请求体不会被转发，释放暂存的数据块
+                    .doFinally(signalType -> scannedBody.discard());
+        });
+    }
 
-            // 没有该请求头 不是在线调用 扣金币
-            if (X_Online_Invoking == null) {
-                boolean success = deductGoldCoin(interfaceInfoId, user);
-                // 失败
-                if (!success) {
-                    exchange.getResponse().setStatusCode(HttpStatus.BAD_REQUEST);
-                    String responseBody = "{\"code\":400,\"result\":null,\"message\":\"果币不足\"}";
-                    DataBuffer buffer = exchange.getResponse().bufferFactory()
-                            .wrap(responseBody.getBytes(StandardCharsets.UTF_8));
-                    return exchange.getResponse().writeWith(Mono.just(buffer));
-                }
-            }
-            return handleResponse(exchange, chain, interfaceInfoId, user);
-        } catch (Exception e) {
-            log.error("处理请求时发生异常", e);
-            exchange.getResponse().setStatusCode(HttpStatus.INTERNAL_SERVER_ERROR);
-            return exchange.getResponse().setComplete();
+    /**
+     * 解析接口路由，接口不存在时为空
+     */
+    private Mono<InterfaceRoute> resolveRoute(String requestUrl) {
+        // 路由表未加载完成前回退到远程查询，只拿得到接口id，扣费金额由后台查询
+        if (!routeTable.isLoaded()) {
+            return Mono.fromFuture(() -> commonAsyncService.getInterfaceInfoId(requestUrl))
+                    .map(interfaceInfoId -> {
+                        InterfaceRoute route = new InterfaceRoute();
+                        route.setId(interfaceInfoId);
+                        return route;
+                    });
         }
+        return Mono.justOrEmpty(routeTable.get(requestUrl));
     }
 
-    private Map<String, String> parseMultipartFormData(byte[] bodyBytes, String contentType) {
-        Map<String, String> formData = new HashMap<>();
-        try {
-            ByteArrayInputStream inputStream = new ByteArrayInputStream(bodyBytes);
-            MultipartStream multipartStream = new MultipartStream(inputStream,
-                    getBoundary(contentType).getBytes(StandardCharsets.UTF_8), 4096, null);
-            boolean nextPart = multipartStream.skipPreamble();
-            while (nextPart) {
-                String header = multipartStream.readHeaders();
-                if (header.contains("form-data; name=\"accessKey\"")) {
-                    String accessKey = readMultipartContentAsString(multipartStream);
-                    formData.put("accessKey", accessKey);
-                } else if (header.contains("form-data; name=\"signature\"")) {
-                    String signature = readMultipartContentAsString(multipartStream);
-                    formData.put("signature", signature);
-                } else {
-                    multipartStream.discardBodyData();
-                }
-                nextPart = multipartStream.readBoundary();
+    private Mono<Void> processRequest(ServerWebExchange exchange, GatewayFilterChain chain, String accessKey,
+                                      String signature, String timestamp, String nonce, InterfaceRoute route) {
+        AccessLog.of(exchange).setAccessKey(accessKey);
+        Mono<Boolean> acquired = gatewayWarmup.isWarmupRequest(exchange.getRequest())
+                ? Mono.just(true) : rateLimiter.acquireKey(accessKey);
+        return acquired.flatMap(allowed -> {
+            if (!allowed) {
+                return complete(exchange, HttpStatus.TOO_MANY_REQUESTS, "accessKey请求过多，已限流");
             }
-        } catch (IOException e) {
-            log.error("解析multipart/form-data请求体时发生错误", e);
-        }
-        return formData;
+            return authenticate(exchange, chain, accessKey, signature, timestamp, nonce, route);
+        });
     }
 
-    private String readMultipartContentAsString(MultipartStream multipartStream) throws IOException {
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        multipartStream.readBodyData(outputStream);
-        return outputStream.toString(StandardCharsets.UTF_8);
+    private Mono<Void> authenticate(ServerWebExchange exchange, GatewayFilterChain chain, String accessKey,
+                                    String signature, String timestamp, String nonce, InterfaceRoute route) {
+        String X_Online_Invoking = exchange.getRequest().getHeaders().getFirst("X-Online-invoking");
+        Long interfaceInfoId = route.getId();
+        // 防重放：带了时间戳和 nonce(或配置为必须带)时按新签名校验，过期请求在查询凭证前拒绝
+        Long requestTime = null;
+        if (replayGuard.isEnabled() && (timestamp != null && nonce != null || replayGuard.isRequired())) {
+            if (timestamp == null || nonce == null || nonce.isEmpty() || nonce.length() > MAX_NONCE_LENGTH) {
+                return complete(exchange, HttpStatus.BAD_REQUEST, "缺少 timestamp 或 nonce 参数");
+            }
+            requestTime = parseTimestamp(timestamp);
+            if (requestTime == null) {
+                return complete(exchange, HttpStatus.BAD_REQUEST, "timestamp 格式错误");
+            }
+            if (!replayGuard.isFresh(requestTime, currentSeconds())) {
+                return complete(exchange, HttpStatus.UNAUTHORIZED, "请求已过期", "expired");
+            }
+        }
+        Long signedTime = requestTime;
+        return gatewayMetrics.time(GatewayMetrics.STAGE_CREDENTIAL, interfaceInfoId, credentialCache.get(accessKey))
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .flatMap(optionalCredential -> {
+                    if (optionalCredential.isEmpty()) {
+                        return complete(exchange, HttpStatus.UNAUTHORIZED, "用户不存在");
+                    }
+                    Credential credential = optionalCredential.get();
+                    if (!credential.isEnabled()) {
+                        return complete(exchange, HttpStatus.UNAUTHORIZED, "用户已被禁用");
+                    }
+                    if (!gatewayMetrics.time(GatewayMetrics.STAGE_SIGNATURE, interfaceInfoId, () -> signedTime != null
+                            ? signatureVerifier.verify(credential, signature, timestamp, nonce)
+                            : signatureVerifier.verify(credential, signature))) {
+                        return complete(exchange, HttpStatus.UNAUTHORIZED, "签名不一致");
+                    }
+                    // 签名通过后才记录 nonce，伪造的请求不占用布隆过滤器
+                    if (signedTime != null) {
+                        ReplayGuard.Result replayResult = replayGuard.check(accessKey, signedTime, nonce,
+                                currentSeconds());
+                        if (replayResult == ReplayGuard.Result.EXPIRED) {
+                            return complete(exchange, HttpStatus.UNAUTHORIZED, "请求已过期", "expired");
+                        }
+                        if (replayResult == ReplayGuard.Result.REPLAYED) {
+                            return complete(exchange, HttpStatus.UNAUTHORIZED, "重复的请求", "replayed");
+                        }
+                    }
+                    AccessLog accessLog = AccessLog.of(exchange);
+                    accessLog.setUserId(credential.getUserId());
+
+                    // 有该请求头 是在线调用 不扣金币，也就没有可返还的流水
+                    if (X_Online_Invoking != null) {
+                        return handleResponse(exchange, chain, route, credential.getUserId(), null);
+                    }
+                    // 扣费流水按该id幂等，返还时也按该id返还
+                    String billingId = UUID.randomUUID().toString().replace("-", "");
+                    accessLog.setBillingId(billingId);
+                    return deductGoldCoin(billingId, credential.getUserId(), route).flatMap(success -> {
+                        // 失败
+                        if (!success) {
+                            accessLog.setReason("果币不足");
+                            accessLog.setResult("insufficient_coins");
+                            exchange.getResponse().setStatusCode(HttpStatus.BAD_REQUEST);
+                            String responseBody = "{\"code\":400,\"result\":null,\"message\":\"果币不足\"}";
+                            DataBuffer buffer = exchange.getResponse().bufferFactory()
+                                    .wrap(responseBody.getBytes(StandardCharsets.UTF_8));
+                            return exchange.getResponse().writeWith(Mono.just(buffer));
+                        }
+                        return handleResponse(exchange, chain, route, credential.getUserId(), billingId);
+                    });
+                });
     }
 
-    private String getBoundary(String contentType) {
-        String boundary = null;
-        String[] params = contentType.split(";");
-        for (String param : params) {
-            param = param.trim();
-            if (param.startsWith("boundary=")) {
-                boundary = param.substring("boundary=".length());
-                break;
+    private Mono<Void> handleResponse(ServerWebExchange exchange, GatewayFilterChain chain,
+                                      InterfaceRoute route, Long userId, String billingId) {
+        ServerHttpRequest request = exchange.getRequest();
+        AccessLog accessLog = AccessLog.of(exchange);
+        boolean cacheable = responseCache.isCacheable(request, route);
+        boolean coalescable = singleFlight.isCoalescable(request, route);
+        String key = cacheable || coalescable ? responseCache.key(request) : null;
+
+        // 命中缓存直接返回，照常扣费计数，不访问上游
+        if (cacheable) {
+            CachedResponse cachedResponse = responseCache.get(key);
+            if (cachedResponse != null) {
+                return writeCached(exchange, cachedResponse, route, accessLog);
             }
         }
-        return boundary;
+        String cacheKey = cacheable ? key : null;
+        if (!coalescable) {
+            return forward(exchange, chain, route, userId, billingId, cacheKey, null);
+        }
+        // 相同请求正在访问上游时等待共用它的响应
+        SingleFlight.Flight flight = singleFlight.join(key);
+        if (flight.isLeader()) {
+            return forward(exchange, chain, route, userId, billingId, cacheKey, flight)
+                    .doFinally(signalType -> flight.complete(null));
+        }
+        return flight.await().flatMap(sharedResponse -> sharedResponse.isPresent()
+                ? writeShared(exchange, sharedResponse.get(), route, userId, billingId, accessLog)
+                : forward(exchange, chain, route, userId, billingId, cacheKey, null));
     }
 
-    private Mono<Void> handleResponse(ServerWebExchange exchange, GatewayFilterChain chain,
-                                     Long interfaceInfoId, User user) {
-        try {
-            ServerHttpResponse originalResponse = exchange.getResponse();
-            HttpStatus statusCode = (HttpStatus) originalResponse.getStatusCode();
-            DataBufferFactory bufferFactory = originalResponse.bufferFactory();
+    /**
+     * 真正访问上游前申请许可，命中缓存和共用响应的请求不占用并发名额
+     * 熔断、超过自适应并发上限或隔离舱已满时拒绝，已扣的金币返还
+     */
+    private Mono<Void> forward(ServerWebExchange exchange, GatewayFilterChain chain, InterfaceRoute route,
+                               Long userId, String billingId, String cacheKey, SingleFlight.Flight flight) {
+        return upstreamGuard.enter(route).flatMap(permit -> {
+            if (permit.getRejection() != null) {
+                if (billingId != null) {
+                    goldCoinBilling.refund(billingId, userId, route);
+                }
+                return complete(exchange, HttpStatus.SERVICE_UNAVAILABLE,
+                        UpstreamPermit.REJECTED_CIRCUIT_OPEN.equals(permit.getRejection())
+                                ? "接口熔断中，请稍后再试" : "接口并发请求过多，请稍后再试",
+                        permit.getRejection());
+            }
+            permit.attach(exchange);
+            return forwardUpstream(exchange, chain, route, userId, billingId, cacheKey, flight)
+                    .doFinally(signalType -> permit.release());
+        });
+    }
 
-            log.info("响应日志 =====================================================================================");
-            log.info("HttpStatusCode:" + statusCode);
+    private Mono<Void> forwardUpstream(ServerWebExchange exchange, GatewayFilterChain chain, InterfaceRoute route,
+                                       Long userId, String billingId, String cacheKey,
+                                       SingleFlight.Flight flight) {
+        ServerHttpResponse originalResponse = exchange.getResponse();
+        HttpStatus statusCode = (HttpStatus) originalResponse.getStatusCode();
+        AccessLog accessLog = AccessLog.of(exchange);
 
-            if (statusCode == HttpStatus.OK) {
-                ServerHttpResponseDecorator decoratedResponse = new ServerHttpResponseDecorator(originalResponse) {
+        if (statusCode == HttpStatus.OK) {
+            ServerHttpResponse upstreamResponse = originalResponse;
+            if (cacheKey != null || flight != null) {
+                upstreamResponse = new CachingResponse(originalResponse, responseCache.getMaxEntryBytes(), body -> {
+                    ResponseInspector.Outcome outcome = accessLog.getOutcome() != null
+                            ? ResponseInspector.Outcome.valueOf(accessLog.getOutcome())
+                            : ResponseInspector.Outcome.UNKNOWN;
+                    MediaType contentType = originalResponse.getHeaders().getContentType();
+                    // 判定成功的响应才放入缓存
+                    if (cacheKey != null && outcome == ResponseInspector.Outcome.SUCCESS) {
+                        responseCache.put(cacheKey, route, contentType, body);
+                    }
+                    if (flight != null) {
+                        flight.complete(new SharedResponse(originalResponse.getStatusCode(), contentType, body,
+                                outcome));
+                    }
+                });
+            }
+            // 响应边转发边判定，不再整体缓存响应体
+            InspectingResponse inspectingResponse = new InspectingResponse(upstreamResponse, outcome -> {
+                accessLog.setOutcome(outcome.name());
+                afterResponse(outcome, route, userId, billingId, accessLog);
+            });
+            ServerHttpResponse decoratedResponse = inspectingResponse;
+            BodyCapture responseBody = accessLog.getResponseBody();
+            if (responseBody != null) {
+                decoratedResponse = new ServerHttpResponseDecorator(decoratedResponse) {
                     @Override
-                    public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
-                        log.info("body instanceof Flux: {}", (body instanceof Flux));
-
-                        if (body instanceof Flux) {
-                            Flux<DataBuffer> fluxBody = (Flux<DataBuffer>) body;
-
-                            return DataBufferUtils.join(fluxBody)
-                                    .flatMap(dataBuffer -> {
-                                        byte[] content = new byte[dataBuffer.readableByteCount()];
-                                        dataBuffer.read(content);
-                                        DataBufferUtils.release(dataBuffer);
-                                        // 对响应进行处理和响应后操作
-                                        String data = new String(content, StandardCharsets.UTF_8);
-                                        log.info("响应结果：" + data);
-                                        Response response = null;
-                                        // 返回svg二维码处理
-                                        if (isSvg(data)) {
-                                            // 接口计数
-                                            invoking(interfaceInfoId);
-                                        } else {
-                                            // 其他JSON返回处理
-                                            try {
-                                                response = JSON.parseObject(data, Response.class);
-                                            } catch (JSONException e) {
-                                                log.error("JSON解析错误: ", e);
-                                            }
-                                            // 调用接口成功后 处理
-                                            if (response != null && response.getCode() == 200) {
-                                                // 调用计数
-                                                invoking(interfaceInfoId);
-                                            }
-                                            // 调用成功 但是失败返还金币
-                                            if (response != null && response.getCode() != 200) {
-                                                Long goldCoins = commonService.returnGoldCoins(interfaceInfoId, user);
-                                                if (goldCoins < 0) {
-                                                    log.error("果币返还失败");
-                                                } else {
-                                                    log.info("果币返还成功，当前果币：" + goldCoins);
-                                                }
-                                            }
-                                        }
-
-                                        DataBuffer newBuffer = bufferFactory.wrap(content);
-                                        return super.writeWith(Mono.just(newBuffer));
-                                    });
-                        } else {
-                            return super.writeWith(body);
-                        }
+                    @NonNull
+                    public Mono<Void> writeWith(@NonNull Publisher<? extends DataBuffer> body) {
+                        return super.writeWith(responseBody.tap(Flux.from(body)));
                     }
-
                 };
-                return chain.filter(exchange.mutate().response(decoratedResponse).build());
             }
-            return chain.filter(exchange);
-        } catch (Exception e) {
-            log.error("处理响应时发生异常", e);
-            return chain.filter(exchange);
+            ServerWebExchange decoratedExchange = exchange.mutate().response(decoratedResponse).build();
+            return callUpstream(exchange, route, () -> chain.filter(decoratedExchange))
+                    .doFinally(signalType -> gatewayMetrics.record(GatewayMetrics.STAGE_INSPECT, route.getId(),
+                            inspectingResponse.getInspectNanos()));
         }
+        return callUpstream(exchange, route, () -> chain.filter(exchange));
     }
 
-    private boolean deductGoldCoin(Long interfaceInfoId, User user) {
-        User updatedUser = null;
-        try {
-            log.info("扣除金币前：" + user.getGoldCoin());
-            updatedUser = commonService.deductGoldCoin(interfaceInfoId, user);
-            if (updatedUser == null) {
-                log.warn(user.getId() + ":扣除金币失败");
-                return false;
+    /**
+     * 访问上游，耗时计入 upstream 阶段，结果记录到该接口的熔断器
+     */
+    private Mono<Void> callUpstream(ServerWebExchange exchange, InterfaceRoute route, Supplier<Mono<Void>> upstream) {
+        UpstreamPermit permit = UpstreamPermit.of(exchange);
+        Mono<Void> call = Mono.defer(() -> {
+            if (permit != null) {
+                permit.upstreamStarted();
             }
-        } catch (Exception e) {
-            log.error("扣除金币时发生异常", e);
+            return upstream.get();
+        });
+        if (permit != null) {
+            call = call.doOnSuccess(v -> permit.upstreamCompleted(exchange.getResponse().getStatusCode(), null))
+                    .doOnError(e -> permit.upstreamCompleted(null, e));
         }
-        if (updatedUser != null) {
-            log.info("扣除金币后：" + updatedUser.getGoldCoin());
+        return gatewayMetrics.time(GatewayMetrics.STAGE_UPSTREAM, route.getId(), call);
+    }
+
+    private Mono<Void> writeCached(ServerWebExchange exchange, CachedResponse cachedResponse, InterfaceRoute route,
+                                   AccessLog accessLog) {
+        accessLog.setOutcome(ResponseInspector.Outcome.SUCCESS.name());
+        accessLog.setResult("cache_hit");
+        invoking(route.getId());
+        return writeBody(exchange, HttpStatus.OK, cachedResponse.getContentType(), cachedResponse.getBody());
+    }
+
+    private Mono<Void> writeShared(ServerWebExchange exchange, SharedResponse sharedResponse, InterfaceRoute route,
+                                   Long userId, String billingId, AccessLog accessLog) {
+        // 共用响应也按各自的判定结果计数或返还
+        accessLog.setOutcome(sharedResponse.getOutcome().name());
+        afterResponse(sharedResponse.getOutcome(), route, userId, billingId, accessLog);
+        return writeBody(exchange, sharedResponse.getStatus(), sharedResponse.getContentType(),
+                sharedResponse.getBody());
+    }
+
+    private Mono<Void> writeBody(ServerWebExchange exchange, HttpStatusCode status, MediaType contentType,
+                                 byte[] body) {
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(status);
+        if (contentType != null) {
+            response.getHeaders().setContentType(contentType);
         }
-        return true;
+        DataBuffer buffer = response.bufferFactory().wrap(body);
+        return response.writeWith(Mono.just(buffer));
     }
 
-    private void invoking(Long interfaceInfoId) {
+    private void afterResponse(ResponseInspector.Outcome outcome, InterfaceRoute route, Long userId,
+                               String billingId, AccessLog accessLog) {
+        switch (outcome) {
+            case SUCCESS:
+                // 调用计数
+                accessLog.setResult("success");
+                invoking(route.getId());
+                break;
+            case FAILURE:
+                // 调用成功 但是失败返还金币
+                if (billingId != null) {
+                    accessLog.setResult("refunded");
+                    goldCoinBilling.refund(billingId, userId, route);
+                } else {
+                    accessLog.setResult("failure");
+                }
+                break;
+            default:
+                accessLog.setResult("unknown");
+                break;
+        }
+    }
+
+    private Mono<Boolean> deductGoldCoin(String billingId, Long userId, InterfaceRoute route) {
+        // 扣费服务异常时拒绝请求，不再放行未扣费的调用
+        return gatewayMetrics.time(GatewayMetrics.STAGE_DEDUCT, route.getId(),
+                        goldCoinBilling.deduct(billingId, userId, route))
+                .doOnNext(success -> {
+                    if (!success) {
+                        log.debug("{}:扣除金币失败", userId);
+                    }
+                });
+    }
+
+    private static Long parseTimestamp(String timestamp) {
         try {
-            Long count = commonService.invokingCount(interfaceInfoId);
-            if (count < 0) {
-                log.warn("接口调用次数更新失败====接口id为：" + interfaceInfoId);
-            }
-            log.info("接口" + interfaceInfoId + "调用次数：" + count);
-        } catch (Exception e) {
-            log.error("调用接口时发生异常", e);
+            return Long.parseLong(timestamp);
+        } catch (NumberFormatException e) {
+            return null;
         }
     }
 
-    private boolean isSvg(String content) {
-        if (content == null) {
-            return false;
+    private static long currentSeconds() {
+        return System.currentTimeMillis() / 1000;
+    }
+
+    private void invoking(Long interfaceInfoId) {
+        batchingCommonService.invokingCount(interfaceInfoId).whenComplete((ignored, e) -> {
+            if (e != null) {
+                log.error("调用接口时发生异常", e);
+            }
+        });
+    }
+
+    private Mono<Void> complete(ServerWebExchange exchange, HttpStatus status, String reason) {
+        return complete(exchange, status, reason, result(status));
+    }
+
+    private Mono<Void> complete(ServerWebExchange exchange, HttpStatus status, String reason, String result) {
+        AccessLog accessLog = AccessLog.of(exchange);
+        accessLog.setReason(reason);
+        accessLog.setResult(result);
+        exchange.getResponse().setStatusCode(status);
+        return exchange.getResponse().setComplete();
+    }
+
+    private static String result(HttpStatus status) {
+        switch (status) {
+            case NOT_FOUND:
+                return "not_found";
+            case TOO_MANY_REQUESTS:
+                return "rate_limited";
+            case BAD_REQUEST:
+                return "bad_request";
+            case UNAUTHORIZED:
+                return "unauthorized";
+            default:
+                return "error";
         }
-        // 使用正则表达式匹配内容
-        Matcher matcher = SVG_PATTERN.matcher(content.trim());
-        return matcher.find();
     }
 }
@@ -0,0 +1,115 @@
+package icu.yeguo.apigateway.accesslog;
+
+import lombok.Data;
+import org.springframework.web.server.ServerWebExchange;
+
+/**
+ * 一次请求的访问日志，处理过程中逐步填充，请求结束时输出一行
+ */
+@Data
+public class AccessLog {
+    private static final String ATTRIBUTE = AccessLog.class.getName();
+
+    private final long startNanos = System.nanoTime();
+    private String requestId;
+    private String method;
+    private String path;
+    private String remoteAddress;
+    private Long interfaceInfoId;
+    private String accessKey;
+    private Long userId;
+    private String billingId;
+    private Integer status;
+    private String outcome;
+    /**
+     * 请求结果，用于统计：not_found rate_limited bad_request unauthorized insufficient_coins
+     * success cache_hit refunded failure unknown upstream_error error
+     */
+    private String result;
+    /**
+     * 网关拒绝请求的原因
+     */
+    private String reason;
+    /**
+     * 采样时才记录请求体和响应体
+     */
+    private BodyCapture requestBody;
+    private BodyCapture responseBody;
+
+    public void attach(ServerWebExchange exchange) {
+        exchange.getAttributes().put(ATTRIBUTE, this);
+    }
+
+    public static AccessLog of(ServerWebExchange exchange) {
+        AccessLog accessLog = exchange.getAttribute(ATTRIBUTE);
+        return accessLog != null ? accessLog : new AccessLog();
+    }
+
+    /**
+     * 一行 JSON
+     */
+    public String format() {
+        StringBuilder builder = new StringBuilder(256).append('{');
+        append(builder, "requestId", requestId);
+        append(builder, "method", method);
+        append(builder, "path", path);
+        append(builder, "remote", remoteAddress);
+        append(builder, "interfaceId", interfaceInfoId);
+        append(builder, "accessKey", accessKey);
+        append(builder, "userId", userId);
+        append(builder, "billingId", billingId);
+        append(builder, "status", status);
+        append(builder, "outcome", outcome);
+        append(builder, "result", result);
+        append(builder, "reason", reason);
+        append(builder, "costMs", (System.nanoTime() - startNanos) / 1_000_000);
+        if (requestBody != null) {
+            append(builder, "requestBody", requestBody.toString());
+        }
+        if (responseBody != null) {
+            append(builder, "responseBody", responseBody.toString());
+        }
+        builder.setLength(builder.length() - 1);
+        return builder.append('}').toString();
+    }
+
+    private static void append(StringBuilder builder, String name, Object value) {
+        if (value == null) {
+            return;
+        }
+        builder.append('"').append(name).append("\":");
+        if (value instanceof Number) {
+            builder.append(value).append(',');
+            return;
+        }
+        builder.append('"');
+        String text = value.toString();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"':
+                    builder.append("\\\"");
+                    break;
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                case '\r':
+                    builder.append("\\r");
+                    break;
+                case '\t':
+                    builder.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        builder.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        builder.append(c);
+                    }
+            }
+        }
+        builder.append("\",");
+    }
+}
@@ -0,0 +1,70 @@
+package icu.yeguo.apigateway.accesslog;
+
+import icu.yeguo.apigateway.metrics.GatewayMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 访问日志
+ * 每个请求输出一行，由 logback-spring.xml 中的异步 appender 写出；ACCESS_LOG 级别关闭时不做格式化
+ * 请求结果同时计入 GatewayMetrics
+ */
+@Component
+public class AccessLogger {
+    private static final Logger ACCESS_LOG = LoggerFactory.getLogger("ACCESS_LOG");
+
+    private final double bodySampleRate;
+    private final int bodyMaxBytes;
+    private final GatewayMetrics gatewayMetrics;
+
+    public AccessLogger(@Value("${yeguo.gateway.access-log.body-sample-rate:0}") double bodySampleRate,
+                        @Value("${yeguo.gateway.access-log.body-max-bytes:1024}") int bodyMaxBytes,
+                        GatewayMetrics gatewayMetrics) {
+        this.bodySampleRate = bodySampleRate;
+        this.bodyMaxBytes = bodyMaxBytes;
+        this.gatewayMetrics = gatewayMetrics;
+    }
+
+    public AccessLog start(ServerWebExchange exchange) {
+        AccessLog accessLog = new AccessLog();
+        if (ACCESS_LOG.isInfoEnabled()) {
+            ServerHttpRequest request = exchange.getRequest();
+            accessLog.setRequestId(request.getId());
+            accessLog.setMethod(request.getMethod().name());
+            accessLog.setPath(request.getPath().value());
+            if (request.getRemoteAddress() != null) {
+                accessLog.setRemoteAddress(request.getRemoteAddress().getHostString());
+            }
+            // 按比例采样记录报文
+            if (bodySampleRate > 0 && ThreadLocalRandom.current().nextDouble() < bodySampleRate) {
+                accessLog.setRequestBody(new BodyCapture(bodyMaxBytes));
+                accessLog.setResponseBody(new BodyCapture(bodyMaxBytes));
+            }
+        }
+        accessLog.attach(exchange);
+        return accessLog;
+    }
+
+    public void finish(AccessLog accessLog, ServerWebExchange exchange) {
+        HttpStatusCode statusCode = exchange.getResponse().getStatusCode();
+        if (accessLog.getResult() == null) {
+            // 上游非 200 时不做响应判定
+            accessLog.setResult(statusCode != null && !statusCode.is2xxSuccessful() ? "upstream_error" : "unknown");
+        }
+        gatewayMetrics.recordRequest(accessLog);
+        if (!ACCESS_LOG.isInfoEnabled()) {
+            return;
+        }
+        if (statusCode != null) {
+            accessLog.setStatus(statusCode.value());
+        }
+        ACCESS_LOG.info(accessLog.format());
+    }
+}
@@ -0,0 +1,50 @@
+package icu.yeguo.apigateway.accesslog;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import reactor.core.publisher.Flux;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 转发时顺带截取报文开头的部分，不改变原数据块
+ */
+public class BodyCapture {
+    private final int maxBytes;
+    private final ByteArrayOutputStream captured;
+    private long totalBytes;
+
+    public BodyCapture(int maxBytes) {
+        this.maxBytes = maxBytes;
+        this.captured = new ByteArrayOutputStream(Math.min(maxBytes, 256));
+    }
+
+    public Flux<DataBuffer> tap(Flux<DataBuffer> body) {
+        return body.doOnNext(this::capture);
+    }
+
+    private synchronized void capture(DataBuffer dataBuffer) {
+        totalBytes += dataBuffer.readableByteCount();
+        int remaining = maxBytes - captured.size();
+        if (remaining <= 0) {
+            return;
+        }
+        try (DataBuffer.ByteBufferIterator iterator = dataBuffer.readableByteBuffers()) {
+            while (iterator.hasNext() && remaining > 0) {
+                ByteBuffer byteBuffer = iterator.next();
+                int length = Math.min(remaining, byteBuffer.remaining());
+                byte[] bytes = new byte[length];
+                byteBuffer.get(bytes);
+                captured.write(bytes, 0, length);
+                remaining -= length;
+            }
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        String text = captured.toString(StandardCharsets.UTF_8);
+        return totalBytes > captured.size() ? text + "...(" + totalBytes + " bytes)" : text;
+    }
+}
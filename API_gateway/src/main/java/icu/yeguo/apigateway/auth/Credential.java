@@ -0,0 +1,49 @@
+package icu.yeguo.apigateway.auth;
+
+import icu.yeguo.apicommon.model.dto.AuthPrincipal;
+import icu.yeguo.apicommon.constant.SignatureConstant;
+import lombok.Getter;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 网关鉴权凭证，只保留鉴权需要的字段，不缓存余额，也不持有 secretKey
+ */
+@Getter
+public final class Credential {
+    private final Long userId;
+    private final String accessKey;
+    /**
+     * 用户状态 0-正常
+     */
+    private final Integer userStatus;
+    /**
+     * 期望签名(后台计算的 accessKey + secretKey 的签名)，密钥不变签名就不变，随凭证一起缓存
+     */
+    private final byte[] expectedSignature;
+    /**
+     * 防重放密钥，校验带时间戳和 nonce 的签名；后台未下发时为空，此类请求一律校验失败
+     */
+    private final SecretKeySpec replayKey;
+
+    public Credential(Long userId, String accessKey, Integer userStatus, byte[] expectedSignature,
+                      String replayKey) {
+        this.userId = userId;
+        this.accessKey = accessKey;
+        this.userStatus = userStatus;
+        this.expectedSignature = expectedSignature;
+        this.replayKey = replayKey != null && !replayKey.isEmpty()
+                ? new SecretKeySpec(replayKey.getBytes(StandardCharsets.UTF_8), SignatureConstant.SIGNATURE_ALGORITHM)
+                : null;
+    }
+
+    public static Credential of(AuthPrincipal principal) {
+        return new Credential(principal.getUserId(), principal.getAccessKey(), principal.getUserStatus(),
+                principal.getSignatureDigest().getBytes(StandardCharsets.US_ASCII), principal.getReplayKey());
+    }
+
+    public boolean isEnabled() {
+        return userStatus == null || userStatus == 0;
+    }
+}
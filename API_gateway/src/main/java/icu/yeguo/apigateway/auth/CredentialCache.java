@@ -0,0 +1,58 @@
+package icu.yeguo.apigateway.auth;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import icu.yeguo.apigateway.batch.BatchingCommonService;
+import icu.yeguo.apigateway.support.BlockingExecutor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+/**
+ * accessKey 凭证缓存
+ * 容量和过期时间有上限，密钥轮换、用户禁用或删除时由后台广播失效
+ */
+@Slf4j
+@Component
+public class CredentialCache {
+
+    @Autowired
+    private BatchingCommonService batchingCommonService;
+
+    private final AsyncCache<String, Credential> cache;
+
+    public CredentialCache(@Value("${yeguo.gateway.credential.maximum-size:10000}") long maximumSize,
+                           @Value("${yeguo.gateway.credential.expire-seconds:60}") long expireSeconds,
+                           BlockingExecutor blockingExecutor) {
+        this.cache = Caffeine.newBuilder()
+                .executor(blockingExecutor.executor())
+                .maximumSize(maximumSize)
+                .expireAfterWrite(Duration.ofSeconds(expireSeconds))
+                .buildAsync();
+    }
+
+    /**
+     * 查询凭证，未命中时异步远程加载，同一 accessKey 的并发加载只会执行一次
+     *
+     * @return 用户不存在时为空
+     */
+    public Mono<Credential> get(String accessKey) {
+        if (accessKey == null) {
+            return Mono.empty();
+        }
+        // 加载结果为 null 时 Caffeine 不缓存该条目
+        return Mono.fromFuture(() -> cache.get(accessKey, (key, executor) -> batchingCommonService.getAuthPrincipal(key)
+                .thenApply(principal -> principal != null ? Credential.of(principal) : null)));
+    }
+
+    public void evict(String accessKey) {
+        if (accessKey != null) {
+            cache.synchronous().invalidate(accessKey);
+            log.info("凭证缓存已失效:{}", accessKey);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package icu.yeguo.apigateway.auth;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 按 64 位字分块的布隆过滤器，一个 nonce 的 6 个位都落在同一个 long 里
+ * 检查和写入是对一个 long 的一次 CAS，无锁，同一 nonce 并发到达时只有一个能写入成功
+ * 每个 nonce 占 16 位，满载时误判率约 0.38%，按填充过程平均约 0.1%(见 NonceBloomFilterTest)；
+ * 误判只会把正常请求当作重放拒绝，客户端换一个 nonce 重试即可，不会放过重放请求
+ */
+public final class NonceBloomFilter {
+
+    public static final int BITS_PER_NONCE = 16;
+    private static final int HASHES = 6;
+
+    private final AtomicLongArray words;
+    private final long seed;
+
+    /**
+     * @param expectedNonces 预计写入的 nonce 数，超过后误判率上升
+     * @param seed           哈希种子，每个进程随机，避免被预先构造碰撞
+     */
+    public NonceBloomFilter(long expectedNonces, long seed) {
+        long bits = Math.max(64, expectedNonces * BITS_PER_NONCE);
+        this.words = new AtomicLongArray((int) Math.min(Integer.MAX_VALUE - 8, (bits + 63) >>> 6));
+        this.seed = seed;
+    }
+
+    /**
+     * 写入 nonce
+     *
+     * @return 之前不存在时为 true，已存在(或误判为已存在)时为 false
+     */
+    public boolean add(String accessKey, String nonce) {
+        long hash = hash(accessKey, nonce);
+        int index = (int) (((hash >>> 32) * words.length()) >>> 32);
+        long mask = mask(mix(hash));
+        while (true) {
+            long word = words.get(index);
+            if ((word & mask) == mask) {
+                return false;
+            }
+            if (words.compareAndSet(index, word, word | mask)) {
+                return true;
+            }
+        }
+    }
+
+    public long sizeInBytes() {
+        return (long) words.length() * Long.BYTES;
+    }
+
+    private static long mask(long hash) {
+        long mask = 0;
+        for (int i = 0; i < HASHES; i++) {
+            mask |= 1L << (hash & 63);
+            hash >>>= 6;
+        }
+        return mask;
+    }
+
+    private long hash(String accessKey, String nonce) {
+        // FNV-1a，accessKey 和 nonce 之间加分隔，避免拼接歧义
+        long hash = seed ^ 0xcbf29ce484222325L;
+        hash = fnv(hash, accessKey);
+        hash = (hash ^ 0xff) * 0x100000001b3L;
+        hash = fnv(hash, nonce);
+        return mix(hash);
+    }
+
+    private static long fnv(long hash, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        for (byte b : bytes) {
+            hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * MurmurHash3 fmix64
+     */
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,109 @@
+package icu.yeguo.apigateway.auth;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 时间戳 + nonce 防重放
+ * 时间戳参与签名，只接受与网关时间相差 max-skew-seconds 以内的请求；窗口内的 nonce 按时间戳分桶记录在布隆过滤器里，
+ * 桶按时间轮转复用，超出窗口的桶整体丢弃，内存固定为 桶数 × 每桶预计 nonce 数 × 16 位
+ * 默认配置(窗口 ±120s，每桶 30s，预计 20000 次/s)共 10 个桶约 12MB；按 100000 次/s 配置约 60MB，
+ * 缩短 max-skew-seconds 可按比例减少
+ */
+@Slf4j
+@Component
+public class ReplayGuard {
+
+    public enum Result {
+        ACCEPTED, EXPIRED, REPLAYED
+    }
+
+    /**
+     * off-不校验 optional-带了 timestamp 和 nonce 的请求才校验 required-所有请求都必须带
+     */
+    private final String mode;
+    private final long maxSkewSeconds;
+    private final long bucketSeconds;
+    private final long noncesPerBucket;
+    private final long seed = ThreadLocalRandom.current().nextLong();
+    private final AtomicReferenceArray<Bucket> buckets;
+
+    public ReplayGuard(@Value("${yeguo.gateway.replay.mode:off}") String mode,
+                       @Value("${yeguo.gateway.replay.max-skew-seconds:120}") long maxSkewSeconds,
+                       @Value("${yeguo.gateway.replay.bucket-seconds:30}") long bucketSeconds,
+                       @Value("${yeguo.gateway.replay.expected-rate:20000}") long expectedRate) {
+        this.mode = mode;
+        this.maxSkewSeconds = maxSkewSeconds;
+        this.bucketSeconds = bucketSeconds;
+        this.noncesPerBucket = expectedRate * bucketSeconds;
+        // 窗口内所有桶各占一个槽位，多留一个给正在轮转的桶
+        int slots = (int) ((2 * maxSkewSeconds + bucketSeconds - 1) / bucketSeconds) + 2;
+        this.buckets = new AtomicReferenceArray<>(isEnabled() ? slots : 0);
+        if (isEnabled()) {
+            log.info("防重放已开启，模式:{}，最多占用内存:{}MB", mode,
+                    slots * noncesPerBucket * NonceBloomFilter.BITS_PER_NONCE / 8 / 1024 / 1024);
+        }
+    }
+
+    public boolean isEnabled() {
+        return "optional".equals(mode) || "required".equals(mode);
+    }
+
+    public boolean isRequired() {
+        return "required".equals(mode);
+    }
+
+    /**
+     * 时间戳是否在窗口内，在校验签名前调用，尽早拒绝过期请求
+     */
+    public boolean isFresh(long timestamp, long nowSeconds) {
+        return Math.abs(nowSeconds - timestamp) <= maxSkewSeconds;
+    }
+
+    /**
+     * 签名校验通过后调用，记录 nonce
+     */
+    public Result check(String accessKey, long timestamp, String nonce, long nowSeconds) {
+        if (!isFresh(timestamp, nowSeconds)) {
+            return Result.EXPIRED;
+        }
+        long epoch = Math.floorDiv(timestamp, bucketSeconds);
+        Bucket bucket = bucket(epoch);
+        if (bucket == null) {
+            return Result.EXPIRED;
+        }
+        return bucket.filter.add(accessKey, nonce) ? Result.ACCEPTED : Result.REPLAYED;
+    }
+
+    private Bucket bucket(long epoch) {
+        int slot = (int) Math.floorMod(epoch, (long) buckets.length());
+        while (true) {
+            Bucket current = buckets.get(slot);
+            if (current != null && current.epoch == epoch) {
+                return current;
+            }
+            // 槽位被更新的桶占用，说明该时间戳已经超出窗口
+            if (current != null && current.epoch > epoch) {
+                return null;
+            }
+            Bucket created = new Bucket(epoch, new NonceBloomFilter(noncesPerBucket, seed));
+            if (buckets.compareAndSet(slot, current, created)) {
+                return created;
+            }
+        }
+    }
+
+    private static final class Bucket {
+        private final long epoch;
+        private final NonceBloomFilter filter;
+
+        private Bucket(long epoch, NonceBloomFilter filter) {
+            this.epoch = epoch;
+            this.filter = filter;
+        }
+    }
+}
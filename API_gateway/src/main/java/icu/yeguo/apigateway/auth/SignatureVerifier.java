@@ -0,0 +1,63 @@
+package icu.yeguo.apigateway.auth;
+
+import icu.yeguo.apicommon.constant.SignatureConstant;
+import icu.yeguo.apicommon.utils.SignatureUtil;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+
+/**
+ * 网关本地签名校验，与后台 generateSignature 结果一致(HmacMD5，小写十六进制)
+ * 生成签名见 SignatureUtil
+ */
+@Component
+public class SignatureVerifier {
+
+    /**
+     * 带时间戳的签名每个用户密钥不同，每次校验前用凭证中的防重放密钥重新初始化
+     * Mac 非线程安全，每个线程复用一个实例
+     */
+    private static final ThreadLocal<Mac> REPLAY_MAC = ThreadLocal.withInitial(() -> {
+        try {
+            return Mac.getInstance(SignatureConstant.SIGNATURE_ALGORITHM);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("签名算法初始化失败", e);
+        }
+    });
+
+    /**
+     * 校验签名，凭证中已缓存期望签名，常量时间比较
+     */
+    public boolean verify(Credential credential, String signature) {
+        if (signature == null) {
+            return false;
+        }
+        return MessageDigest.isEqual(credential.getExpectedSignature(),
+                signature.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * 校验带时间戳和 nonce 的签名，签名内容为 accessKey + timestamp + nonce，每次请求都不同
+     * 密钥是后台由 secretKey 派生的防重放密钥(见 SignatureConstant.REPLAY_KEY_MESSAGE)，
+     * 不能用静态签名作密钥：静态签名会随不带时间戳的请求明文传输，截获后即可伪造任意时间戳和 nonce
+     */
+    public boolean verify(Credential credential, String signature, String timestamp, String nonce) {
+        if (signature == null || credential.getReplayKey() == null) {
+            return false;
+        }
+        Mac mac = REPLAY_MAC.get();
+        try {
+            mac.init(credential.getReplayKey());
+        } catch (InvalidKeyException e) {
+            return false;
+        }
+        String expected = SignatureUtil.hex(mac.doFinal((credential.getAccessKey() + timestamp + nonce)
+                .getBytes(StandardCharsets.UTF_8)));
+        return MessageDigest.isEqual(expected.getBytes(StandardCharsets.US_ASCII),
+                signature.getBytes(StandardCharsets.US_ASCII));
+    }
+}
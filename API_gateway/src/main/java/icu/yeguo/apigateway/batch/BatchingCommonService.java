@@ -0,0 +1,118 @@
+package icu.yeguo.apigateway.batch;
+
+import icu.yeguo.apicommon.model.dto.AuthPrincipal;
+import icu.yeguo.apicommon.model.dto.Charge;
+import icu.yeguo.apicommon.service.CommonAsyncService;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.dubbo.config.annotation.DubboReference;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 每个请求都要调用的后台接口(查询凭证、扣费、调用计数)在网关合并成批量调用
+ * 高并发时一次 Dubbo 调用和一组多行 SQL 处理一批请求；低并发时一批只有一个请求，直接走单个调用
+ */
+@Slf4j
+@Component
+public class BatchingCommonService implements DisposableBean, MeterBinder {
+
+    @DubboReference
+    private CommonAsyncService commonAsyncService;
+
+    private final ScheduledExecutorService scheduler;
+    private final MicroBatcher<String, AuthPrincipal> principalBatcher;
+    private final MicroBatcher<Charge, Boolean> chargeBatcher;
+    private final MicroBatcher<Long, Void> invocationBatcher;
+
+    public BatchingCommonService(@Value("${yeguo.gateway.batch.window-micros:200}") long windowMicros,
+                                 @Value("${yeguo.gateway.batch.max-size:64}") int maxSize) {
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "gateway-batch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long windowNanos = TimeUnit.MICROSECONDS.toNanos(windowMicros);
+        this.principalBatcher = new MicroBatcher<>("principal", windowNanos, maxSize, scheduler,
+                this::getAuthPrincipals, accessKey -> commonAsyncService.getAuthPrincipal(accessKey));
+        this.chargeBatcher = new MicroBatcher<>("charge", windowNanos, maxSize, scheduler,
+                charges -> commonAsyncService.deductGoldCoins(charges),
+                charge -> commonAsyncService.deductGoldCoin(charge.getRequestId(), charge.getUserId(),
+                        charge.getInterfaceInfoId(), charge.getAmount()));
+        this.invocationBatcher = new MicroBatcher<>("invocation", windowNanos, maxSize, scheduler,
+                this::recordInvocations,
+                interfaceInfoId -> commonAsyncService.invokingCount(interfaceInfoId).thenApply(count -> null));
+        log.info("后台调用微批窗口:{}us，批大小上限:{}", windowMicros, maxSize);
+    }
+
+    /**
+     * @return 用户不存在时结果为 null
+     */
+    public CompletableFuture<AuthPrincipal> getAuthPrincipal(String accessKey) {
+        return principalBatcher.submit(accessKey);
+    }
+
+    /**
+     * @return 余额不足或接口不存在时为 false
+     */
+    public CompletableFuture<Boolean> deductGoldCoin(String requestId, Long userId, Long interfaceInfoId,
+                                                     Long amount) {
+        return chargeBatcher.submit(new Charge(requestId, userId, interfaceInfoId, amount));
+    }
+
+    public CompletableFuture<Void> invokingCount(long interfaceInfoId) {
+        return invocationBatcher.submit(interfaceInfoId);
+    }
+
+    private CompletableFuture<List<AuthPrincipal>> getAuthPrincipals(List<String> accessKeys) {
+        return commonAsyncService.getAuthPrincipals(accessKeys).thenApply(principals -> {
+            List<AuthPrincipal> results = new ArrayList<>(accessKeys.size());
+            for (String accessKey : accessKeys) {
+                results.add(principals.get(accessKey));
+            }
+            return results;
+        });
+    }
+
+    private CompletableFuture<List<Void>> recordInvocations(List<Long> interfaceInfoIds) {
+        Map<Long, Long> counts = new HashMap<>();
+        for (Long interfaceInfoId : interfaceInfoIds) {
+            counts.merge(interfaceInfoId, 1L, Long::sum);
+        }
+        return commonAsyncService.recordInvocations(counts)
+                .thenApply(ignored -> Collections.nCopies(interfaceInfoIds.size(), (Void) null));
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        for (MicroBatcher<?, ?> batcher : List.of(principalBatcher, chargeBatcher, invocationBatcher)) {
+            FunctionCounter.builder("yeguo.gateway.batch.calls", batcher, MicroBatcher::getCallCount)
+                    .description("合并后的后台调用次数")
+                    .tag("name", batcher.getName())
+                    .register(registry);
+            FunctionCounter.builder("yeguo.gateway.batch.items", batcher, MicroBatcher::getItemCount)
+                    .description("提交合并的请求数，除以调用次数为平均批大小")
+                    .tag("name", batcher.getName())
+                    .register(registry);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdown();
+    }
+}
@@ -0,0 +1,182 @@
+package icu.yeguo.apigateway.batch;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.dubbo.rpc.RpcException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * 微批：把一个时间窗口内提交的请求合并成一次批量调用
+ * 窗口从一批中的第一个请求开始计时，到期或攒满 maxSize 个时立即发出；窗口为 0 时不合并，逐个调用
+ * 批量调用在服务端失败(如并发冲突整批回滚)时逐个重试；网络、超时等 RpcException 不重试，整批失败，避免放大故障
+ *
+ * @param <T> 请求
+ * @param <R> 结果
+ */
+@Slf4j
+public final class MicroBatcher<T, R> {
+
+    private final String name;
+    private final long windowNanos;
+    private final int maxSize;
+    private final ScheduledExecutorService scheduler;
+    /**
+     * 批量调用，结果与请求顺序一致
+     */
+    private final Function<List<T>, CompletableFuture<List<R>>> batchCall;
+    private final Function<T, CompletableFuture<R>> singleCall;
+
+    private final Object lock = new Object();
+    private List<Pending<T, R>> pending = new ArrayList<>();
+    /**
+     * 每发出一批加一，过期的定时任务据此跳过
+     */
+    private long generation;
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder items = new LongAdder();
+
+    public MicroBatcher(String name, long windowNanos, int maxSize, ScheduledExecutorService scheduler,
+                        Function<List<T>, CompletableFuture<List<R>>> batchCall,
+                        Function<T, CompletableFuture<R>> singleCall) {
+        this.name = name;
+        this.windowNanos = windowNanos;
+        this.maxSize = Math.max(1, maxSize);
+        this.scheduler = scheduler;
+        this.batchCall = batchCall;
+        this.singleCall = singleCall;
+    }
+
+    public CompletableFuture<R> submit(T item) {
+        if (windowNanos <= 0 || maxSize == 1) {
+            calls.increment();
+            items.increment();
+            return call(item);
+        }
+        CompletableFuture<R> future = new CompletableFuture<>();
+        List<Pending<T, R>> full = null;
+        synchronized (lock) {
+            pending.add(new Pending<>(item, future));
+            if (pending.size() >= maxSize) {
+                full = take();
+            } else if (pending.size() == 1) {
+                long current = generation;
+                scheduler.schedule(() -> flush(current), windowNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+        if (full != null) {
+            send(full);
+        }
+        return future;
+    }
+
+    private void flush(long expectedGeneration) {
+        List<Pending<T, R>> batch;
+        synchronized (lock) {
+            // 该批已攒满提前发出
+            if (generation != expectedGeneration || pending.isEmpty()) {
+                return;
+            }
+            batch = take();
+        }
+        send(batch);
+    }
+
+    private List<Pending<T, R>> take() {
+        List<Pending<T, R>> batch = pending;
+        pending = new ArrayList<>(Math.min(maxSize, 16));
+        generation++;
+        return batch;
+    }
+
+    private void send(List<Pending<T, R>> batch) {
+        calls.increment();
+        items.add(batch.size());
+        if (batch.size() == 1) {
+            forward(batch.get(0));
+            return;
+        }
+        List<T> requests = new ArrayList<>(batch.size());
+        for (Pending<T, R> request : batch) {
+            requests.add(request.item);
+        }
+        CompletableFuture<List<R>> results;
+        try {
+            results = batchCall.apply(requests);
+        } catch (RuntimeException e) {
+            results = CompletableFuture.failedFuture(e);
+        }
+        results.whenComplete((values, e) -> {
+            if (e == null && values != null && values.size() == batch.size()) {
+                for (int i = 0; i < batch.size(); i++) {
+                    batch.get(i).future.complete(values.get(i));
+                }
+                return;
+            }
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof RpcException) {
+                for (Pending<T, R> request : batch) {
+                    request.future.completeExceptionally(cause);
+                }
+                return;
+            }
+            log.warn("{}批量调用失败，逐个重试，共{}个", name, batch.size(), cause);
+            for (Pending<T, R> request : batch) {
+                forward(request);
+            }
+        });
+    }
+
+    private void forward(Pending<T, R> request) {
+        call(request.item).whenComplete((value, e) -> {
+            if (e != null) {
+                request.future.completeExceptionally(e);
+            } else {
+                request.future.complete(value);
+            }
+        });
+    }
+
+    private CompletableFuture<R> call(T item) {
+        try {
+            return singleCall.apply(item);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 发出的远程调用次数，合并后的一批算一次
+     */
+    public long getCallCount() {
+        return calls.sum();
+    }
+
+    /**
+     * 提交的请求数，除以调用次数即平均批大小
+     */
+    public long getItemCount() {
+        return items.sum();
+    }
+
+    private static final class Pending<T, R> {
+        private final T item;
+        private final CompletableFuture<R> future;
+
+        private Pending(T item, CompletableFuture<R> future) {
+            this.item = item;
+            this.future = future;
+        }
+    }
+}
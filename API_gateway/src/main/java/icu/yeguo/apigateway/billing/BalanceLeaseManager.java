@@ -0,0 +1,333 @@
+package icu.yeguo.apigateway.billing;
+
+import icu.yeguo.apicommon.service.CommonAsyncService;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.dubbo.config.annotation.DubboReference;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.core.Ordered;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * 余额租约
+ * 从后台租用一部分金币在网关本地无锁扣减，剩余额度低于水位时提前续租，空闲或关闭时归还未用完的部分
+ * 租出的金币已从数据库扣除，归还时一并结清对应的租约；租约最长持有 max-seconds，到期后即使仍在使用也先归还再重新租用
+ * 归还失败时用同一个归还id重试直到成功，后台按归还id幂等；网关异常退出时未结清的租约由后台超时后整笔退回
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "yeguo.gateway.billing.mode", havingValue = "lease")
+public class BalanceLeaseManager implements ApplicationListener<ContextClosedEvent>, Ordered {
+
+    /**
+     * 归还重试的最长间隔，需远小于后台的租约超时时间
+     */
+    private static final Duration MAX_RELEASE_BACKOFF = Duration.ofMinutes(1);
+
+    @DubboReference
+    private CommonAsyncService commonAsyncService;
+
+    private final long leaseSize;
+    private final long lowWatermark;
+    private final long idleMillis;
+    private final long maxMillis;
+    private final Duration releaseRetryBackoff;
+    private final ConcurrentHashMap<Long, Budget> budgets = new ConcurrentHashMap<>();
+    /**
+     * 尚未确认成功的归还，按归还id保存，重试和关闭时都使用同一个id
+     */
+    private final ConcurrentHashMap<String, Release> pendingReleases = new ConcurrentHashMap<>();
+    /**
+     * 关闭中，不再在本地保留额度
+     */
+    private volatile boolean closing;
+
+    public BalanceLeaseManager(@Value("${yeguo.gateway.billing.lease.size:100}") long leaseSize,
+                               @Value("${yeguo.gateway.billing.lease.low-watermark:20}") long lowWatermark,
+                               @Value("${yeguo.gateway.billing.lease.idle-seconds:60}") long idleSeconds,
+                               @Value("${yeguo.gateway.billing.lease.max-seconds:600}") long maxSeconds,
+                               @Value("${yeguo.gateway.billing.lease.release-retry-millis:1000}")
+                               long releaseRetryMillis) {
+        this.leaseSize = leaseSize;
+        this.lowWatermark = lowWatermark;
+        this.idleMillis = TimeUnit.SECONDS.toMillis(idleSeconds);
+        this.maxMillis = TimeUnit.SECONDS.toMillis(maxSeconds);
+        this.releaseRetryBackoff = Duration.ofMillis(releaseRetryMillis);
+    }
+
+    /**
+     * 从本地额度扣费，额度不足时向后台续租
+     *
+     * @return 数据库余额也不足时为 false
+     */
+    public Mono<Boolean> deduct(Long userId, long amount) {
+        if (closing) {
+            return deductOnce(userId, amount);
+        }
+        Budget budget = budgets.computeIfAbsent(userId, Budget::new);
+        if (budget.tryDeduct(amount)) {
+            if (budget.getRemaining() < lowWatermark) {
+                // 提前续租 不阻塞当前请求
+                renew(budget, leaseSize).subscribe(granted -> {
+                }, e -> log.error("续租金币失败", e));
+            }
+            return Mono.just(true);
+        }
+        if (budget.isClosed()) {
+            // 额度恰好被归还 换新的额度重试
+            return deduct(userId, amount);
+        }
+        return renew(budget, Math.max(leaseSize, amount)).flatMap(granted -> {
+            if (budget.tryDeduct(amount)) {
+                return Mono.just(true);
+            }
+            // 续到了额度但被并发请求用完，或额度已被归还，重试；续不到说明数据库余额也不足
+            if (granted > 0 || budget.isClosed()) {
+                return deduct(userId, amount);
+            }
+            return Mono.just(false);
+        });
+    }
+
+    /**
+     * 关闭期间只租用本次扣费的数额并立即结清，不在本地留下额度
+     */
+    private Mono<Boolean> deductOnce(Long userId, long amount) {
+        String leaseId = newId();
+        return Mono.fromFuture(() -> commonAsyncService.leaseGoldCoins(leaseId, userId, amount))
+                .map(granted -> {
+                    boolean success = granted >= amount;
+                    release(userId, success ? granted - amount : granted, List.of(leaseId));
+                    return success;
+                });
+    }
+
+    /**
+     * 调用失败返还金币，额度还在时直接加回本地，否则归还后台
+     */
+    public void refund(Long userId, long amount) {
+        Budget budget = budgets.get(userId);
+        if (budget == null || !budget.credit(amount, null)) {
+            release(userId, amount, List.of());
+        }
+    }
+
+    private Mono<Long> renew(Budget budget, long amount) {
+        return budget.renewal(() -> {
+            String leaseId = newId();
+            return Mono.fromFuture(() -> commonAsyncService.leaseGoldCoins(leaseId, budget.userId, amount))
+                    .doOnNext(granted -> {
+                        log.info("用户" + budget.userId + "续租金币：" + granted);
+                        // 续租期间额度已被归还 新租到的直接退回
+                        if (granted > 0 && !budget.credit(granted, leaseId)) {
+                            release(budget.userId, granted, List.of(leaseId));
+                        }
+                    });
+        });
+    }
+
+    /**
+     * 归还未用完的金币并结清租约，失败时用同一个归还id退避重试直到成功
+     * 不能交给后台超时退回：超时退回按租出的数额整笔退回，会把已在网关扣过费的金币也退给用户
+     */
+    private void release(Long userId, long amount, List<String> leaseIds) {
+        if (amount <= 0 && leaseIds.isEmpty()) {
+            return;
+        }
+        String releaseId = newId();
+        Release release = new Release(userId, amount, leaseIds);
+        pendingReleases.put(releaseId, release);
+        Mono.defer(() -> Mono.fromFuture(commonAsyncService.releaseGoldCoins(releaseId, userId, amount, leaseIds)))
+                .doOnError(e -> log.error("用户" + userId + "归还租用金币失败，稍后重试：" + amount, e))
+                // 关闭后由关闭流程同步归还
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, releaseRetryBackoff)
+                        .maxBackoff(MAX_RELEASE_BACKOFF)
+                        .filter(e -> !closing))
+                .subscribe(success -> pendingReleases.remove(releaseId, release), e -> {
+                });
+    }
+
+    /**
+     * 归还空闲用户和租约持有过久的额度
+     */
+    @Scheduled(fixedDelayString = "${yeguo.gateway.billing.lease.idle-check-interval:10000}")
+    public void releaseIdle() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<Long, Budget> entry : budgets.entrySet()) {
+            Budget budget = entry.getValue();
+            boolean expired = now - budget.lastUsed > idleMillis || now - budget.createTime > maxMillis;
+            if (expired && budget.pending.get() == null && budgets.remove(entry.getKey(), budget)) {
+                Budget.Settlement settlement = budget.close();
+                release(entry.getKey(), settlement.amount, settlement.leaseIds);
+            }
+        }
+    }
+
+    /**
+     * Dubbo 在 ContextClosedEvent 中销毁服务引用，DisposableBean 执行时已无法调用后台，
+     * 这里以最高优先级监听同一事件，先于 Dubbo 同步归还全部额度
+     */
+    @Override
+    public void onApplicationEvent(ContextClosedEvent event) {
+        closing = true;
+        for (Map.Entry<Long, Budget> entry : budgets.entrySet()) {
+            if (!budgets.remove(entry.getKey(), entry.getValue())) {
+                continue;
+            }
+            Budget.Settlement settlement = entry.getValue().close();
+            if (!settlement.leaseIds.isEmpty()) {
+                pendingReleases.put(newId(), new Release(entry.getKey(), settlement.amount, settlement.leaseIds));
+            }
+        }
+        // 连同之前失败还在重试的归还一起同步完成
+        for (Map.Entry<String, Release> entry : pendingReleases.entrySet()) {
+            Release release = entry.getValue();
+            try {
+                commonAsyncService.releaseGoldCoins(entry.getKey(), release.userId, release.amount, release.leaseIds)
+                        .get(3, TimeUnit.SECONDS);
+                pendingReleases.remove(entry.getKey(), release);
+            } catch (Exception e) {
+                log.error("用户" + release.userId + "归还租用金币失败，租约将由后台超时退回：" + release.amount, e);
+            }
+        }
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+
+    public int getBudgetCount() {
+        return budgets.size();
+    }
+
+    public int getPendingReleaseCount() {
+        return pendingReleases.size();
+    }
+
+    private static String newId() {
+        return UUID.randomUUID().toString().replace("-", "");
+    }
+
+    private static final class Release {
+        private final Long userId;
+        private final long amount;
+        private final List<String> leaseIds;
+
+        private Release(Long userId, long amount, List<String> leaseIds) {
+            this.userId = userId;
+            this.amount = amount;
+            this.leaseIds = leaseIds;
+        }
+    }
+
+    private static final class Budget {
+        private final Long userId;
+        /**
+         * 剩余额度，-1 表示已归还
+         */
+        private final AtomicLong remaining = new AtomicLong();
+        /**
+         * 进行中的续租，同一用户同时只有一个
+         */
+        private final AtomicReference<Mono<Long>> pending = new AtomicReference<>();
+        /**
+         * 额度中尚未结清的租约
+         */
+        private final List<String> leaseIds = new ArrayList<>();
+        private final long createTime = System.currentTimeMillis();
+        private volatile long lastUsed = createTime;
+
+        private Budget(Long userId) {
+            this.userId = userId;
+        }
+
+        boolean tryDeduct(long amount) {
+            lastUsed = System.currentTimeMillis();
+            for (; ; ) {
+                long current = remaining.get();
+                if (current < 0 || current < amount) {
+                    return false;
+                }
+                if (remaining.compareAndSet(current, current - amount)) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * @param leaseId 新租到的额度所属的租约，返还调用失败的金币时为空
+         */
+        synchronized boolean credit(long amount, String leaseId) {
+            lastUsed = System.currentTimeMillis();
+            for (; ; ) {
+                long current = remaining.get();
+                if (current < 0) {
+                    return false;
+                }
+                if (remaining.compareAndSet(current, current + amount)) {
+                    if (leaseId != null) {
+                        leaseIds.add(leaseId);
+                    }
+                    return true;
+                }
+            }
+        }
+
+        Mono<Long> renewal(Supplier<Mono<Long>> lease) {
+            for (; ; ) {
+                Mono<Long> current = pending.get();
+                if (current != null) {
+                    return current;
+                }
+                Mono<Long> created = Mono.defer(lease)
+                        .doFinally(signalType -> pending.set(null))
+                        .cache();
+                if (pending.compareAndSet(null, created)) {
+                    return created;
+                }
+            }
+        }
+
+        /**
+         * 关闭额度，返回未用完的部分和需要结清的租约
+         */
+        synchronized Settlement close() {
+            return new Settlement(Math.max(remaining.getAndSet(-1), 0), new ArrayList<>(leaseIds));
+        }
+
+        boolean isClosed() {
+            return remaining.get() < 0;
+        }
+
+        long getRemaining() {
+            return remaining.get();
+        }
+
+        private static final class Settlement {
+            private final long amount;
+            private final List<String> leaseIds;
+
+            private Settlement(long amount, List<String> leaseIds) {
+                this.amount = amount;
+                this.leaseIds = leaseIds;
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package icu.yeguo.apigateway.billing;
+
+import icu.yeguo.apicommon.model.dto.InterfaceRoute;
+import icu.yeguo.apicommon.service.CommonAsyncService;
+import icu.yeguo.apigateway.batch.BatchingCommonService;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.dubbo.config.annotation.DubboReference;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/**
+ * 金币计费
+ * 默认每次调用都远程扣费(按扣费流水幂等，并发的扣费合并成批量调用)；yeguo.gateway.billing.mode=lease 时在网关本地扣减租用的额度
+ */
+@Slf4j
+@Component
+public class GoldCoinBilling {
+
+    @DubboReference
+    private CommonAsyncService commonAsyncService;
+    @Autowired(required = false)
+    private BalanceLeaseManager balanceLeaseManager;
+    @Autowired
+    private BatchingCommonService batchingCommonService;
+
+    /**
+     * @return 余额不足时为 false
+     */
+    public Mono<Boolean> deduct(String billingId, Long userId, InterfaceRoute route) {
+        if (useLease(route)) {
+            return balanceLeaseManager.deduct(userId, route.getRequiredGoldCoins());
+        }
+        return Mono.fromFuture(() -> batchingCommonService.deductGoldCoin(billingId, userId, route.getId(),
+                route.getRequiredGoldCoins()));
+    }
+
+    public void refund(String billingId, Long userId, InterfaceRoute route) {
+        if (useLease(route)) {
+            balanceLeaseManager.refund(userId, route.getRequiredGoldCoins());
+            log.debug("果币返还到租约额度===={}", billingId);
+            return;
+        }
+        commonAsyncService.returnGoldCoins(billingId).whenComplete((success, e) -> {
+            if (e != null) {
+                log.error("果币返还时发生异常", e);
+            } else if (!success) {
+                log.error("果币返还失败====" + billingId);
+            } else {
+                log.debug("果币返还成功===={}", billingId);
+            }
+        });
+    }
+
+    private boolean useLease(InterfaceRoute route) {
+        // 路由表未加载时不知道扣费金额，仍走远程扣费
+        return balanceLeaseManager != null && route.getRequiredGoldCoins() != null;
+    }
+}
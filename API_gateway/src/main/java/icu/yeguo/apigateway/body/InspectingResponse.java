@@ -0,0 +1,68 @@
+package icu.yeguo.apigateway.body;
+
+import lombok.NonNull;
+import org.reactivestreams.Publisher;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.function.Consumer;
+
+/**
+ * 边转发边判定的响应装饰器，数据块到达即原样写出，只把内容交给 ResponseInspector 检查，
+ * 结果判定后回调一次
+ */
+public class InspectingResponse extends ServerHttpResponseDecorator {
+
+    private final ResponseInspector inspector = new ResponseInspector();
+    private final Consumer<ResponseInspector.Outcome> callback;
+    private boolean notified;
+    /**
+     * 判定累计耗时
+     */
+    private long inspectNanos;
+
+    public InspectingResponse(ServerHttpResponse delegate, Consumer<ResponseInspector.Outcome> callback) {
+        super(delegate);
+        this.callback = callback;
+    }
+
+    @Override
+    @NonNull
+    public Mono<Void> writeWith(@NonNull Publisher<? extends DataBuffer> body) {
+        Flux<? extends DataBuffer> inspected = Flux.from(body)
+                .doOnNext(this::inspect)
+                .doOnComplete(() -> notify(inspector.finish()));
+        return super.writeWith(inspected);
+    }
+
+    private void inspect(DataBuffer buffer) {
+        if (inspector.getOutcome() != null) {
+            return;
+        }
+        long start = System.nanoTime();
+        ResponseInspector.Outcome outcome = null;
+        try (DataBuffer.ByteBufferIterator iterator = buffer.readableByteBuffers()) {
+            while (outcome == null && iterator.hasNext()) {
+                outcome = inspector.feed(iterator.next());
+            }
+        }
+        inspectNanos += System.nanoTime() - start;
+        if (outcome != null) {
+            notify(outcome);
+        }
+    }
+
+    public long getInspectNanos() {
+        return inspectNanos;
+    }
+
+    private void notify(ResponseInspector.Outcome outcome) {
+        if (!notified) {
+            notified = true;
+            callback.accept(outcome);
+        }
+    }
+}
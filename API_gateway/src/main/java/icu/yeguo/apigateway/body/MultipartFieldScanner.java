@@ -0,0 +1,234 @@
+package icu.yeguo.apigateway.body;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * multipart/form-data 增量扫描器
+ * 逐块输入请求体，只提取指定的表单字段，其他分段(如上传的文件)只做分隔符匹配不做拷贝，
+ * 所需字段全部找到或遇到结束分隔符后即停止，非线程安全
+ */
+public class MultipartFieldScanner {
+
+    private static final int MAX_HEADER_LENGTH = 8 * 1024;
+
+    private enum State {BODY, AFTER_DELIMITER, CLOSE_DELIMITER, HEADERS, END}
+
+    private final Set<String> fieldNames;
+    private final int maxValueLength;
+    /**
+     * 分段分隔符 CRLF--boundary 及其 KMP 部分匹配表
+     */
+    private final byte[] delimiter;
+    private final int[] failure;
+    private final Map<String, String> fields = new HashMap<>();
+
+    private State state = State.BODY;
+    /**
+     * 当前已匹配的分隔符长度，首个分隔符前没有 CRLF，初始视为已匹配 CRLF
+     */
+    private int matched = 2;
+    private final ByteArrayOutputStream header = new ByteArrayOutputStream(256);
+    private int headerTail;
+    /**
+     * 当前正在捕获的字段名，null 表示当前分段无需捕获
+     */
+    private String capturing;
+    private ByteArrayOutputStream value;
+    private boolean overflow;
+
+    public MultipartFieldScanner(String boundary, Set<String> fieldNames) {
+        this(boundary, fieldNames, 1024);
+    }
+
+    public MultipartFieldScanner(String boundary, Set<String> fieldNames, int maxValueLength) {
+        this.fieldNames = fieldNames;
+        this.maxValueLength = maxValueLength;
+        this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+        this.failure = failureTable(delimiter);
+    }
+
+    /**
+     * 输入一段数据，不改变 ByteBuffer 的读写位置
+     *
+     * @return 扫描是否已结束
+     */
+    public boolean feed(ByteBuffer buffer) {
+        int limit = buffer.limit();
+        for (int i = buffer.position(); i < limit && state != State.END; i++) {
+            accept(buffer.get(i));
+        }
+        return isComplete();
+    }
+
+    public boolean feed(byte[] bytes, int offset, int length) {
+        return feed(ByteBuffer.wrap(bytes, offset, length));
+    }
+
+    /**
+     * 所需字段已全部找到，或请求体已结束
+     */
+    public boolean isComplete() {
+        return state == State.END;
+    }
+
+    public String getField(String name) {
+        return fields.get(name);
+    }
+
+    public Map<String, String> getFields() {
+        return fields;
+    }
+
+    private void accept(byte b) {
+        switch (state) {
+            case BODY:
+                acceptBody(b);
+                break;
+            case AFTER_DELIMITER:
+                if (b == '-') {
+                    state = State.CLOSE_DELIMITER;
+                } else if (b == '\n') {
+                    startHeaders();
+                }
+                // 其余为分隔符后的空白或 CR，忽略
+                break;
+            case CLOSE_DELIMITER:
+                if (b == '-') {
+                    state = State.END;
+                } else if (b == '\n') {
+                    startHeaders();
+                } else {
+                    state = State.AFTER_DELIMITER;
+                }
+                break;
+            case HEADERS:
+                acceptHeader(b);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void acceptBody(byte b) {
+        if (capturing != null && !overflow) {
+            if (value.size() >= maxValueLength + delimiter.length) {
+                overflow = true;
+            } else {
+                value.write(b);
+            }
+        }
+        while (matched > 0 && b != delimiter[matched]) {
+            matched = failure[matched - 1];
+        }
+        if (b == delimiter[matched]) {
+            matched++;
+        }
+        if (matched == delimiter.length) {
+            matched = 0;
+            endPart();
+            state = fields.size() == fieldNames.size() ? State.END : State.AFTER_DELIMITER;
+        }
+    }
+
+    private void endPart() {
+        if (capturing == null) {
+            return;
+        }
+        if (!overflow) {
+            byte[] bytes = value.toByteArray();
+            fields.put(capturing, new String(bytes, 0, bytes.length - delimiter.length, StandardCharsets.UTF_8));
+        }
+        capturing = null;
+        value = null;
+        overflow = false;
+    }
+
+    private void startHeaders() {
+        state = State.HEADERS;
+        header.reset();
+        headerTail = 0;
+    }
+
+    private void acceptHeader(byte b) {
+        if (header.size() < MAX_HEADER_LENGTH) {
+            header.write(b);
+        }
+        // 记录最近四个字节，遇到 CRLFCRLF 表示分段头结束
+        headerTail = (headerTail << 8) | (b & 0xFF);
+        if (headerTail == 0x0D0A0D0A) {
+            String name = parseName(header.toString(StandardCharsets.UTF_8));
+            if (name != null && fieldNames.contains(name) && !fields.containsKey(name)) {
+                capturing = name;
+                value = new ByteArrayOutputStream(64);
+            }
+            state = State.BODY;
+            // 分段内容紧跟在分段头之后，此时尚未匹配到任何分隔符字节
+            matched = 0;
+        }
+    }
+
+    /**
+     * 从分段头中解析 Content-Disposition 的 name 参数
+     */
+    private static String parseName(String headers) {
+        for (String line : headers.split("\r\n")) {
+            if (!line.toLowerCase(Locale.ROOT).startsWith("content-disposition")) {
+                continue;
+            }
+            for (String param : line.split(";")) {
+                param = param.trim();
+                if (param.startsWith("name=")) {
+                    String name = param.substring("name=".length());
+                    if (name.length() >= 2 && name.startsWith("\"") && name.endsWith("\"")) {
+                        name = name.substring(1, name.length() - 1);
+                    }
+                    return name;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static int[] failureTable(byte[] pattern) {
+        int[] table = new int[pattern.length];
+        int k = 0;
+        for (int i = 1; i < pattern.length; i++) {
+            while (k > 0 && pattern[i] != pattern[k]) {
+                k = table[k - 1];
+            }
+            if (pattern[i] == pattern[k]) {
+                k++;
+            }
+            table[i] = k;
+        }
+        return table;
+    }
+
+    /**
+     * 从 Content-Type 中解析 boundary
+     */
+    public static String getBoundary(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        String boundary = null;
+        String[] params = contentType.split(";");
+        for (String param : params) {
+            param = param.trim();
+            if (param.startsWith("boundary=")) {
+                boundary = param.substring("boundary=".length());
+                if (boundary.length() >= 2 && boundary.startsWith("\"") && boundary.endsWith("\"")) {
+                    boundary = boundary.substring(1, boundary.length() - 1);
+                }
+                break;
+            }
+        }
+        return boundary;
+    }
+}
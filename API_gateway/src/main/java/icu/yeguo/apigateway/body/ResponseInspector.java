@@ -0,0 +1,253 @@
+package icu.yeguo.apigateway.body;
+
+import java.nio.ByteBuffer;
+import java.util.regex.Pattern;
+
+/**
+ * 响应结果增量判定
+ * SVG 只检查有限长度的前缀；JSON 增量扫描顶层 code 字段，找到即给出结果，不缓存响应体。
+ * 判定规则与整体解析 Response 一致：code == 200 成功，其他 code(缺省为 0) 失败，无法解析则不处理。非线程安全
+ */
+public class ResponseInspector {
+
+    public enum Outcome {
+        /**
+         * 调用成功，计数
+         */
+        SUCCESS,
+        /**
+         * 接口返回失败，返还金币
+         */
+        FAILURE,
+        /**
+         * 无法判定，不处理
+         */
+        UNKNOWN
+    }
+
+    private static final Pattern SVG_PATTERN = Pattern.compile(
+            "<svg[^>]*xmlns=\"http://www.w3.org/2000/svg\"[^>]*>",
+            Pattern.CASE_INSENSITIVE
+    );
+    /**
+     * SVG 标签检查的前缀上限
+     */
+    private static final int PREFIX_LIMIT = 4096;
+    private static final int MAX_CODE_DIGITS = 10;
+
+    private enum Mode {DETECT, MARKUP, JSON}
+
+    private Mode mode = Mode.DETECT;
+    private Outcome outcome;
+
+    // SVG
+    private final StringBuilder prefix = new StringBuilder();
+
+    // JSON
+    private int depth;
+    private boolean inString;
+    private boolean escape;
+    private boolean expectKey;
+    private boolean capturingKey;
+    private final StringBuilder key = new StringBuilder(8);
+    /**
+     * 0-未在读取 code；1-等待冒号；2-等待值；3-读取数字；4-读取带引号的数字
+     */
+    private int codeState;
+    private long code;
+    private int codeDigits;
+    private boolean negative;
+
+    /**
+     * 输入一段响应数据，不改变 ByteBuffer 的读写位置
+     *
+     * @return 已判定时返回结果，否则返回 null
+     */
+    public Outcome feed(ByteBuffer buffer) {
+        int limit = buffer.limit();
+        for (int i = buffer.position(); i < limit && outcome == null; i++) {
+            accept(buffer.get(i));
+        }
+        return outcome;
+    }
+
+    public Outcome feed(byte[] bytes, int offset, int length) {
+        return feed(ByteBuffer.wrap(bytes, offset, length));
+    }
+
+    /**
+     * 响应结束，返回最终结果
+     */
+    public Outcome finish() {
+        if (outcome == null) {
+            if (mode == Mode.MARKUP && isSvg(prefix)) {
+                outcome = Outcome.SUCCESS;
+            } else if (mode == Mode.JSON && codeState == 3 && codeDigits > 0) {
+                outcome = decideCode();
+            } else {
+                outcome = Outcome.UNKNOWN;
+            }
+        }
+        return outcome;
+    }
+
+    public Outcome getOutcome() {
+        return outcome;
+    }
+
+    /**
+     * 是否包含 SVG 标签
+     */
+    public static boolean isSvg(CharSequence content) {
+        return content != null && SVG_PATTERN.matcher(content).find();
+    }
+
+    private void accept(byte b) {
+        switch (mode) {
+            case DETECT:
+                if (isWhitespace(b)) {
+                    return;
+                }
+                if (b == '<') {
+                    mode = Mode.MARKUP;
+                    acceptMarkup(b);
+                } else if (b == '{') {
+                    mode = Mode.JSON;
+                    acceptJson(b);
+                } else {
+                    outcome = Outcome.UNKNOWN;
+                }
+                break;
+            case MARKUP:
+                acceptMarkup(b);
+                break;
+            case JSON:
+                acceptJson(b);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void acceptMarkup(byte b) {
+        // 标签部分只有 ASCII 字符，按字节追加即可
+        prefix.append((char) (b & 0xFF));
+        if (b == '>' && isSvg(prefix)) {
+            outcome = Outcome.SUCCESS;
+        } else if (prefix.length() >= PREFIX_LIMIT) {
+            outcome = Outcome.UNKNOWN;
+        }
+    }
+
+    private void acceptJson(byte b) {
+        if (codeState > 0) {
+            acceptCode(b);
+            return;
+        }
+        if (inString) {
+            if (escape) {
+                escape = false;
+            } else if (b == '\\') {
+                escape = true;
+            } else if (b == '"') {
+                inString = false;
+                if (capturingKey) {
+                    capturingKey = false;
+                    if ("code".contentEquals(key)) {
+                        codeState = 1;
+                    }
+                }
+            } else if (capturingKey && key.length() <= 4) {
+                key.append((char) (b & 0xFF));
+            }
+            return;
+        }
+        switch (b) {
+            case '"':
+                inString = true;
+                capturingKey = depth == 1 && expectKey;
+                key.setLength(0);
+                expectKey = false;
+                break;
+            case '{':
+            case '[':
+                depth++;
+                expectKey = depth == 1;
+                break;
+            case '}':
+            case ']':
+                depth--;
+                if (depth == 0) {
+                    // 顶层对象结束仍没有 code，与解析结果 code 默认值 0 一致
+                    outcome = Outcome.FAILURE;
+                }
+                break;
+            case ',':
+                expectKey = depth == 1;
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void acceptCode(byte b) {
+        switch (codeState) {
+            case 1:
+                if (b == ':') {
+                    codeState = 2;
+                } else if (!isWhitespace(b)) {
+                    outcome = Outcome.UNKNOWN;
+                }
+                break;
+            case 2:
+                if (b == '-') {
+                    negative = true;
+                    codeState = 3;
+                } else if (b >= '0' && b <= '9') {
+                    codeState = 3;
+                    appendDigit(b);
+                } else if (b == '"') {
+                    codeState = 4;
+                } else if (!isWhitespace(b)) {
+                    // null 等非数字值按 0 处理
+                    outcome = Outcome.FAILURE;
+                }
+                break;
+            case 3:
+                if (b >= '0' && b <= '9') {
+                    appendDigit(b);
+                } else {
+                    outcome = codeDigits > 0 ? decideCode() : Outcome.UNKNOWN;
+                }
+                break;
+            case 4:
+                if (b >= '0' && b <= '9') {
+                    appendDigit(b);
+                } else if (b == '"' && codeDigits > 0) {
+                    outcome = decideCode();
+                } else {
+                    outcome = Outcome.UNKNOWN;
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void appendDigit(byte b) {
+        if (++codeDigits > MAX_CODE_DIGITS) {
+            outcome = Outcome.UNKNOWN;
+            return;
+        }
+        code = code * 10 + (b - '0');
+    }
+
+    private Outcome decideCode() {
+        long value = negative ? -code : code;
+        return value == 200 ? Outcome.SUCCESS : Outcome.FAILURE;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+}
@@ -0,0 +1,207 @@
+package icu.yeguo.apigateway.body;
+
+import org.reactivestreams.Subscription;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 边读边扫描的请求体
+ * 只订阅一次原始请求体，扫描阶段逐块请求并暂存已读到的数据块(不拷贝)，
+ * 扫描结束后把暂存块和剩余数据块原样交给下游，下游的请求量直接传递给上游
+ */
+public final class ScannedBody {
+
+    private final MultipartFieldScanner scanner;
+    private final ScanSubscriber subscriber;
+
+    private ScannedBody(MultipartFieldScanner scanner, ScanSubscriber subscriber) {
+        this.scanner = scanner;
+        this.subscriber = subscriber;
+    }
+
+    /**
+     * 扫描请求体，扫描器结束或请求体读完时返回结果
+     */
+    public static Mono<ScannedBody> scan(Flux<DataBuffer> body, MultipartFieldScanner scanner) {
+        return Mono.create(sink -> {
+            ScanSubscriber subscriber = new ScanSubscriber(scanner, sink);
+            sink.onCancel(subscriber::discard);
+            body.subscribe(subscriber);
+        });
+    }
+
+    public String getField(String name) {
+        return scanner.getField(name);
+    }
+
+    /**
+     * 完整请求体，只能订阅一次
+     */
+    public Flux<DataBuffer> getBody() {
+        return subscriber.body();
+    }
+
+    /**
+     * 请求体未被转发时释放暂存的数据块并取消上游，已被订阅时不做处理
+     */
+    public void discard() {
+        subscriber.discard();
+    }
+
+    private static final class ScanSubscriber extends BaseSubscriber<DataBuffer> {
+
+        private final MultipartFieldScanner scanner;
+        private final MonoSink<ScannedBody> resultSink;
+        private final List<DataBuffer> prefix = new ArrayList<>();
+
+        private boolean scanning = true;
+        private boolean upstreamDone;
+        private Throwable upstreamError;
+        private boolean bodySubscribed;
+        private boolean discarded;
+        private FluxSink<DataBuffer> remainder;
+
+        private ScanSubscriber(MultipartFieldScanner scanner, MonoSink<ScannedBody> resultSink) {
+            this.scanner = scanner;
+            this.resultSink = resultSink;
+        }
+
+        @Override
+        protected void hookOnSubscribe(Subscription subscription) {
+            request(1);
+        }
+
+        @Override
+        protected void hookOnNext(DataBuffer buffer) {
+            FluxSink<DataBuffer> sink;
+            synchronized (this) {
+                if (discarded) {
+                    DataBufferUtils.release(buffer);
+                    return;
+                }
+                sink = scanning ? null : remainder;
+                if (scanning) {
+                    prefix.add(buffer);
+                }
+            }
+            if (sink != null) {
+                // 扫描结束后只有下游请求了才会继续读取，此时 remainder 一定存在
+                sink.next(buffer);
+                return;
+            }
+            if (!feed(buffer)) {
+                request(1);
+                return;
+            }
+            synchronized (this) {
+                scanning = false;
+            }
+            resultSink.success(new ScannedBody(scanner, this));
+        }
+
+        @Override
+        protected void hookOnComplete() {
+            boolean emitResult = false;
+            FluxSink<DataBuffer> sink;
+            synchronized (this) {
+                upstreamDone = true;
+                if (scanning) {
+                    scanning = false;
+                    emitResult = true;
+                }
+                sink = remainder;
+            }
+            if (emitResult) {
+                resultSink.success(new ScannedBody(scanner, this));
+            } else if (sink != null) {
+                sink.complete();
+            }
+        }
+
+        @Override
+        protected void hookOnError(Throwable throwable) {
+            boolean scanFailed;
+            FluxSink<DataBuffer> sink;
+            synchronized (this) {
+                upstreamDone = true;
+                upstreamError = throwable;
+                scanFailed = scanning;
+                scanning = false;
+                sink = remainder;
+            }
+            if (scanFailed) {
+                releasePrefix();
+                resultSink.error(throwable);
+            } else if (sink != null) {
+                sink.error(throwable);
+            }
+        }
+
+        private boolean feed(DataBuffer buffer) {
+            try (DataBuffer.ByteBufferIterator iterator = buffer.readableByteBuffers()) {
+                while (iterator.hasNext()) {
+                    if (scanner.feed(iterator.next())) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        private synchronized Flux<DataBuffer> body() {
+            if (bodySubscribed || discarded) {
+                return Flux.error(new IllegalStateException("请求体只能订阅一次"));
+            }
+            bodySubscribed = true;
+            List<DataBuffer> scanned = new ArrayList<>(prefix);
+            prefix.clear();
+            Flux<DataBuffer> rest = Flux.create(sink -> {
+                boolean done;
+                Throwable error;
+                synchronized (this) {
+                    remainder = sink;
+                    done = upstreamDone;
+                    error = upstreamError;
+                }
+                if (error != null) {
+                    sink.error(error);
+                } else if (done) {
+                    sink.complete();
+                } else {
+                    sink.onRequest(this::request);
+                    sink.onCancel(this::cancel);
+                }
+            });
+            return Flux.fromIterable(scanned).concatWith(rest)
+                    .doOnDiscard(DataBuffer.class, DataBufferUtils::release);
+        }
+
+        private void discard() {
+            synchronized (this) {
+                if (bodySubscribed || discarded) {
+                    return;
+                }
+                discarded = true;
+            }
+            releasePrefix();
+            cancel();
+        }
+
+        private void releasePrefix() {
+            List<DataBuffer> buffers;
+            synchronized (this) {
+                buffers = new ArrayList<>(prefix);
+                prefix.clear();
+            }
+            buffers.forEach(DataBufferUtils::release);
+        }
+    }
+}
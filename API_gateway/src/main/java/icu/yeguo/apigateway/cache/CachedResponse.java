@@ -0,0 +1,23 @@
+package icu.yeguo.apigateway.cache;
+
+import lombok.Getter;
+import org.springframework.http.MediaType;
+
+/**
+ * 缓存的上游响应，只缓存状态码为 200 且判定为成功的响应
+ */
+@Getter
+public final class CachedResponse {
+    private final MediaType contentType;
+    private final byte[] body;
+    /**
+     * 该条目的缓存时间(ns)，已减去随机提前量
+     */
+    private final long ttlNanos;
+
+    public CachedResponse(MediaType contentType, byte[] body, long ttlNanos) {
+        this.contentType = contentType;
+        this.body = body;
+        this.ttlNanos = ttlNanos;
+    }
+}
@@ -0,0 +1,62 @@
+package icu.yeguo.apigateway.cache;
+
+import lombok.NonNull;
+import org.reactivestreams.Publisher;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+/**
+ * 转发响应的同时复制一份响应体，写完后交给回调放入缓存；超过上限的响应不缓存
+ */
+public class CachingResponse extends ServerHttpResponseDecorator {
+
+    private final int maxBytes;
+    private final Consumer<byte[]> callback;
+    private final ByteArrayOutputStream copy = new ByteArrayOutputStream();
+    private boolean overflow;
+
+    public CachingResponse(ServerHttpResponse delegate, int maxBytes, Consumer<byte[]> callback) {
+        super(delegate);
+        this.maxBytes = maxBytes;
+        this.callback = callback;
+    }
+
+    @Override
+    @NonNull
+    public Mono<Void> writeWith(@NonNull Publisher<? extends DataBuffer> body) {
+        Flux<? extends DataBuffer> copied = Flux.from(body)
+                .doOnNext(this::copy)
+                .doOnComplete(() -> {
+                    if (!overflow) {
+                        callback.accept(copy.toByteArray());
+                    }
+                });
+        return super.writeWith(copied);
+    }
+
+    private void copy(DataBuffer buffer) {
+        if (overflow) {
+            return;
+        }
+        if (copy.size() + buffer.readableByteCount() > maxBytes) {
+            overflow = true;
+            copy.reset();
+            return;
+        }
+        try (DataBuffer.ByteBufferIterator iterator = buffer.readableByteBuffers()) {
+            while (iterator.hasNext()) {
+                ByteBuffer byteBuffer = iterator.next();
+                byte[] bytes = new byte[byteBuffer.remaining()];
+                byteBuffer.get(bytes);
+                copy.write(bytes, 0, bytes.length);
+            }
+        }
+    }
+}
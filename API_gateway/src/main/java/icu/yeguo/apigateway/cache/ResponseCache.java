@@ -0,0 +1,104 @@
+package icu.yeguo.apigateway.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import icu.yeguo.apicommon.model.dto.InterfaceRoute;
+import lombok.NonNull;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MultiValueMap;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 幂等 GET 接口的响应缓存
+ * 按路径加查询参数(不含 accessKey、signature、timestamp 和 nonce)缓存，缓存时间由 interface_info.cache_ttl 配置；
+ * 每个条目随机提前一部分过期，避免同时失效后集中回源；按响应体字节数限制总大小
+ */
+@Component
+public class ResponseCache {
+    /**
+     * 鉴权参数每个用户不同，不参与缓存key
+     */
+    private static final Set<String> EXCLUDED_PARAMS = Set.of("accessKey", "signature", "timestamp", "nonce");
+
+    private final double jitter;
+    private final int maxEntryBytes;
+    private final Cache<String, CachedResponse> cache;
+
+    public ResponseCache(@Value("${yeguo.gateway.response-cache.maximum-bytes:67108864}") long maximumBytes,
+                         @Value("${yeguo.gateway.response-cache.max-entry-bytes:262144}") int maxEntryBytes,
+                         @Value("${yeguo.gateway.response-cache.jitter:0.1}") double jitter) {
+        this.jitter = jitter;
+        this.maxEntryBytes = maxEntryBytes;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maximumBytes)
+                .weigher((String key, CachedResponse value) -> key.length() + value.getBody().length)
+                .expireAfter(new Expiry<String, CachedResponse>() {
+                    @Override
+                    public long expireAfterCreate(@NonNull String key, @NonNull CachedResponse value,
+                                                  long currentTime) {
+                        return value.getTtlNanos();
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(@NonNull String key, @NonNull CachedResponse value,
+                                                  long currentTime, long currentDuration) {
+                        return value.getTtlNanos();
+                    }
+
+                    @Override
+                    public long expireAfterRead(@NonNull String key, @NonNull CachedResponse value,
+                                                long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+    }
+
+    public boolean isCacheable(ServerHttpRequest request, InterfaceRoute route) {
+        return HttpMethod.GET.equals(request.getMethod()) && route.getCacheTtl() != null && route.getCacheTtl() > 0;
+    }
+
+    public String key(ServerHttpRequest request) {
+        StringBuilder key = new StringBuilder(request.getPath().value());
+        MultiValueMap<String, String> queryParams = request.getQueryParams();
+        // 参数排序 顺序不同的相同请求命中同一条目
+        Map<String, List<String>> sorted = new TreeMap<>(queryParams);
+        char separator = '?';
+        for (Map.Entry<String, List<String>> entry : sorted.entrySet()) {
+            if (EXCLUDED_PARAMS.contains(entry.getKey())) {
+                continue;
+            }
+            for (String value : entry.getValue()) {
+                key.append(separator).append(entry.getKey()).append('=').append(value);
+                separator = '&';
+            }
+        }
+        return key.toString();
+    }
+
+    public CachedResponse get(String key) {
+        return cache.getIfPresent(key);
+    }
+
+    public void put(String key, InterfaceRoute route, MediaType contentType, byte[] body) {
+        long ttlNanos = TimeUnit.SECONDS.toNanos(route.getCacheTtl());
+        // 随机提前 0 ~ jitter 比例过期
+        ttlNanos -= (long) (ttlNanos * jitter * ThreadLocalRandom.current().nextDouble());
+        cache.put(key, new CachedResponse(contentType, body, ttlNanos));
+    }
+
+    public int getMaxEntryBytes() {
+        return maxEntryBytes;
+    }
+}
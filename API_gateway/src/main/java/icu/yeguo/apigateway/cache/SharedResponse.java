@@ -0,0 +1,25 @@
+package icu.yeguo.apigateway.cache;
+
+import icu.yeguo.apigateway.body.ResponseInspector;
+import lombok.Getter;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+
+/**
+ * 合并请求中由首个请求取回、分发给其余等待请求的完整响应
+ */
+@Getter
+public final class SharedResponse {
+    private final HttpStatusCode status;
+    private final MediaType contentType;
+    private final byte[] body;
+    private final ResponseInspector.Outcome outcome;
+
+    public SharedResponse(HttpStatusCode status, MediaType contentType, byte[] body,
+                          ResponseInspector.Outcome outcome) {
+        this.status = status;
+        this.contentType = contentType;
+        this.body = body;
+        this.outcome = outcome;
+    }
+}
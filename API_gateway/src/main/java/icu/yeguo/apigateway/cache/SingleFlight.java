@@ -0,0 +1,93 @@
+package icu.yeguo.apigateway.cache;
+
+import icu.yeguo.apicommon.model.dto.InterfaceRoute;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 合并并发的相同请求(single-flight)
+ * 同一 key 同时只有首个请求访问上游，其余请求等待并共用它的响应，各自照常扣费计数；
+ * 首个请求失败、响应过大或等待超时时，等待的请求各自访问上游
+ */
+@Slf4j
+@Component
+public class SingleFlight {
+
+    private final ConcurrentHashMap<String, Sinks.One<SharedResponse>> inFlight = new ConcurrentHashMap<>();
+    private final Duration waitTimeout;
+
+    public SingleFlight(@Value("${yeguo.gateway.single-flight.wait-timeout:10000}") long waitTimeoutMillis) {
+        this.waitTimeout = Duration.ofMillis(waitTimeoutMillis);
+    }
+
+    /**
+     * 幂等或开启了缓存的 GET 接口才合并
+     */
+    public boolean isCoalescable(ServerHttpRequest request, InterfaceRoute route) {
+        if (!HttpMethod.GET.equals(request.getMethod())) {
+            return false;
+        }
+        return Integer.valueOf(1).equals(route.getIsIdempotent())
+                || route.getCacheTtl() != null && route.getCacheTtl() > 0;
+    }
+
+    public Flight join(String key) {
+        Sinks.One<SharedResponse> created = Sinks.one();
+        Sinks.One<SharedResponse> existing = inFlight.putIfAbsent(key, created);
+        return existing != null ? new Flight(key, existing, false) : new Flight(key, created, true);
+    }
+
+    public final class Flight {
+        private final String key;
+        private final Sinks.One<SharedResponse> sink;
+        private final boolean leader;
+
+        private Flight(String key, Sinks.One<SharedResponse> sink, boolean leader) {
+            this.key = key;
+            this.sink = sink;
+            this.leader = leader;
+        }
+
+        public boolean isLeader() {
+            return leader;
+        }
+
+        /**
+         * 等待首个请求的响应，拿不到时为空
+         */
+        public Mono<Optional<SharedResponse>> await() {
+            return sink.asMono()
+                    .timeout(waitTimeout)
+                    .map(Optional::of)
+                    .defaultIfEmpty(Optional.empty())
+                    .onErrorResume(e -> {
+                        log.warn("等待合并请求的响应超时:{}", key);
+                        return Mono.just(Optional.empty());
+                    });
+        }
+
+        /**
+         * 首个请求结束时调用，response 为空表示没有可共用的响应；重复调用无效
+         */
+        public void complete(SharedResponse response) {
+            if (!leader) {
+                return;
+            }
+            inFlight.remove(key, sink);
+            if (response != null) {
+                sink.tryEmitValue(response);
+            } else {
+                sink.tryEmitEmpty();
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package icu.yeguo.apigateway.compress;
+
+import icu.yeguo.apicommon.model.dto.InterfaceRoute;
+import icu.yeguo.apigateway.route.RouteTable;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.embedded.netty.NettyServerCustomizer;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+
+import java.util.List;
+
+/**
+ * 网关到客户端的响应压缩，按请求的 Accept-Encoding 协商 gzip/deflate
+ * 由 Netty 在写出时逐块压缩，响应判定、计费、缓存都在压缩之前，看到的是原始内容
+ * 小于 min-response-size 的响应、非文本类型(图片等)和 interface_info.compressible=0 的接口不压缩
+ */
+@Slf4j
+@Component
+public class ResponseCompression implements NettyServerCustomizer {
+
+    private final boolean enabled;
+    private final int minResponseSize;
+    private final List<MediaType> mimeTypes;
+
+    @Value("${yeguo.gateway.base-url}")
+    private String baseUrl;
+    /**
+     * Web 服务器创建时还不能初始化 Dubbo 引用，延迟到首次判断时获取
+     */
+    @Lazy
+    @Autowired
+    private RouteTable routeTable;
+
+    public ResponseCompression(@Value("${yeguo.gateway.compression.enabled:true}") boolean enabled,
+                               @Value("${yeguo.gateway.compression.min-response-size:1024}") int minResponseSize,
+                               @Value("${yeguo.gateway.compression.mime-types:application/json,text/*,"
+                                       + "application/xml,application/javascript,image/svg+xml}")
+                               List<String> mimeTypes) {
+        this.enabled = enabled;
+        this.minResponseSize = minResponseSize;
+        this.mimeTypes = MediaType.parseMediaTypes(mimeTypes);
+    }
+
+    @Override
+    public HttpServer apply(HttpServer httpServer) {
+        if (!enabled) {
+            return httpServer;
+        }
+        log.info("响应压缩已开启，最小压缩大小:{}B，类型:{}", minResponseSize, mimeTypes);
+        // 有 Content-Length 时按大小判断，分块响应总是压缩
+        return httpServer.compress(minResponseSize).compress(this::shouldCompress);
+    }
+
+    private boolean shouldCompress(HttpServerRequest request, HttpServerResponse response) {
+        return shouldCompress(request.fullPath(), response.responseHeaders().get(HttpHeaderNames.CONTENT_TYPE),
+                response.responseHeaders().get(HttpHeaderNames.CONTENT_ENCODING));
+    }
+
+    boolean shouldCompress(String path, String contentType, String contentEncoding) {
+        // 上游已压缩
+        if (contentEncoding != null || contentType == null) {
+            return false;
+        }
+        InterfaceRoute route = routeTable.get(baseUrl + path);
+        if (route != null && Integer.valueOf(0).equals(route.getCompressible())) {
+            return false;
+        }
+        try {
+            MediaType mediaType = MediaType.parseMediaType(contentType);
+            for (MediaType mimeType : mimeTypes) {
+                if (mimeType.isCompatibleWith(mediaType)) {
+                    return true;
+                }
+            }
+        } catch (InvalidMediaTypeException e) {
+            return false;
+        }
+        return false;
+    }
+}
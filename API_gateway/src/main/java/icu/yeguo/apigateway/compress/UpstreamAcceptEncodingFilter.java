@@ -0,0 +1,33 @@
+package icu.yeguo.apigateway.compress;
+
+import org.springframework.cloud.gateway.filter.headers.HttpHeadersFilter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+
+/**
+ * 转发到上游的请求去掉 Accept-Encoding，上游返回原始内容，供响应判定和缓存使用，再由网关按客户端协商压缩
+ * 只修改转发请求的请求头副本，客户端请求头保持不变，Netty 压缩仍按它协商
+ */
+@Component
+public class UpstreamAcceptEncodingFilter implements HttpHeadersFilter {
+
+    @Override
+    public HttpHeaders filter(HttpHeaders input, ServerWebExchange exchange) {
+        if (!input.containsKey(HttpHeaders.ACCEPT_ENCODING)) {
+            return input;
+        }
+        HttpHeaders filtered = new HttpHeaders();
+        input.forEach((name, values) -> {
+            if (!HttpHeaders.ACCEPT_ENCODING.equalsIgnoreCase(name)) {
+                filtered.put(name, values);
+            }
+        });
+        return filtered;
+    }
+
+    @Override
+    public boolean supports(Type type) {
+        return type == Type.REQUEST;
+    }
+}
@@ -0,0 +1,72 @@
+package icu.yeguo.apigateway.hedge;
+
+import java.util.Arrays;
+
+/**
+ * 单个接口的上游耗时和对冲预算
+ * 保留最近 SAMPLE_SIZE 次请求从开始转发到拿到上游响应头的耗时(含对冲延迟)，定期重新计算 p95 作为对冲延迟；
+ * 每个可对冲的请求积累 budgetRatio 个额度，每次对冲消耗 1 个，对冲请求数不超过请求数的 budgetRatio 倍
+ */
+public final class HedgeStats {
+
+    private static final int SAMPLE_SIZE = 256;
+    private static final int RECOMPUTE_INTERVAL = 32;
+    private static final double PERCENTILE = 0.95;
+    /**
+     * 额度上限，流量空闲后最多连续对冲的请求数
+     */
+    private static final double MAX_CREDITS = 10;
+
+    private final double budgetRatio;
+    private final int minSamples;
+    private final long[] samples = new long[SAMPLE_SIZE];
+    private long count;
+    private long p95 = -1;
+    private double credits;
+
+    public HedgeStats(double budgetRatio, int minSamples) {
+        this.budgetRatio = budgetRatio;
+        this.minSamples = Math.max(1, Math.min(minSamples, SAMPLE_SIZE));
+    }
+
+    /**
+     * 记录一次请求从开始转发到拿到上游响应头的耗时
+     */
+    public synchronized void record(long nanos) {
+        samples[(int) (count % SAMPLE_SIZE)] = nanos;
+        count++;
+        if (count >= minSamples && (p95 < 0 || count % RECOMPUTE_INTERVAL == 0)) {
+            int size = (int) Math.min(count, SAMPLE_SIZE);
+            long[] sorted = Arrays.copyOf(samples, size);
+            Arrays.sort(sorted);
+            p95 = sorted[Math.min(size - 1, (int) Math.ceil(size * PERCENTILE) - 1)];
+        }
+    }
+
+    /**
+     * @return 上游耗时 p95，样本不足时为 -1
+     */
+    public synchronized long getP95() {
+        return p95;
+    }
+
+    /**
+     * 每个可对冲的请求调用一次，积累对冲额度
+     */
+    public synchronized void onRequest() {
+        credits = Math.min(MAX_CREDITS, credits + budgetRatio);
+    }
+
+    /**
+     * 消耗一个对冲额度
+     *
+     * @return 额度不足时为 false，不发出对冲请求
+     */
+    public synchronized boolean tryHedge() {
+        if (credits >= 1) {
+            credits -= 1;
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,253 @@
+package icu.yeguo.apigateway.hedge;
+
+import icu.yeguo.apicommon.model.dto.InterfaceRoute;
+import icu.yeguo.apigateway.route.RouteTable;
+import icu.yeguo.apigateway.route.UpstreamPool;
+import icu.yeguo.apigateway.route.UpstreamPoolFilter;
+import icu.yeguo.apigateway.route.UpstreamPools;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.channel.ConnectTimeoutException;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.NettyRoutingFilter;
+import org.springframework.cloud.gateway.filter.headers.HttpHeadersFilter;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.client.HttpClientResponse;
+
+import java.net.ConnectException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.CLIENT_RESPONSE_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.CLIENT_RESPONSE_CONN_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.CLIENT_RESPONSE_HEADER_NAMES;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.ORIGINAL_RESPONSE_CONTENT_TYPE_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.PRESERVE_HOST_HEADER_ATTRIBUTE;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.isAlreadyRouted;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.setAlreadyRouted;
+
+/**
+ * 幂等 GET 接口的对冲请求：上游超过该接口 p95 耗时还没有返回响应头时，向池中另一个实例再发一次，先返回的响应生效，另一个取消
+ * 替 NettyRoutingFilter 转发这类请求，响应体仍由 NettyWriteResponseFilter 写出；扣费、响应判定、缓存都在外层，只按客户端请求算一次
+ * 对冲请求数受 budget-ratio 限制，样本不足、池中只有一个实例或额度用完时不对冲
+ */
+@Slf4j
+@Component
+public class HedgingFilter implements GlobalFilter, Ordered {
+
+    /**
+     * 在 NettyRoutingFilter 之前
+     */
+    private static final int ORDER = NettyRoutingFilter.ORDER - 1;
+
+    @Value("${yeguo.gateway.base-url}")
+    private String baseUrl;
+    @Autowired
+    private RouteTable routeTable;
+    @Autowired
+    private UpstreamPools upstreamPools;
+    @Autowired
+    private HttpClient httpClient;
+    @Autowired
+    private NettyRoutingFilter nettyRoutingFilter;
+    @Autowired
+    private HttpClientProperties httpClientProperties;
+
+    private final boolean enabled;
+    private final double budgetRatio;
+    private final int minSamples;
+    private final long minDelayNanos;
+    private final Map<Long, HedgeStats> stats = new ConcurrentHashMap<>();
+    private final Counter hedged;
+    private final Counter hedgeWins;
+
+    public HedgingFilter(@Value("${yeguo.gateway.hedge.enabled:true}") boolean enabled,
+                         @Value("${yeguo.gateway.hedge.budget-ratio:0.05}") double budgetRatio,
+                         @Value("${yeguo.gateway.hedge.min-samples:50}") int minSamples,
+                         @Value("${yeguo.gateway.hedge.min-delay:10}") long minDelayMillis,
+                         MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.budgetRatio = budgetRatio;
+        this.minSamples = minSamples;
+        this.minDelayNanos = TimeUnit.MILLISECONDS.toNanos(minDelayMillis);
+        this.hedged = Counter.builder("yeguo.gateway.hedge.requests")
+                .description("发出的对冲请求数")
+                .register(meterRegistry);
+        this.hedgeWins = Counter.builder("yeguo.gateway.hedge.wins")
+                .description("对冲请求先于原请求返回的次数")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        URI requestUrl = exchange.getAttribute(GATEWAY_REQUEST_URL_ATTR);
+        UpstreamPool.Instance primary = exchange.getAttribute(UpstreamPoolFilter.INSTANCE_ATTR);
+        if (!enabled || requestUrl == null || primary == null || isAlreadyRouted(exchange)
+                || !HttpMethod.GET.equals(exchange.getRequest().getMethod())) {
+            return chain.filter(exchange);
+        }
+        InterfaceRoute route = routeTable.get(baseUrl + exchange.getRequest().getPath().value());
+        UpstreamPool pool = upstreamPools.get(primary.getPool());
+        if (route == null || !Integer.valueOf(1).equals(route.getIsIdempotent()) || pool.getInstances().length < 2) {
+            return chain.filter(exchange);
+        }
+        setAlreadyRouted(exchange);
+        HedgeStats hedgeStats = stats.computeIfAbsent(route.getId(), id -> new HedgeStats(budgetRatio, minSamples));
+        hedgeStats.onRequest();
+        HttpHeaders requestHeaders = HttpHeadersFilter.filterRequest(nettyRoutingFilter.getHeadersFilters(), exchange);
+        AtomicBoolean responded = new AtomicBoolean();
+        // 耗时从客户端请求开始计：对冲生效时记录的是原请求已等待的时间，而不是对冲请求自身较短的耗时
+        long start = System.nanoTime();
+
+        Mono<HttpClientResponse> response = send(exchange, requestHeaders, requestUrl, responded, hedgeStats, start);
+        long p95 = hedgeStats.getP95();
+        // 对冲实例未完成的请求数：没有生效时在对冲请求结束时减少，生效时在整个响应写完后减少
+        AtomicReference<UpstreamPool.Instance> hedgeInstance = new AtomicReference<>();
+        if (p95 >= 0) {
+            Mono<HttpClientResponse> hedge = Mono.delay(Duration.ofNanos(Math.max(p95, minDelayNanos)))
+                    .flatMap(tick -> {
+                        UpstreamPool.Instance instance = pool.choose(primary);
+                        if (instance == null || !hedgeStats.tryHedge()) {
+                            return Mono.empty();
+                        }
+                        hedged.increment();
+                        instance.acquire();
+                        hedgeInstance.set(instance);
+                        AtomicBoolean won = new AtomicBoolean();
+                        URI hedgeUrl = UpstreamPoolFilter.resolve(requestUrl, instance.getUri());
+                        return send(exchange, requestHeaders, hedgeUrl, responded, hedgeStats, start)
+                                .doOnNext(res -> {
+                                    won.set(true);
+                                    hedgeWins.increment();
+                                    exchange.getAttributes().put(GATEWAY_REQUEST_URL_ATTR, hedgeUrl);
+                                })
+                                .doOnError(e -> {
+                                    if (e instanceof ConnectException || e instanceof ConnectTimeoutException) {
+                                        upstreamPools.eject(instance);
+                                    }
+                                })
+                                .doFinally(signal -> {
+                                    if (!won.get()) {
+                                        release(hedgeInstance);
+                                    }
+                                });
+                    });
+            // 先拿到响应头的生效，另一个被取消；两个都失败时按原请求的错误处理
+            response = Mono.firstWithValue(response, hedge)
+                    .onErrorMap(NoSuchElementException.class, HedgingFilter::primaryError);
+        }
+        Duration responseTimeout = httpClientProperties.getResponseTimeout();
+        if (responseTimeout != null) {
+            response = response.timeout(responseTimeout, Mono.error(new TimeoutException(
+                            "Response took longer than timeout: " + responseTimeout)))
+                    .onErrorMap(TimeoutException.class,
+                            e -> new ResponseStatusException(HttpStatus.GATEWAY_TIMEOUT, e.getMessage(), e));
+        }
+        return response.then(chain.filter(exchange))
+                .doFinally(signal -> release(hedgeInstance));
+    }
+
+    /**
+     * 发出一次请求，拿到响应头后只有第一个返回的请求写入 exchange 并记录耗时，之后返回的关闭连接
+     *
+     * @param start 客户端请求开始转发的时间
+     */
+    private Mono<HttpClientResponse> send(ServerWebExchange exchange, HttpHeaders requestHeaders, URI url,
+                                          AtomicBoolean responded, HedgeStats hedgeStats, long start) {
+        boolean preserveHost = exchange.getAttributeOrDefault(PRESERVE_HOST_HEADER_ATTRIBUTE, false);
+        DefaultHttpHeaders headers = new DefaultHttpHeaders();
+        requestHeaders.forEach(headers::set);
+        return httpClient.headers(nettyHeaders -> {
+                    nettyHeaders.add(headers);
+                    nettyHeaders.remove(HttpHeaders.HOST);
+                    if (preserveHost) {
+                        nettyHeaders.add(HttpHeaders.HOST,
+                                exchange.getRequest().getHeaders().getFirst(HttpHeaders.HOST));
+                    }
+                })
+                .get()
+                .uri(url.toASCIIString())
+                .responseConnection((res, connection) -> {
+                    if (!responded.compareAndSet(false, true)) {
+                        connection.dispose();
+                        return Mono.<HttpClientResponse>empty();
+                    }
+                    hedgeStats.record(System.nanoTime() - start);
+                    exchange.getAttributes().put(CLIENT_RESPONSE_ATTR, res);
+                    exchange.getAttributes().put(CLIENT_RESPONSE_CONN_ATTR, connection);
+                    writeHeaders(exchange, res);
+                    return Mono.just(res);
+                })
+                .next();
+    }
+
+    /**
+     * 与 NettyRoutingFilter 相同：设置状态码，响应头经过 HttpHeadersFilter 过滤后写入
+     */
+    private void writeHeaders(ServerWebExchange exchange, HttpClientResponse res) {
+        ServerHttpResponse response = exchange.getResponse();
+        HttpHeaders headers = new HttpHeaders();
+        res.responseHeaders().forEach(entry -> headers.add(entry.getKey(), entry.getValue()));
+        String contentType = headers.getFirst(HttpHeaders.CONTENT_TYPE);
+        if (StringUtils.hasLength(contentType)) {
+            exchange.getAttributes().put(ORIGINAL_RESPONSE_CONTENT_TYPE_ATTR, contentType);
+        }
+        response.setStatusCode(HttpStatusCode.valueOf(res.status().code()));
+        HttpHeaders filtered = HttpHeadersFilter.filter(nettyRoutingFilter.getHeadersFilters(), headers, exchange,
+                HttpHeadersFilter.Type.RESPONSE);
+        if (!filtered.containsKey(HttpHeaders.TRANSFER_ENCODING) && filtered.containsKey(HttpHeaders.CONTENT_LENGTH)) {
+            response.getHeaders().remove(HttpHeaders.TRANSFER_ENCODING);
+        }
+        exchange.getAttributes().put(CLIENT_RESPONSE_HEADER_NAMES, filtered.keySet());
+        response.getHeaders().addAll(filtered);
+    }
+
+    /**
+     * firstWithValue 全部失败时，各请求的错误按顺序放在 cause 中，第一个是原请求的
+     */
+    private static Throwable primaryError(NoSuchElementException e) {
+        if (e.getCause() == null) {
+            return e;
+        }
+        Throwable primary = Exceptions.unwrapMultiple(e.getCause()).get(0);
+        return primary != null ? primary : e;
+    }
+
+    private static void release(AtomicReference<UpstreamPool.Instance> hedgeInstance) {
+        UpstreamPool.Instance instance = hedgeInstance.getAndSet(null);
+        if (instance != null) {
+            instance.release();
+        }
+    }
+
+    @Override
+    public int getOrder() {
+        return ORDER;
+    }
+}
@@ -0,0 +1,103 @@
+package icu.yeguo.apigateway.metrics;
+
+import icu.yeguo.apigateway.accesslog.AccessLog;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 网关各处理阶段的耗时和请求结果统计，通过 /actuator/prometheus 暴露
+ * Timer 按阶段/结果和接口缓存，每个请求记录多次，不在热点路径上重复构建标签和查找注册表
+ */
+@Component
+public class GatewayMetrics {
+    public static final String STAGE_ROUTE = "route";
+    public static final String STAGE_CREDENTIAL = "credential";
+    public static final String STAGE_SIGNATURE = "signature";
+    public static final String STAGE_DEDUCT = "deduct";
+    public static final String STAGE_UPSTREAM = "upstream";
+    public static final String STAGE_INSPECT = "inspect";
+
+    private static final String STAGE_TIMER = "yeguo.gateway.stage";
+    private static final String REQUEST_TIMER = "yeguo.gateway.requests";
+    /**
+     * 接口id为空时的缓存键
+     */
+    private static final Long NO_INTERFACE = Long.MIN_VALUE;
+
+    private final MeterRegistry meterRegistry;
+    /**
+     * 阶段 -> 接口id -> Timer
+     */
+    private final Map<String, Map<Long, Timer>> stageTimers = new ConcurrentHashMap<>();
+    /**
+     * 接口id -> 请求结果 -> Timer
+     */
+    private final Map<Long, Map<String, Timer>> requestTimers = new ConcurrentHashMap<>();
+
+    public GatewayMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * 统计异步阶段耗时，从订阅开始到结束
+     */
+    public <T> Mono<T> time(String stage, Long interfaceInfoId, Mono<T> mono) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return mono.doFinally(signalType -> record(stage, interfaceInfoId, System.nanoTime() - start));
+        });
+    }
+
+    public <T> T time(String stage, Long interfaceInfoId, Supplier<T> supplier) {
+        long start = System.nanoTime();
+        try {
+            return supplier.get();
+        } finally {
+            record(stage, interfaceInfoId, System.nanoTime() - start);
+        }
+    }
+
+    public void record(String stage, Long interfaceInfoId, long nanos) {
+        Long key = interfaceInfoId != null ? interfaceInfoId : NO_INTERFACE;
+        Map<Long, Timer> timers = stageTimers.computeIfAbsent(stage, s -> new ConcurrentHashMap<>());
+        Timer timer = timers.get(key);
+        if (timer == null) {
+            timer = timers.computeIfAbsent(key, id -> Timer.builder(STAGE_TIMER)
+                    .description("网关各处理阶段耗时")
+                    .tag("stage", stage)
+                    .tag("interface", interfaceTag(interfaceInfoId))
+                    .register(meterRegistry));
+        }
+        timer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 按请求结果统计次数和总耗时
+     */
+    public void recordRequest(AccessLog accessLog) {
+        Long interfaceInfoId = accessLog.getInterfaceInfoId();
+        String result = accessLog.getResult() != null ? accessLog.getResult() : "unknown";
+        Map<String, Timer> timers = requestTimers.computeIfAbsent(
+                interfaceInfoId != null ? interfaceInfoId : NO_INTERFACE, id -> new ConcurrentHashMap<>());
+        Timer timer = timers.get(result);
+        if (timer == null) {
+            timer = timers.computeIfAbsent(result, r -> Timer.builder(REQUEST_TIMER)
+                    .description("网关请求总耗时")
+                    .tag("interface", interfaceTag(interfaceInfoId))
+                    .tag("result", result)
+                    .register(meterRegistry));
+        }
+        timer.record(System.nanoTime() - accessLog.getStartNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    private static String interfaceTag(Long interfaceInfoId) {
+        return interfaceInfoId != null ? interfaceInfoId.toString() : "none";
+    }
+}
@@ -0,0 +1,18 @@
+package icu.yeguo.apigateway.provider;
+
+import icu.yeguo.apicommon.service.GatewayCacheService;
+import icu.yeguo.apigateway.auth.CredentialCache;
+import org.apache.dubbo.config.annotation.DubboService;
+import org.springframework.beans.factory.annotation.Autowired;
+
+@DubboService
+public class GatewayCacheServiceImpl implements GatewayCacheService {
+
+    @Autowired
+    private CredentialCache credentialCache;
+
+    @Override
+    public void evictCredential(String accessKey) {
+        credentialCache.evict(accessKey);
+    }
+}
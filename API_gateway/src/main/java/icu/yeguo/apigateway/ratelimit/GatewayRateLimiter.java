@@ -0,0 +1,120 @@
+package icu.yeguo.apigateway.ratelimit;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import icu.yeguo.apicommon.model.dto.InterfaceRoute;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 按 accessKey 和接口限流，在鉴权和扣费的远程调用之前执行
+ * 默认每个网关实例本地计数；yeguo.gateway.rate-limit.mode=redis 时用 Redis 共享计数，多个网关实例合计限流
+ */
+@Slf4j
+@Component
+public class GatewayRateLimiter {
+
+    private static final String REDIS_KEY_PREFIX = "yeguo_rate_limiter.";
+
+    private final int keyRate;
+    private final int keyBurst;
+    /**
+     * Caffeine 内部分段存储，桶本身无锁，热点 key 之间互不竞争
+     */
+    private final Cache<String, TokenBucket> keyBuckets;
+    private final Cache<Long, TokenBucket> interfaceBuckets;
+    private final ReactiveStringRedisTemplate redisTemplate;
+    private final RedisScript<List<Long>> redisScript;
+
+    public GatewayRateLimiter(@Value("${yeguo.gateway.rate-limit.mode:local}") String mode,
+                              @Value("${yeguo.gateway.rate-limit.key-rate:20}") int keyRate,
+                              @Value("${yeguo.gateway.rate-limit.key-burst:40}") int keyBurst,
+                              @Value("${yeguo.gateway.rate-limit.maximum-keys:100000}") long maximumKeys,
+                              ObjectProvider<ReactiveStringRedisTemplate> redisTemplate,
+                              @Qualifier("redisRequestRateLimiterScript")
+                              ObjectProvider<RedisScript<List<Long>>> redisScript) {
+        this.keyRate = keyRate;
+        this.keyBurst = keyBurst;
+        this.keyBuckets = Caffeine.newBuilder()
+                .maximumSize(maximumKeys)
+                .expireAfterAccess(Duration.ofMinutes(10))
+                .build();
+        this.interfaceBuckets = Caffeine.newBuilder()
+                .expireAfterAccess(Duration.ofMinutes(10))
+                .build();
+        if ("redis".equals(mode)) {
+            // 复用 Spring Cloud Gateway 自带的令牌桶脚本
+            this.redisTemplate = redisTemplate.getIfAvailable();
+            this.redisScript = redisScript.getIfAvailable();
+            if (this.redisTemplate == null || this.redisScript == null) {
+                throw new IllegalStateException("Redis 限流模式需要配置 spring.data.redis");
+            }
+            log.info("网关限流使用 Redis 共享计数");
+        } else {
+            this.redisTemplate = null;
+            this.redisScript = null;
+        }
+    }
+
+    /**
+     * @return 超过该 accessKey 的限制时为 false
+     */
+    public Mono<Boolean> acquireKey(String accessKey) {
+        if (accessKey == null || keyRate <= 0) {
+            return Mono.just(true);
+        }
+        if (redisTemplate != null) {
+            return acquireRedis("key." + accessKey, keyRate, keyBurst);
+        }
+        TokenBucket bucket = keyBuckets.get(accessKey, key -> new TokenBucket(keyRate, keyBurst));
+        return Mono.just(bucket.tryAcquire());
+    }
+
+    /**
+     * @return 超过该接口的限制时为 false
+     */
+    public Mono<Boolean> acquireInterface(InterfaceRoute route) {
+        Integer rateLimit = route.getRateLimit();
+        if (rateLimit == null || rateLimit <= 0) {
+            return Mono.just(true);
+        }
+        // 接口限流允许突发一秒的量
+        if (redisTemplate != null) {
+            return acquireRedis("interface." + route.getId(), rateLimit, rateLimit);
+        }
+        // 接口id是最热的 key，先无锁读取，只在桶不存在或限额变更时才加锁替换
+        TokenBucket bucket = interfaceBuckets.getIfPresent(route.getId());
+        if (bucket == null || !bucket.matches(rateLimit, rateLimit)) {
+            bucket = interfaceBuckets.asMap().compute(route.getId(), (id, current) ->
+                    current != null && current.matches(rateLimit, rateLimit) ? current
+                            : new TokenBucket(rateLimit, rateLimit));
+        }
+        return Mono.just(bucket.tryAcquire());
+    }
+
+    private Mono<Boolean> acquireRedis(String id, int rate, int burst) {
+        List<String> keys = Arrays.asList(REDIS_KEY_PREFIX + "{" + id + "}.tokens",
+                REDIS_KEY_PREFIX + "{" + id + "}.timestamp");
+        // 当前时间留空，由脚本取 Redis 服务器时间
+        List<String> args = Arrays.asList(String.valueOf(rate), String.valueOf(burst), "", "1");
+        return redisTemplate.execute(redisScript, keys, args)
+                .next()
+                .map(result -> result.get(0) == 1L)
+                .onErrorResume(e -> {
+                    // Redis 不可用时放行，不因限流组件故障拒绝正常请求
+                    log.warn("Redis 限流失败，放行请求", e);
+                    return Mono.just(true);
+                })
+                .defaultIfEmpty(true);
+    }
+}
@@ -0,0 +1,18 @@
+package icu.yeguo.apigateway.ratelimit;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.data.redis.RedisAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.redis.RedisReactiveAutoConfiguration;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+
+/**
+ * Redis 自动配置默认被排除(spring.autoconfigure.exclude)，只有 Redis 限流模式才作为普通配置类引入
+ * (ImportAutoConfiguration 同样受排除列表影响，不能用)
+ * 本地限流模式下不创建 Redis 连接，健康检查也不会因为没有 Redis 而报 DOWN
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name = "yeguo.gateway.rate-limit.mode", havingValue = "redis")
+@Import({RedisAutoConfiguration.class, RedisReactiveAutoConfiguration.class})
+public class RedisRateLimitConfiguration {
+}
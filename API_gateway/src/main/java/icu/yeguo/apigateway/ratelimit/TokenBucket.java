@@ -0,0 +1,47 @@
+package icu.yeguo.apigateway.ratelimit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 无锁令牌桶
+ * 按 GCRA 实现，只保存一个理论到达时间，取令牌时 CAS 向后推进，效果等同于速率 rate、容量 burst 的令牌桶
+ */
+public final class TokenBucket {
+    private final int rate;
+    private final int burst;
+    private final long intervalNanos;
+    private final long capacityNanos;
+    private final AtomicLong theoreticalArrival = new AtomicLong(Long.MIN_VALUE);
+
+    public TokenBucket(int rate, int burst) {
+        this.rate = rate;
+        this.burst = Math.max(burst, 1);
+        this.intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        this.capacityNanos = intervalNanos * this.burst;
+    }
+
+    public boolean tryAcquire() {
+        return tryAcquire(System.nanoTime());
+    }
+
+    boolean tryAcquire(long now) {
+        for (; ; ) {
+            long current = theoreticalArrival.get();
+            long next = Math.max(current, now) + intervalNanos;
+            if (next - now > capacityNanos) {
+                return false;
+            }
+            if (theoreticalArrival.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 限流配置是否未变
+     */
+    public boolean matches(int rate, int burst) {
+        return this.rate == rate && this.burst == Math.max(burst, 1);
+    }
+}
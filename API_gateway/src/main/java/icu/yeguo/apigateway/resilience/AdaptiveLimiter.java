@@ -0,0 +1,192 @@
+package icu.yeguo.apigateway.resilience;
+
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 按上游耗时自适应调整的并发上限(梯度算法)
+ * 最近一段时间的最小耗时作为无排队时的基准，耗时不超过基准的 tolerance 倍时逐步放大上限，超过后按比例收缩；
+ * 上游超时、连接失败或返回 503/504 时按 AIMD 乘性减小
+ * 超过上限的请求短暂排队，其他请求归还许可时按先来先得放行，排队超时或队列已满直接拒绝
+ */
+public final class AdaptiveLimiter {
+
+    /**
+     * 基准取最近一到两个窗口内的最小耗时，上游本身变慢后最多两个窗口基准跟上
+     */
+    private static final int BASELINE_WINDOW = 500;
+    private static final double SMOOTHING = 0.2;
+    private static final double MIN_GRADIENT = 0.5;
+    private static final double BACKOFF_RATIO = 0.9;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final int maxQueueSize;
+    private final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+
+    private double limit;
+    private int inflight;
+    private long baselineRtt = Long.MAX_VALUE;
+    private long previousWindowMin = Long.MAX_VALUE;
+    private long windowMin = Long.MAX_VALUE;
+    private int windowSamples;
+
+    public AdaptiveLimiter(int initialLimit, int minLimit, int maxLimit, double tolerance, int maxQueueSize) {
+        this.minLimit = Math.max(minLimit, 1);
+        this.maxLimit = Math.max(maxLimit, this.minLimit);
+        this.limit = Math.min(Math.max(initialLimit, this.minLimit), this.maxLimit);
+        this.tolerance = tolerance;
+        this.maxQueueSize = maxQueueSize;
+    }
+
+    public synchronized boolean tryAcquire() {
+        if (inflight < (int) limit) {
+            inflight++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 申请许可，达到上限时最多排队 timeout
+     *
+     * @return 获得许可为 true，排队超时或队列已满为 false；获得许可后必须调用 release
+     */
+    public Mono<Boolean> acquire(Duration timeout) {
+        if (tryAcquire()) {
+            return Mono.just(true);
+        }
+        if (timeout.isZero() || maxQueueSize <= 0) {
+            return Mono.just(false);
+        }
+        return Mono.create(sink -> {
+            Waiter waiter = new Waiter(sink);
+            // 先注册取消回调：放行后下游已取消时，放行的结果不会再传给下游，由这里归还
+            sink.onCancel(() -> {
+                if (!abandon(waiter) && waiter.state.get() == Waiter.GRANTED) {
+                    release(-1, false);
+                }
+            });
+            synchronized (this) {
+                if (waiter.state.get() != Waiter.WAITING) {
+                    // 订阅时下游已取消，取消回调已执行，不再排队
+                    return;
+                }
+                if (inflight < (int) limit) {
+                    inflight++;
+                    waiter.state.set(Waiter.GRANTED);
+                } else if (waiters.size() < maxQueueSize) {
+                    waiters.addLast(waiter);
+                } else {
+                    waiter.state.set(Waiter.ABANDONED);
+                }
+            }
+            if (waiter.state.get() != Waiter.WAITING) {
+                sink.success(waiter.state.get() == Waiter.GRANTED);
+                return;
+            }
+            Disposable timer = Schedulers.parallel().schedule(() -> {
+                if (abandon(waiter)) {
+                    sink.success(false);
+                }
+            }, timeout.toNanos(), TimeUnit.NANOSECONDS);
+            sink.onDispose(timer);
+        });
+    }
+
+    /**
+     * 归还许可并记录一次上游结果
+     *
+     * @param rttNanos 上游耗时，没有访问上游时为负数，不参与调整
+     * @param dropped  上游超时、连接失败或过载
+     */
+    public void release(long rttNanos, boolean dropped) {
+        List<Waiter> granted = null;
+        synchronized (this) {
+            inflight--;
+            if (dropped) {
+                limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+            } else if (rttNanos >= 0) {
+                update(rttNanos);
+            }
+            while (inflight < (int) limit && !waiters.isEmpty()) {
+                Waiter waiter = waiters.pollFirst();
+                if (waiter.state.compareAndSet(Waiter.WAITING, Waiter.GRANTED)) {
+                    inflight++;
+                    if (granted == null) {
+                        granted = new ArrayList<>();
+                    }
+                    granted.add(waiter);
+                }
+            }
+        }
+        // 在锁外通知，下游会直接在当前线程继续处理请求
+        if (granted != null) {
+            for (Waiter waiter : granted) {
+                waiter.sink.success(true);
+            }
+        }
+    }
+
+    private void update(long rttNanos) {
+        long rtt = Math.max(rttNanos, 1);
+        windowMin = Math.min(windowMin, rtt);
+        if (++windowSamples >= BASELINE_WINDOW) {
+            previousWindowMin = windowMin;
+            windowMin = Long.MAX_VALUE;
+            windowSamples = 0;
+        }
+        baselineRtt = Math.min(previousWindowMin, windowMin);
+        // 并发远未用满时耗时不说明上游容量，不调整
+        if (inflight + 1 < limit / 2) {
+            return;
+        }
+        double gradient = Math.max(MIN_GRADIENT, Math.min(1.0, tolerance * baselineRtt / rtt));
+        double newLimit = limit * gradient + Math.sqrt(limit);
+        newLimit = limit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+        limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+    }
+
+    private synchronized boolean abandon(Waiter waiter) {
+        if (waiter.state.compareAndSet(Waiter.WAITING, Waiter.ABANDONED)) {
+            waiters.remove(waiter);
+            return true;
+        }
+        return false;
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInflight() {
+        return inflight;
+    }
+
+    public synchronized int getQueued() {
+        return waiters.size();
+    }
+
+    private static final class Waiter {
+        private static final int WAITING = 0;
+        private static final int GRANTED = 1;
+        private static final int ABANDONED = 2;
+
+        private final MonoSink<Boolean> sink;
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+
+        private Waiter(MonoSink<Boolean> sink) {
+            this.sink = sink;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package icu.yeguo.apigateway.resilience;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 每个接口一个自适应并发限制器，上限随上游耗时变化，在固定的隔离舱上限之内生效
+ * 上游被自身的阻塞调用拖慢时耗时上升，限制器收缩并发，多出的请求在扣费前排队或拒绝，避免上游过载后吞吐下降
+ * 当前上限、占用和排队数通过 yeguo.gateway.upstream.limit/inflight/queued 暴露
+ */
+@Slf4j
+@Component
+public class ConcurrencyLimiters implements MeterBinder {
+
+    private final boolean enabled;
+    private final int initialLimit;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final int queueSize;
+    @Getter
+    private final Duration queueTimeout;
+    private final Map<Long, AdaptiveLimiter> limiters = new ConcurrentHashMap<>();
+    private volatile MeterRegistry meterRegistry;
+
+    public ConcurrencyLimiters(@Value("${yeguo.gateway.resilience.adaptive.enabled:true}") boolean enabled,
+                               @Value("${yeguo.gateway.resilience.adaptive.initial-limit:20}") int initialLimit,
+                               @Value("${yeguo.gateway.resilience.adaptive.min-limit:4}") int minLimit,
+                               @Value("${yeguo.gateway.resilience.adaptive.max-limit:100}") int maxLimit,
+                               @Value("${yeguo.gateway.resilience.adaptive.tolerance:1.5}") double tolerance,
+                               @Value("${yeguo.gateway.resilience.adaptive.queue-size:50}") int queueSize,
+                               @Value("${yeguo.gateway.resilience.adaptive.queue-timeout:50}") long queueTimeoutMillis) {
+        this.enabled = enabled;
+        this.initialLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.queueSize = queueSize;
+        this.queueTimeout = Duration.ofMillis(queueTimeoutMillis);
+        if (enabled) {
+            log.info("自适应并发限制已开启，初始上限:{}，范围:{}~{}，排队:{}个/{}ms", initialLimit, minLimit, maxLimit,
+                    queueSize, queueTimeoutMillis);
+        }
+    }
+
+    /**
+     * @return 未开启或接口id为空时为空
+     */
+    public AdaptiveLimiter get(Long interfaceInfoId) {
+        if (!enabled || interfaceInfoId == null) {
+            return null;
+        }
+        return limiters.computeIfAbsent(interfaceInfoId, id -> {
+            AdaptiveLimiter limiter = new AdaptiveLimiter(initialLimit, minLimit, maxLimit, tolerance, queueSize);
+            MeterRegistry registry = meterRegistry;
+            if (registry != null) {
+                register(registry, id, limiter);
+            }
+            return limiter;
+        });
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        this.meterRegistry = registry;
+        limiters.forEach((id, limiter) -> register(registry, id, limiter));
+    }
+
+    private static void register(MeterRegistry registry, Long interfaceInfoId, AdaptiveLimiter limiter) {
+        String id = String.valueOf(interfaceInfoId);
+        Gauge.builder("yeguo.gateway.upstream.limit", limiter, AdaptiveLimiter::getLimit)
+                .description("接口当前的自适应并发上限")
+                .tag("interface", id)
+                .register(registry);
+        Gauge.builder("yeguo.gateway.upstream.inflight", limiter, AdaptiveLimiter::getInflight)
+                .description("接口正在处理的请求数")
+                .tag("interface", id)
+                .register(registry);
+        Gauge.builder("yeguo.gateway.upstream.queued", limiter, AdaptiveLimiter::getQueued)
+                .description("接口排队等待并发许可的请求数")
+                .tag("interface", id)
+                .register(registry);
+    }
+}
@@ -0,0 +1,137 @@
+package icu.yeguo.apigateway.resilience;
+
+import icu.yeguo.apicommon.model.dto.InterfaceRoute;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.micrometer.tagged.TaggedBulkheadMetrics;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 每个接口一个熔断器、一个自适应并发限制器和一个并发隔离舱
+ * 上游持续出错或变慢时熔断，在鉴权和扣费之前直接拒绝请求，不再扣费后又返还；
+ * 并发许可只在真正访问上游时申请，单个接口卡住时最多占用 max-concurrent-calls 个连接，
+ * 并发达到自适应上限时短暂排队，排队超时再拒绝
+ * 熔断器状态和隔离舱占用通过 /actuator/prometheus 暴露(resilience4j_circuitbreaker_*、resilience4j_bulkhead_*)
+ */
+@Slf4j
+@Component
+public class UpstreamGuard implements MeterBinder {
+
+    private final CircuitBreakerRegistry circuitBreakerRegistry;
+    private final BulkheadRegistry bulkheadRegistry;
+    private final ConcurrencyLimiters concurrencyLimiters;
+
+    public UpstreamGuard(@Value("${yeguo.gateway.resilience.failure-rate-threshold:50}") float failureRateThreshold,
+                         @Value("${yeguo.gateway.resilience.slow-call-duration-threshold:5000}") long slowCallMillis,
+                         @Value("${yeguo.gateway.resilience.slow-call-rate-threshold:80}") float slowCallRateThreshold,
+                         @Value("${yeguo.gateway.resilience.sliding-window-size:50}") int slidingWindowSize,
+                         @Value("${yeguo.gateway.resilience.minimum-number-of-calls:20}") int minimumNumberOfCalls,
+                         @Value("${yeguo.gateway.resilience.wait-duration-in-open-state:10000}") long openMillis,
+                         @Value("${yeguo.gateway.resilience.permitted-calls-in-half-open-state:5}") int halfOpenCalls,
+                         @Value("${yeguo.gateway.resilience.max-concurrent-calls:100}") int maxConcurrentCalls,
+                         ConcurrencyLimiters concurrencyLimiters) {
+        this.concurrencyLimiters = concurrencyLimiters;
+        CircuitBreakerConfig circuitBreakerConfig = CircuitBreakerConfig.custom()
+                .failureRateThreshold(failureRateThreshold)
+                .slowCallDurationThreshold(Duration.ofMillis(slowCallMillis))
+                .slowCallRateThreshold(slowCallRateThreshold)
+                .slidingWindowType(CircuitBreakerConfig.SlidingWindowType.COUNT_BASED)
+                .slidingWindowSize(slidingWindowSize)
+                .minimumNumberOfCalls(minimumNumberOfCalls)
+                .waitDurationInOpenState(Duration.ofMillis(openMillis))
+                .permittedNumberOfCallsInHalfOpenState(halfOpenCalls)
+                .automaticTransitionFromOpenToHalfOpenEnabled(false)
+                .build();
+        // 隔离舱不排队，满了直接拒绝，不在事件循环上等待
+        BulkheadConfig bulkheadConfig = BulkheadConfig.custom()
+                .maxConcurrentCalls(maxConcurrentCalls)
+                .maxWaitDuration(Duration.ZERO)
+                .build();
+        this.circuitBreakerRegistry = CircuitBreakerRegistry.of(circuitBreakerConfig);
+        this.bulkheadRegistry = BulkheadRegistry.of(bulkheadConfig);
+        this.circuitBreakerRegistry.getEventPublisher().onEntryAdded(event -> event.getAddedEntry()
+                .getEventPublisher()
+                .onStateTransition(transition -> log.warn("接口{}熔断器状态变化:{}",
+                        transition.getCircuitBreakerName(), transition.getStateTransition())));
+    }
+
+    /**
+     * 熔断器是否放行，不占用许可；打开状态等待时间已过时转为半开并放行
+     */
+    public boolean isCallPermitted(InterfaceRoute route) {
+        CircuitBreaker circuitBreaker = circuitBreakerRegistry.circuitBreaker(String.valueOf(route.getId()));
+        if (!circuitBreaker.tryAcquirePermission()) {
+            return false;
+        }
+        circuitBreaker.releasePermission();
+        return true;
+    }
+
+    /**
+     * 申请访问上游的许可，并发达到自适应上限时最多排队 queue-timeout，排队不占用隔离舱；
+     * 被拒绝时 {@link UpstreamPermit#getRejection()} 不为空；请求结束时必须调用 {@link UpstreamPermit#release()}
+     */
+    public Mono<UpstreamPermit> enter(InterfaceRoute route) {
+        CircuitBreaker circuitBreaker = circuitBreakerRegistry.circuitBreaker(String.valueOf(route.getId()));
+        if (!circuitBreaker.tryAcquirePermission()) {
+            return Mono.just(UpstreamPermit.rejected(UpstreamPermit.REJECTED_CIRCUIT_OPEN));
+        }
+        AdaptiveLimiter limiter = concurrencyLimiters.get(route.getId());
+        if (limiter == null) {
+            return Mono.just(enterBulkhead(route, circuitBreaker, null));
+        }
+        // 排队结果和客户端取消只有一个生效，熔断器许可只归还一次
+        AtomicBoolean settled = new AtomicBoolean();
+        return limiter.acquire(concurrencyLimiters.getQueueTimeout()).map(acquired -> {
+            if (!settled.compareAndSet(false, true)) {
+                // 已取消，熔断器许可已归还，拿到的并发许可也不再使用
+                if (acquired) {
+                    limiter.release(-1, false);
+                }
+                return UpstreamPermit.rejected(UpstreamPermit.REJECTED_CONCURRENCY_LIMITED);
+            }
+            if (!acquired) {
+                circuitBreaker.releasePermission();
+                return UpstreamPermit.rejected(UpstreamPermit.REJECTED_CONCURRENCY_LIMITED);
+            }
+            return enterBulkhead(route, circuitBreaker, limiter);
+        }).doOnCancel(() -> {
+            // 排队期间客户端断开，map 不会执行；半开状态的试探名额很少，不归还会卡住熔断器
+            if (settled.compareAndSet(false, true)) {
+                circuitBreaker.releasePermission();
+            }
+        });
+    }
+
+    private UpstreamPermit enterBulkhead(InterfaceRoute route, CircuitBreaker circuitBreaker,
+                                         AdaptiveLimiter limiter) {
+        Bulkhead bulkhead = bulkheadRegistry.bulkhead(String.valueOf(route.getId()));
+        if (!bulkhead.tryAcquirePermission()) {
+            circuitBreaker.releasePermission();
+            if (limiter != null) {
+                limiter.release(-1, false);
+            }
+            return UpstreamPermit.rejected(UpstreamPermit.REJECTED_BULKHEAD_FULL);
+        }
+        return new UpstreamPermit(circuitBreaker, bulkhead, limiter);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(circuitBreakerRegistry).bindTo(registry);
+        TaggedBulkheadMetrics.ofBulkheadRegistry(bulkheadRegistry).bindTo(registry);
+    }
+}
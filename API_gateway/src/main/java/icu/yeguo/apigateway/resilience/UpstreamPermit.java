@@ -0,0 +1,107 @@
+package icu.yeguo.apigateway.resilience;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.web.server.ServerWebExchange;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 一次请求占用的熔断器、自适应并发限制器和隔离舱许可
+ * 访问了上游时按上游结果记录到熔断器和并发限制器；鉴权失败、余额不足、命中缓存等没有访问上游的请求只归还许可，不计入统计
+ */
+public class UpstreamPermit {
+    public static final String REJECTED_CIRCUIT_OPEN = "circuit_open";
+    public static final String REJECTED_BULKHEAD_FULL = "bulkhead_full";
+    public static final String REJECTED_CONCURRENCY_LIMITED = "concurrency_limited";
+
+    private static final String ATTRIBUTE = UpstreamPermit.class.getName();
+
+    private final CircuitBreaker circuitBreaker;
+    private final Bulkhead bulkhead;
+    private final AdaptiveLimiter limiter;
+    private final String rejection;
+    private final AtomicBoolean recorded = new AtomicBoolean();
+    private final AtomicBoolean released = new AtomicBoolean();
+    private volatile long upstreamStartNanos;
+    private volatile long upstreamNanos = -1;
+    private volatile boolean dropped;
+
+    UpstreamPermit(CircuitBreaker circuitBreaker, Bulkhead bulkhead, AdaptiveLimiter limiter) {
+        this(circuitBreaker, bulkhead, limiter, null);
+    }
+
+    private UpstreamPermit(CircuitBreaker circuitBreaker, Bulkhead bulkhead, AdaptiveLimiter limiter,
+                           String rejection) {
+        this.circuitBreaker = circuitBreaker;
+        this.bulkhead = bulkhead;
+        this.limiter = limiter;
+        this.rejection = rejection;
+    }
+
+    static UpstreamPermit rejected(String rejection) {
+        return new UpstreamPermit(null, null, null, rejection);
+    }
+
+    public void attach(ServerWebExchange exchange) {
+        exchange.getAttributes().put(ATTRIBUTE, this);
+    }
+
+    /**
+     * @return 没有申请许可时为空
+     */
+    public static UpstreamPermit of(ServerWebExchange exchange) {
+        return exchange.getAttribute(ATTRIBUTE);
+    }
+
+    /**
+     * @return 被拒绝的原因 circuit_open/bulkhead_full/concurrency_limited，获得许可时为空
+     */
+    public String getRejection() {
+        return rejection;
+    }
+
+    public void upstreamStarted() {
+        upstreamStartNanos = System.nanoTime();
+    }
+
+    /**
+     * 记录上游结果，上游 5xx 或连接、超时等异常记为失败；只记录一次
+     * 异常和 503/504 说明上游已过载，并发限制器按此收缩
+     */
+    public void upstreamCompleted(HttpStatusCode status, Throwable error) {
+        if (circuitBreaker == null || upstreamStartNanos == 0 || !recorded.compareAndSet(false, true)) {
+            return;
+        }
+        long duration = System.nanoTime() - upstreamStartNanos;
+        upstreamNanos = duration;
+        dropped = error != null || status != null && (status.value() == 503 || status.value() == 504);
+        if (error != null) {
+            circuitBreaker.onError(duration, TimeUnit.NANOSECONDS, error);
+        } else if (status != null && status.is5xxServerError()) {
+            circuitBreaker.onError(duration, TimeUnit.NANOSECONDS,
+                    new IllegalStateException("上游响应状态码:" + status.value()));
+        } else {
+            circuitBreaker.onSuccess(duration, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * 请求结束时归还许可；重复调用无效
+     */
+    public void release() {
+        if (circuitBreaker == null || !released.compareAndSet(false, true)) {
+            return;
+        }
+        // 访问了上游但没有拿到结果(客户端断开等)，不计入熔断统计
+        if (recorded.compareAndSet(false, true)) {
+            circuitBreaker.releasePermission();
+        }
+        bulkhead.onComplete();
+        if (limiter != null) {
+            limiter.release(upstreamNanos, dropped);
+        }
+    }
+}
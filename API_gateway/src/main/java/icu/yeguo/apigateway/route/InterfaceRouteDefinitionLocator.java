@@ -0,0 +1,61 @@
+package icu.yeguo.apigateway.route;
+
+import icu.yeguo.apicommon.model.dto.InterfaceRoute;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.handler.predicate.PredicateDefinition;
+import org.springframework.cloud.gateway.route.RouteDefinition;
+import org.springframework.cloud.gateway.route.RouteDefinitionLocator;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 按本地路由表为每个接口生成一条网关路由，目标为接口所在的上游实例池(pool://池名)
+ * 路由表版本变化时 RouteTable 发布 RefreshRoutesEvent，网关重新拉取路由，不需要重启
+ * 配置文件中的 api_router 优先级更低，只在接口路由未加载或接口未登记时生效
+ */
+@Component
+public class InterfaceRouteDefinitionLocator implements RouteDefinitionLocator {
+
+    public static final String ROUTE_ID_PREFIX = "interface_";
+    /**
+     * 配置文件中的路由默认 order 为 0，接口路由排在前面
+     */
+    private static final int ROUTE_ORDER = -1;
+
+    @Value("${yeguo.gateway.base-url}")
+    private String baseUrl;
+    @Autowired
+    private RouteTable routeTable;
+    @Autowired
+    private UpstreamPools upstreamPools;
+
+    @Override
+    public Flux<RouteDefinition> getRouteDefinitions() {
+        return Flux.defer(() -> Flux.fromIterable(build(routeTable.getRoutes())));
+    }
+
+    private List<RouteDefinition> build(Iterable<InterfaceRoute> routes) {
+        List<RouteDefinition> definitions = new ArrayList<>();
+        for (InterfaceRoute route : routes) {
+            // 不属于本网关的接口地址不生成路由
+            if (route.getId() == null || route.getUrl() == null || !route.getUrl().startsWith(baseUrl)) {
+                continue;
+            }
+            String path = route.getUrl().substring(baseUrl.length());
+            if (!path.startsWith("/")) {
+                continue;
+            }
+            RouteDefinition definition = new RouteDefinition();
+            definition.setId(ROUTE_ID_PREFIX + route.getId());
+            definition.setUri(upstreamPools.routeUri(route.getUpstreamPool()));
+            definition.setPredicates(List.of(new PredicateDefinition("Path=" + path)));
+            definition.setOrder(ROUTE_ORDER);
+            definitions.add(definition);
+        }
+        return definitions;
+    }
+}
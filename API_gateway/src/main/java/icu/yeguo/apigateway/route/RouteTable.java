@@ -0,0 +1,87 @@
+package icu.yeguo.apigateway.route;
+
+import icu.yeguo.apicommon.model.dto.InterfaceRoute;
+import icu.yeguo.apicommon.service.CommonService;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.dubbo.config.annotation.DubboReference;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cloud.gateway.event.RefreshRoutesEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 网关本地路由表
+ * 启动时加载全部接口路由，之后按版本号轮询，版本变化时整体替换快照，请求路径解析只做一次哈希查找
+ * 快照替换后发布 RefreshRoutesEvent，网关按新的路由表重建转发路由
+ */
+@Slf4j
+@Component
+public class RouteTable {
+
+    @DubboReference
+    private CommonService commonService;
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    private volatile Snapshot snapshot = new Snapshot(null, Map.of());
+
+    /**
+     * 路由表是否已完成首次加载
+     */
+    public boolean isLoaded() {
+        return snapshot.version != null;
+    }
+
+    /**
+     * 按完整接口地址查找路由
+     */
+    public InterfaceRoute get(String url) {
+        return snapshot.routes.get(url);
+    }
+
+    /**
+     * 当前快照中的全部路由
+     */
+    public Collection<InterfaceRoute> getRoutes() {
+        return snapshot.routes.values();
+    }
+
+    @Scheduled(initialDelay = 0, fixedDelayString = "${yeguo.gateway.route.refresh-interval:5000}")
+    public void refresh() {
+        try {
+            String version = commonService.getInterfaceRouteVersion();
+            if (version == null || version.equals(snapshot.version)) {
+                return;
+            }
+            // 先取版本再取数据，期间若有变更，下次轮询版本不一致会再次拉取
+            List<InterfaceRoute> routes = commonService.listInterfaceRoutes();
+            Map<String, InterfaceRoute> routeMap = new HashMap<>(routes.size() * 2);
+            for (InterfaceRoute route : routes) {
+                if (route.getUrl() != null) {
+                    routeMap.put(route.getUrl(), route);
+                }
+            }
+            snapshot = new Snapshot(version, Map.copyOf(routeMap));
+            log.info("路由表已更新，版本:{}，接口数:{}", version, routeMap.size());
+            eventPublisher.publishEvent(new RefreshRoutesEvent(this));
+        } catch (Exception e) {
+            log.error("路由表刷新失败", e);
+        }
+    }
+
+    private static final class Snapshot {
+        private final String version;
+        private final Map<String, InterfaceRoute> routes;
+
+        private Snapshot(String version, Map<String, InterfaceRoute> routes) {
+            this.version = version;
+            this.routes = routes;
+        }
+    }
+}
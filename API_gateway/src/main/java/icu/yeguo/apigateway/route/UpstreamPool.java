@@ -0,0 +1,123 @@
+package icu.yeguo.apigateway.route;
+
+import lombok.Getter;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 一组上游实例，按两次随机选择(power of two choices)取未完成请求数较少的实例
+ * 连接失败的实例摘除一段时间，全部摘除时仍然选择，避免整个池不可用
+ */
+public final class UpstreamPool {
+
+    @Getter
+    private final String name;
+    private final Instance[] instances;
+
+    public UpstreamPool(String name, List<URI> uris) {
+        this.name = name;
+        this.instances = new Instance[uris.size()];
+        for (int i = 0; i < instances.length; i++) {
+            instances[i] = new Instance(name, uris.get(i));
+        }
+    }
+
+    public Instance choose() {
+        return choose(null);
+    }
+
+    /**
+     * @param exclude 不选择的实例，为空时不排除
+     * @return 没有可选实例时为空
+     */
+    public Instance choose(Instance exclude) {
+        int size = instances.length;
+        if (size == 0 || (size == 1 && instances[0] == exclude)) {
+            return null;
+        }
+        if (size == 1) {
+            return instances[0];
+        }
+        long now = System.currentTimeMillis();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(size);
+        int second = random.nextInt(size - 1);
+        if (second >= first) {
+            second++;
+        }
+        Instance a = usable(instances[first], exclude, now);
+        Instance b = usable(instances[second], exclude, now);
+        if (a != null && b != null) {
+            return a.outstanding.get() <= b.outstanding.get() ? a : b;
+        }
+        if (a != null || b != null) {
+            return a != null ? a : b;
+        }
+        return leastOutstanding(exclude, now);
+    }
+
+    private static Instance usable(Instance instance, Instance exclude, long now) {
+        return instance != exclude && instance.isAvailable(now) ? instance : null;
+    }
+
+    /**
+     * 两个候选都不可用时遍历整个池，优先可用实例，都被摘除时取未完成请求最少的
+     */
+    private Instance leastOutstanding(Instance exclude, long now) {
+        Instance best = null;
+        boolean bestAvailable = false;
+        for (Instance instance : instances) {
+            if (instance == exclude) {
+                continue;
+            }
+            boolean available = instance.isAvailable(now);
+            if (best == null || (available && !bestAvailable)
+                    || (available == bestAvailable && instance.outstanding.get() < best.outstanding.get())) {
+                best = instance;
+                bestAvailable = available;
+            }
+        }
+        return best;
+    }
+
+    public Instance[] getInstances() {
+        return instances.clone();
+    }
+
+    public static final class Instance {
+        @Getter
+        private final String pool;
+        @Getter
+        private final URI uri;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private volatile long ejectedUntil;
+
+        private Instance(String pool, URI uri) {
+            this.pool = pool;
+            this.uri = uri;
+        }
+
+        public void acquire() {
+            outstanding.incrementAndGet();
+        }
+
+        public void release() {
+            outstanding.decrementAndGet();
+        }
+
+        public int getOutstanding() {
+            return outstanding.get();
+        }
+
+        public void eject(long millis) {
+            ejectedUntil = System.currentTimeMillis() + millis;
+        }
+
+        private boolean isAvailable(long now) {
+            return now >= ejectedUntil;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package icu.yeguo.apigateway.route;
+
+import io.netty.channel.ConnectTimeoutException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
+
+import java.net.ConnectException;
+import java.net.URI;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.addOriginalRequestUrl;
+
+/**
+ * 把 pool://池名 的请求地址替换为池中选出的实例地址，并记录该实例未完成的请求数
+ * 与 Spring Cloud LoadBalancer 处理 lb:// 的位置相同：在 RouteToRequestUrlFilter 之后、NettyRoutingFilter 之前
+ * 未完成请求数在收到上游响应头时减少，响应体转发不计入
+ */
+@Slf4j
+@Component
+public class UpstreamPoolFilter implements GlobalFilter, Ordered {
+
+    /**
+     * 选中的实例，请求期间保存在 exchange 属性中
+     */
+    public static final String INSTANCE_ATTR = UpstreamPoolFilter.class.getName() + ".instance";
+    /**
+     * ReactiveLoadBalancerClientFilter.LOAD_BALANCER_CLIENT_FILTER_ORDER
+     */
+    private static final int ORDER = 10150;
+
+    @Autowired
+    private UpstreamPools upstreamPools;
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        URI url = exchange.getAttribute(GATEWAY_REQUEST_URL_ATTR);
+        if (url == null || !UpstreamPools.SCHEME.equals(url.getScheme())) {
+            return chain.filter(exchange);
+        }
+        UpstreamPool.Instance instance = upstreamPools.get(url.getHost()).choose();
+        if (instance == null) {
+            log.error("上游实例池没有可用实例:{}", url.getHost());
+            exchange.getResponse().setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+            return exchange.getResponse().setComplete();
+        }
+        addOriginalRequestUrl(exchange, url);
+        exchange.getAttributes().put(GATEWAY_REQUEST_URL_ATTR, resolve(url, instance.getUri()));
+        exchange.getAttributes().put(INSTANCE_ATTR, instance);
+        instance.acquire();
+        return chain.filter(exchange)
+                .doOnError(e -> {
+                    if (e instanceof ConnectException || e instanceof ConnectTimeoutException) {
+                        upstreamPools.eject(instance);
+                    }
+                })
+                .doFinally(signal -> instance.release());
+    }
+
+    /**
+     * 请求路径和参数不变，替换协议、主机和端口
+     */
+    public static URI resolve(URI url, URI instance) {
+        return UriComponentsBuilder.fromUri(url)
+                .scheme(instance.getScheme())
+                .host(instance.getHost())
+                .port(instance.getPort())
+                .build(true)
+                .toUri();
+    }
+
+    @Override
+    public int getOrder() {
+        return ORDER;
+    }
+}
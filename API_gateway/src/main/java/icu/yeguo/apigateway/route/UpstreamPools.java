@@ -0,0 +1,112 @@
+package icu.yeguo.apigateway.route;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * 上游实例池，yeguo.gateway.upstream.pools.池名 配置该池的实例地址列表
+ * 接口通过 interface_info.upstream_pool 指定所在的池，未指定或池不存在时使用 default 池
+ */
+@Slf4j
+@Component
+public class UpstreamPools implements MeterBinder {
+
+    public static final String SCHEME = "pool";
+    public static final String DEFAULT_POOL = "default";
+    /**
+     * 池名作为 pool://池名 中的主机名，只允许字母、数字和连字符
+     */
+    private static final Pattern POOL_NAME = Pattern.compile("[A-Za-z0-9-]+");
+
+    private final Map<String, UpstreamPool> pools;
+    private final long ejectMillis;
+
+    public UpstreamPools(Environment environment,
+                         @Value("${yeguo.gateway.upstream.eject-millis:10000}") long ejectMillis) {
+        this.ejectMillis = ejectMillis;
+        Map<String, String[]> config = Binder.get(environment)
+                .bind("yeguo.gateway.upstream.pools", Bindable.mapOf(String.class, String[].class))
+                .orElseGet(HashMap::new);
+        Map<String, UpstreamPool> pools = new HashMap<>();
+        config.forEach((name, addresses) -> {
+            if (!POOL_NAME.matcher(name).matches()) {
+                log.error("上游实例池名称不合法，已忽略:{}", name);
+                return;
+            }
+            List<URI> uris = new ArrayList<>();
+            for (String address : addresses) {
+                if (!address.isBlank()) {
+                    uris.add(URI.create(address.trim()));
+                }
+            }
+            pools.put(name, new UpstreamPool(name, uris));
+            log.info("上游实例池:{}，实例:{}", name, uris);
+        });
+        if (!pools.containsKey(DEFAULT_POOL)) {
+            throw new IllegalStateException("未配置默认上游实例池 yeguo.gateway.upstream.pools.default");
+        }
+        this.pools = Map.copyOf(pools);
+    }
+
+    /**
+     * 接口所在的池，池不存在时使用 default 池
+     */
+    public UpstreamPool get(String name) {
+        if (name == null || name.isBlank()) {
+            return pools.get(DEFAULT_POOL);
+        }
+        UpstreamPool pool = pools.get(name);
+        return pool != null ? pool : pools.get(DEFAULT_POOL);
+    }
+
+    /**
+     * 配置的全部实例池
+     */
+    public Collection<UpstreamPool> getPools() {
+        return pools.values();
+    }
+
+    /**
+     * 路由目标地址，池不存在时指向 default 池
+     */
+    public URI routeUri(String name) {
+        return URI.create(SCHEME + "://" + get(name).getName());
+    }
+
+    /**
+     * 连接失败时摘除该实例一段时间
+     */
+    public void eject(UpstreamPool.Instance instance) {
+        instance.eject(ejectMillis);
+        log.warn("上游实例连接失败，摘除{}ms:{}", ejectMillis, instance.getUri());
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        for (UpstreamPool pool : pools.values()) {
+            for (UpstreamPool.Instance instance : pool.getInstances()) {
+                Gauge.builder("yeguo.gateway.upstream.outstanding", instance, UpstreamPool.Instance::getOutstanding)
+                        .description("上游实例未完成的请求数")
+                        .tag("pool", pool.getName())
+                        .tag("instance", instance.getUri().toString())
+                        .register(registry);
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package icu.yeguo.apigateway.support;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 有界的阻塞任务线程池，网关中无法避免的阻塞操作都放到这里执行，不占用事件循环线程
+ * 线程数和队列长度都有上限，队列满时直接拒绝并计数，便于观察饱和情况
+ */
+@Slf4j
+@Component
+public class BlockingExecutor implements DisposableBean, MeterBinder {
+
+    private final ThreadPoolExecutor executor;
+    private final Scheduler scheduler;
+    private final LongAdder rejected = new LongAdder();
+
+    public BlockingExecutor(@Value("${yeguo.gateway.blocking.pool-size:16}") int poolSize,
+                            @Value("${yeguo.gateway.blocking.queue-capacity:1000}") int queueCapacity) {
+        AtomicInteger index = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "gateway-blocking-" + index.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                (runnable, pool) -> {
+                    rejected.increment();
+                    log.warn("阻塞任务线程池已满，任务被拒绝");
+                    throw new RejectedExecutionException("gateway blocking executor saturated");
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+        this.scheduler = Schedulers.fromExecutorService(executor, "gateway-blocking");
+    }
+
+    public Executor executor() {
+        return executor;
+    }
+
+    public Scheduler scheduler() {
+        return scheduler;
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    public int getQueueCapacity() {
+        return executor.getQueue().size() + executor.getQueue().remainingCapacity();
+    }
+
+    public int getPoolSize() {
+        return executor.getMaximumPoolSize();
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        Gauge.builder("yeguo.gateway.blocking.active", this, BlockingExecutor::getActiveCount)
+                .description("阻塞任务线程池活跃线程数")
+                .register(registry);
+        Gauge.builder("yeguo.gateway.blocking.queue", this, BlockingExecutor::getQueueSize)
+                .description("阻塞任务线程池排队任务数")
+                .register(registry);
+        FunctionCounter.builder("yeguo.gateway.blocking.rejected", this, BlockingExecutor::getRejectedCount)
+                .description("阻塞任务线程池拒绝任务数")
+                .register(registry);
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.dispose();
+        executor.shutdown();
+    }
+}
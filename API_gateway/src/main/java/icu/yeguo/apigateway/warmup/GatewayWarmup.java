@@ -0,0 +1,268 @@
+package icu.yeguo.apigateway.warmup;
+
+import icu.yeguo.apicommon.model.dto.InterfaceRoute;
+import icu.yeguo.apicommon.service.CommonService;
+import icu.yeguo.apigateway.auth.CredentialCache;
+import icu.yeguo.apigateway.route.RouteTable;
+import icu.yeguo.apigateway.route.UpstreamPool;
+import icu.yeguo.apigateway.route.UpstreamPools;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.dubbo.config.annotation.DubboReference;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.env.Environment;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 网关启动预热，作为 ApplicationRunner 在就绪之前执行，完成前就绪探针(/actuator/health/readiness)返回 503
+ * 依次建立后台 Dubbo 连接、加载路由表、预加载热点用户凭证、建立上游连接，最后向本机发送合成请求走一遍过滤器
+ * 合成请求带本进程随机生成的令牌，不限流、不记访问日志和请求指标；签名故意写错，在扣费前被拒绝，不扣费也不转发到上游
+ * 预热失败或超时只记录日志，不阻止网关启动
+ */
+@Slf4j
+@Component
+public class GatewayWarmup implements ApplicationRunner {
+
+    public static final String TOKEN_HEADER = "X-Yeguo-Warmup";
+    private static final String SIGNATURE = "warmup";
+    private static final long RETRY_INTERVAL_MILLIS = 500;
+
+    @Value("${yeguo.gateway.base-url}")
+    private String baseUrl;
+    @DubboReference
+    private CommonService commonService;
+    @Autowired
+    private RouteTable routeTable;
+    @Autowired
+    private CredentialCache credentialCache;
+    @Autowired
+    private UpstreamPools upstreamPools;
+    /**
+     * 网关转发用的客户端，预先建立的连接留在它的连接池中
+     */
+    @Autowired
+    private HttpClient httpClient;
+    @Autowired
+    private Environment environment;
+
+    private final boolean enabled;
+    private final long timeoutMillis;
+    private final int hotKeys;
+    private final int hotInterfaces;
+    private final int requests;
+    private final int concurrency;
+    private final int connections;
+    private final String token = UUID.randomUUID().toString();
+    private volatile boolean running;
+
+    public GatewayWarmup(@Value("${yeguo.gateway.warmup.enabled:true}") boolean enabled,
+                         @Value("${yeguo.gateway.warmup.timeout:30000}") long timeoutMillis,
+                         @Value("${yeguo.gateway.warmup.hot-keys:1000}") int hotKeys,
+                         @Value("${yeguo.gateway.warmup.hot-interfaces:20}") int hotInterfaces,
+                         @Value("${yeguo.gateway.warmup.requests:2000}") int requests,
+                         @Value("${yeguo.gateway.warmup.concurrency:16}") int concurrency,
+                         @Value("${yeguo.gateway.warmup.connections:4}") int connections) {
+        this.enabled = enabled;
+        this.timeoutMillis = timeoutMillis;
+        this.hotKeys = hotKeys;
+        this.hotInterfaces = hotInterfaces;
+        this.requests = requests;
+        this.concurrency = Math.max(concurrency, 1);
+        this.connections = connections;
+    }
+
+    /**
+     * 是否为预热期间本进程发出的合成请求，预热结束后令牌失效
+     */
+    public boolean isWarmupRequest(ServerHttpRequest request) {
+        return running && token.equals(request.getHeaders().getFirst(TOKEN_HEADER));
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled) {
+            return;
+        }
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        running = true;
+        try {
+            connectBackend(deadline);
+            loadRoutes(deadline);
+            List<String> accessKeys = preloadCredentials(deadline);
+            connectUpstreams(deadline);
+            sendRequests(accessKeys, deadline);
+            log.info("网关预热完成，耗时{}ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (Exception e) {
+            log.warn("网关预热未完成，照常启动，耗时{}ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), e);
+        } finally {
+            running = false;
+        }
+    }
+
+    /**
+     * 后台可能晚于网关启动，重试到超时
+     */
+    private void connectBackend(long deadline) throws InterruptedException {
+        while (true) {
+            try {
+                commonService.getInterfaceRouteVersion();
+                return;
+            } catch (Exception e) {
+                if (System.nanoTime() >= deadline) {
+                    throw new IllegalStateException("后台服务连接超时", e);
+                }
+                log.info("后台服务暂不可用，{}ms后重试:{}", RETRY_INTERVAL_MILLIS, e.getMessage());
+                TimeUnit.MILLISECONDS.sleep(RETRY_INTERVAL_MILLIS);
+            }
+        }
+    }
+
+    private void loadRoutes(long deadline) throws InterruptedException {
+        while (!routeTable.isLoaded()) {
+            routeTable.refresh();
+            if (routeTable.isLoaded()) {
+                break;
+            }
+            if (System.nanoTime() >= deadline) {
+                throw new IllegalStateException("路由表加载超时");
+            }
+            TimeUnit.MILLISECONDS.sleep(RETRY_INTERVAL_MILLIS);
+        }
+        log.info("预热：路由表已加载，接口数:{}", routeTable.getRoutes().size());
+    }
+
+    /**
+     * 凭证查询走微批，一批一次 Dubbo 调用
+     *
+     * @return 热点用户的 accessKey，后台不支持或查询失败时为空
+     */
+    private List<String> preloadCredentials(long deadline) {
+        List<String> accessKeys;
+        try {
+            accessKeys = commonService.listHotAccessKeys(hotKeys);
+        } catch (Exception e) {
+            log.warn("预热：热点用户查询失败，跳过凭证预加载:{}", e.getMessage());
+            return List.of();
+        }
+        Long loaded = Flux.fromIterable(accessKeys)
+                .flatMap(credentialCache::get, 256)
+                .count()
+                .block(remaining(deadline));
+        log.info("预热：已预加载凭证{}个", loaded);
+        return accessKeys;
+    }
+
+    /**
+     * 每个上游实例并发发起几个请求，建立的连接保留在转发连接池中；响应状态不关心
+     */
+    private void connectUpstreams(long deadline) {
+        if (connections <= 0) {
+            return;
+        }
+        List<UpstreamPool.Instance> instances = new ArrayList<>();
+        for (UpstreamPool pool : upstreamPools.getPools()) {
+            instances.addAll(List.of(pool.getInstances()));
+        }
+        Long connected = Flux.fromIterable(instances)
+                .flatMap(instance -> Flux.range(0, connections)
+                        .flatMap(i -> httpClient.get()
+                                .uri(instance.getUri().toString())
+                                .responseSingle((response, body) -> body.then(Mono.just(response.status())))
+                                .onErrorResume(e -> {
+                                    log.warn("预热：上游实例连接失败:{}，{}", instance.getUri(), e.getMessage());
+                                    return Mono.empty();
+                                }), connections))
+                .count()
+                .block(remaining(deadline));
+        log.info("预热：上游实例{}个，已建立连接{}个", instances.size(), connected);
+    }
+
+    /**
+     * 对热点接口发送合成请求，走完路由、凭证、签名校验，签名错误在扣费前返回 401
+     */
+    private void sendRequests(List<String> accessKeys, long deadline) {
+        Integer port = environment.getProperty("local.server.port", Integer.class);
+        List<InterfaceRoute> targets = hotRoutes();
+        if (requests <= 0 || port == null || targets.isEmpty()) {
+            return;
+        }
+        // 没有热点用户时用不存在的 accessKey，仍然走一遍凭证查询
+        List<String> keys = accessKeys.isEmpty() ? List.of(SIGNATURE + "-" + token) : accessKeys;
+        HttpClient client = HttpClient.create()
+                .baseUrl("http://127.0.0.1:" + port)
+                .headers(headers -> headers.set(TOKEN_HEADER, token));
+        Long sent = Flux.range(0, requests)
+                .flatMap(i -> send(client, targets.get(i % targets.size()), keys.get(i % keys.size()), i)
+                        .onErrorResume(e -> Mono.empty()), concurrency)
+                .count()
+                .block(remaining(deadline));
+        log.info("预热：已向{}个接口发送合成请求{}个", targets.size(), sent);
+    }
+
+    /**
+     * 热点接口按调用次数排序；后台不支持时取路由表中的全部接口
+     */
+    private List<InterfaceRoute> hotRoutes() {
+        Map<Long, InterfaceRoute> routes = new HashMap<>();
+        for (InterfaceRoute route : routeTable.getRoutes()) {
+            if (route.getId() != null && route.getUrl() != null && route.getUrl().startsWith(baseUrl + "/")) {
+                routes.put(route.getId(), route);
+            }
+        }
+        List<InterfaceRoute> targets = new ArrayList<>();
+        try {
+            for (Long interfaceInfoId : commonService.listHotInterfaceIds(hotInterfaces)) {
+                InterfaceRoute route = routes.get(interfaceInfoId);
+                if (route != null) {
+                    targets.add(route);
+                }
+            }
+        } catch (Exception e) {
+            log.warn("预热：热点接口查询失败，使用全部接口:{}", e.getMessage());
+            targets.addAll(routes.values());
+        }
+        return targets;
+    }
+
+    private Mono<Integer> send(HttpClient client, InterfaceRoute route, String accessKey, int sequence) {
+        String path = route.getUrl().substring(baseUrl.length());
+        String timestamp = String.valueOf(System.currentTimeMillis() / 1000);
+        String nonce = token + "-" + sequence;
+        if ("POST".equalsIgnoreCase(route.getMethod())) {
+            return client.post()
+                    .uri(path)
+                    .sendForm((request, form) -> form.multipart(true)
+                            .attr("accessKey", accessKey)
+                            .attr("signature", SIGNATURE)
+                            .attr("timestamp", timestamp)
+                            .attr("nonce", nonce))
+                    .responseSingle((response, body) -> body.then(Mono.just(response.status().code())));
+        }
+        String query = "?accessKey=" + URLEncoder.encode(accessKey, StandardCharsets.UTF_8)
+                + "&signature=" + SIGNATURE + "&timestamp=" + timestamp + "&nonce=" + nonce;
+        return client.get()
+                .uri(path + query)
+                .responseSingle((response, body) -> body.then(Mono.just(response.status().code())));
+    }
+
+    private static Duration remaining(long deadline) {
+        return Duration.ofNanos(Math.max(deadline - System.nanoTime(), 1));
+    }
+}
@@ -0,0 +1,188 @@
+package icu.yeguo.apigateway;
+
+import icu.yeguo.apicommon.model.dto.InterfaceRoute;
+import icu.yeguo.apigateway.accesslog.AccessLogger;
+import icu.yeguo.apigateway.auth.Credential;
+import icu.yeguo.apigateway.auth.CredentialCache;
+import icu.yeguo.apigateway.auth.ReplayGuard;
+import icu.yeguo.apigateway.auth.SignatureVerifier;
+import icu.yeguo.apigateway.batch.BatchingCommonService;
+import icu.yeguo.apigateway.billing.GoldCoinBilling;
+import icu.yeguo.apigateway.cache.ResponseCache;
+import icu.yeguo.apigateway.cache.SingleFlight;
+import icu.yeguo.apigateway.metrics.GatewayMetrics;
+import icu.yeguo.apigateway.ratelimit.GatewayRateLimiter;
+import icu.yeguo.apigateway.resilience.ConcurrencyLimiters;
+import icu.yeguo.apigateway.resilience.UpstreamGuard;
+import icu.yeguo.apigateway.resilience.UpstreamPermit;
+import icu.yeguo.apigateway.route.RouteTable;
+import icu.yeguo.apigateway.warmup.GatewayWarmup;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CustomGlobalFilterTest {
+
+    private static final String PATH = "/api/weather";
+    private static final String SUCCESS_BODY = "{\"code\":200,\"result\":\"sunny\"}";
+
+    private final InterfaceRoute route = new InterfaceRoute();
+    private final ResponseCache responseCache = new ResponseCache(1 << 20, 1 << 16, 0);
+    private GoldCoinBilling goldCoinBilling;
+    private CustomGlobalFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        route.setId(1L);
+        route.setUrl("http://gateway" + PATH);
+        route.setRequiredGoldCoins(1L);
+        route.setCacheTtl(60);
+
+        RouteTable routeTable = mock(RouteTable.class);
+        when(routeTable.isLoaded()).thenReturn(true);
+        when(routeTable.get(route.getUrl())).thenReturn(route);
+        GatewayRateLimiter rateLimiter = mock(GatewayRateLimiter.class);
+        when(rateLimiter.acquireInterface(any())).thenReturn(Mono.just(true));
+        when(rateLimiter.acquireKey(anyString())).thenReturn(Mono.just(true));
+        CredentialCache credentialCache = mock(CredentialCache.class);
+        Credential credential = new Credential(7L, "ak", 0, new byte[0], null);
+        when(credentialCache.get("ak")).thenReturn(Mono.just(credential));
+        SignatureVerifier signatureVerifier = mock(SignatureVerifier.class);
+        when(signatureVerifier.verify(credential, "sig")).thenReturn(true);
+        goldCoinBilling = mock(GoldCoinBilling.class);
+        when(goldCoinBilling.deduct(anyString(), eq(7L), any())).thenReturn(Mono.just(true));
+        BatchingCommonService batchingCommonService = mock(BatchingCommonService.class);
+        when(batchingCommonService.invokingCount(anyLong())).thenReturn(CompletableFuture.completedFuture(null));
+        GatewayMetrics gatewayMetrics = new GatewayMetrics(new SimpleMeterRegistry());
+
+        filter = new CustomGlobalFilter();
+        ReflectionTestUtils.setField(filter, "baseUrl", "http://gateway");
+        ReflectionTestUtils.setField(filter, "routeTable", routeTable);
+        ReflectionTestUtils.setField(filter, "goldCoinBilling", goldCoinBilling);
+        ReflectionTestUtils.setField(filter, "rateLimiter", rateLimiter);
+        ReflectionTestUtils.setField(filter, "credentialCache", credentialCache);
+        ReflectionTestUtils.setField(filter, "signatureVerifier", signatureVerifier);
+        ReflectionTestUtils.setField(filter, "replayGuard", mock(ReplayGuard.class));
+        ReflectionTestUtils.setField(filter, "accessLogger", new AccessLogger(0, 1024, gatewayMetrics));
+        ReflectionTestUtils.setField(filter, "gatewayMetrics", gatewayMetrics);
+        ReflectionTestUtils.setField(filter, "responseCache", responseCache);
+        ReflectionTestUtils.setField(filter, "singleFlight", new SingleFlight(10000));
+        ReflectionTestUtils.setField(filter, "batchingCommonService", batchingCommonService);
+        ReflectionTestUtils.setField(filter, "gatewayWarmup", mock(GatewayWarmup.class));
+    }
+
+    private void useGuard(UpstreamGuard upstreamGuard) {
+        ReflectionTestUtils.setField(filter, "upstreamGuard", upstreamGuard);
+    }
+
+    private static UpstreamGuard guard(int maxConcurrentCalls) {
+        return new UpstreamGuard(50, 5000, 100, 4, 4, 60000, 1, maxConcurrentCalls,
+                new ConcurrencyLimiters(false, 2, 2, 10, 1.5, 1, 50));
+    }
+
+    private void openCircuit(UpstreamGuard upstreamGuard) {
+        for (int i = 0; i < 4; i++) {
+            UpstreamPermit permit = upstreamGuard.enter(route).block();
+            permit.upstreamStarted();
+            permit.upstreamCompleted(HttpStatus.BAD_GATEWAY, null);
+            permit.release();
+        }
+    }
+
+    private static MockServerWebExchange exchange() {
+        MockServerWebExchange exchange = MockServerWebExchange.from(
+                MockServerHttpRequest.get(PATH + "?city=beijing&accessKey=ak&signature=sig"));
+        // 与 Netty 响应一致 上游写入前状态码为 200
+        exchange.getResponse().setStatusCode(HttpStatus.OK);
+        return exchange;
+    }
+
+    private static Mono<Void> writeSuccess(ServerHttpResponse response) {
+        response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+        DataBuffer buffer = response.bufferFactory().wrap(SUCCESS_BODY.getBytes(StandardCharsets.UTF_8));
+        return response.writeWith(Mono.just(buffer));
+    }
+
+    @Test
+    void servesCacheHitWhileCircuitOpen() {
+        UpstreamGuard upstreamGuard = guard(10);
+        useGuard(upstreamGuard);
+        openCircuit(upstreamGuard);
+        responseCache.put(PATH + "?city=beijing", route, MediaType.APPLICATION_JSON,
+                SUCCESS_BODY.getBytes(StandardCharsets.UTF_8));
+        GatewayFilterChain chain = mock(GatewayFilterChain.class);
+
+        MockServerWebExchange exchange = exchange();
+        filter.filter(exchange, chain).block();
+
+        assertEquals(HttpStatus.OK, exchange.getResponse().getStatusCode());
+        assertEquals(SUCCESS_BODY, exchange.getResponse().getBodyAsString().block());
+        verify(chain, never()).filter(any());
+    }
+
+    @Test
+    void rejectsCacheMissWhileCircuitOpenBeforeBilling() {
+        UpstreamGuard upstreamGuard = guard(10);
+        useGuard(upstreamGuard);
+        openCircuit(upstreamGuard);
+        GatewayFilterChain chain = mock(GatewayFilterChain.class);
+
+        MockServerWebExchange exchange = exchange();
+        filter.filter(exchange, chain).block();
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, exchange.getResponse().getStatusCode());
+        verify(goldCoinBilling, never()).deduct(anyString(), anyLong(), any());
+        verify(chain, never()).filter(any());
+    }
+
+    @Test
+    void coalescedFollowerDoesNotTakeBulkheadSlot() {
+        // 隔离舱只有 1 个名额，被领头请求占用
+        useGuard(guard(1));
+        Sinks.Empty<Void> upstreamReleased = Sinks.empty();
+        AtomicInteger upstreamCalls = new AtomicInteger();
+        GatewayFilterChain chain = forwarded -> {
+            upstreamCalls.incrementAndGet();
+            return upstreamReleased.asMono().then(Mono.defer(() -> writeSuccess(forwarded.getResponse())));
+        };
+
+        MockServerWebExchange leader = exchange();
+        MockServerWebExchange follower = exchange();
+        Mono<Void> leaderDone = filter.filter(leader, chain).cache();
+        leaderDone.subscribe();
+        Mono<Void> followerDone = filter.filter(follower, chain).cache();
+        followerDone.subscribe();
+        upstreamReleased.tryEmitEmpty();
+        leaderDone.block();
+        followerDone.block();
+
+        assertEquals(1, upstreamCalls.get());
+        assertEquals(HttpStatus.OK, leader.getResponse().getStatusCode());
+        assertEquals(HttpStatus.OK, follower.getResponse().getStatusCode());
+        assertEquals(SUCCESS_BODY, follower.getResponse().getBodyAsString().block());
+    }
+}
@@ -0,0 +1,90 @@
+package icu.yeguo.apigateway.auth;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NonceBloomFilterTest {
+
+    private static final int EXPECTED = 1_000_000;
+
+    @Test
+    void rejectsEveryRepeatedNonce() {
+        NonceBloomFilter filter = new NonceBloomFilter(20_000, 42);
+        for (int i = 0; i < 10_000; i++) {
+            filter.add("ak", "nonce-" + i);
+        }
+        for (int i = 0; i < 10_000; i++) {
+            assertFalse(filter.add("ak", "nonce-" + i));
+        }
+        // 同一 nonce 不同 accessKey 互不影响，只有少量误判
+        int accepted = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (filter.add("other", "nonce-" + i)) {
+                accepted++;
+            }
+        }
+        assertTrue(accepted > 9_900);
+    }
+
+    @Test
+    void falsePositiveRateStaysWithinDocumentedBound() {
+        NonceBloomFilter filter = new NonceBloomFilter(EXPECTED, 7);
+        assertEquals(EXPECTED * 2L, filter.sizeInBytes());
+        // 填充过程中新 nonce 被误判为重复的比例，即正常请求被拒绝的概率
+        int rejected = 0;
+        for (int i = 0; i < EXPECTED; i++) {
+            if (!filter.add("ak", Integer.toString(i))) {
+                rejected++;
+            }
+        }
+        double averageRate = (double) rejected / EXPECTED;
+        // 满载后再查询新 nonce 的误判率
+        int fullRejected = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (!filter.add("probe", Integer.toString(i))) {
+                fullRejected++;
+            }
+        }
+        double fullRate = fullRejected / 100_000.0;
+        assertTrue(averageRate < 0.002, "平均误判率:" + averageRate);
+        assertTrue(fullRate < 0.006, "满载误判率:" + fullRate);
+    }
+
+    @Test
+    void concurrentDuplicatesAcceptOnlyOnce() throws InterruptedException {
+        NonceBloomFilter filter = new NonceBloomFilter(10_000, 1);
+        AtomicInteger accepted = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 1000; i++) {
+                    if (filter.add("ak", "n" + i)) {
+                        accepted.incrementAndGet();
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(accepted.get() <= 1000);
+        assertTrue(accepted.get() > 990);
+    }
+}
@@ -0,0 +1,35 @@
+package icu.yeguo.apigateway.auth;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReplayGuardTest {
+
+    @Test
+    void rejectsReplayedAndExpiredRequests() {
+        ReplayGuard guard = new ReplayGuard("optional", 120, 30, 1000);
+        long now = 1_700_000_000L;
+        assertTrue(guard.isEnabled());
+        assertFalse(guard.isRequired());
+        assertEquals(ReplayGuard.Result.ACCEPTED, guard.check("ak", now, "n1", now));
+        assertEquals(ReplayGuard.Result.REPLAYED, guard.check("ak", now, "n1", now + 5));
+        assertEquals(ReplayGuard.Result.ACCEPTED, guard.check("ak", now, "n2", now));
+        assertEquals(ReplayGuard.Result.EXPIRED, guard.check("ak", now - 121, "n3", now));
+        assertEquals(ReplayGuard.Result.EXPIRED, guard.check("ak", now + 121, "n3", now));
+    }
+
+    @Test
+    void rotatesBucketsWithoutForgettingTheWindow() {
+        ReplayGuard guard = new ReplayGuard("required", 120, 30, 1000);
+        long start = 1_700_000_000L;
+        // 时间不断推进，每秒一个请求；窗口内的 nonce 始终能识别出重放
+        for (long now = start; now < start + 600; now++) {
+            assertEquals(ReplayGuard.Result.ACCEPTED, guard.check("ak", now, "n" + now, now));
+            long earliest = Math.max(start, now - 120);
+            assertEquals(ReplayGuard.Result.REPLAYED, guard.check("ak", earliest, "n" + earliest, now));
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package icu.yeguo.apigateway.auth;
+
+import icu.yeguo.apicommon.utils.SignatureUtil;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SignatureVerifierTest {
+
+    private static final String ACCESS_KEY = "7F48461FA9DB04287F8DF2C21CE39BB7";
+    private static final String SECRET_KEY = "A1C5D1F0E8B94B47A1E8F1D3C5B7A9E1";
+
+    private final SignatureVerifier signatureVerifier = new SignatureVerifier();
+
+    @Test
+    void timestampedSignatureUsesKeyDerivedFromSecret() {
+        String signature = SignatureUtil.sign(ACCESS_KEY + SECRET_KEY);
+        Credential credential = new Credential(1L, ACCESS_KEY, 0, signature.getBytes(StandardCharsets.US_ASCII),
+                SignatureUtil.replayKey(SECRET_KEY));
+
+        String timestamped = SignatureUtil.signTimestamped(SignatureUtil.replayKey(SECRET_KEY), ACCESS_KEY,
+                "1700000000", "n1");
+        assertTrue(signatureVerifier.verify(credential, timestamped, "1700000000", "n1"));
+        assertFalse(signatureVerifier.verify(credential, timestamped, "1700000000", "n2"));
+        // 只截获了明文传输的静态签名，无法伪造新的时间戳和 nonce
+        assertFalse(signatureVerifier.verify(credential,
+                SignatureUtil.sign(signature + "1700000000" + "n2"), "1700000000", "n2"));
+        assertFalse(signatureVerifier.verify(credential,
+                SignatureUtil.signTimestamped(signature, ACCESS_KEY, "1700000000", "n2"), "1700000000", "n2"));
+    }
+
+    @Test
+    void rejectsTimestampedRequestWithoutReplayKey() {
+        String signature = SignatureUtil.sign(ACCESS_KEY + SECRET_KEY);
+        Credential credential = new Credential(1L, ACCESS_KEY, 0, signature.getBytes(StandardCharsets.US_ASCII),
+                null);
+        assertFalse(signatureVerifier.verify(credential,
+                SignatureUtil.signTimestamped(SignatureUtil.replayKey(SECRET_KEY), ACCESS_KEY,
+                        "1700000000", "n1"), "1700000000", "n1"));
+    }
+}
@@ -0,0 +1,78 @@
+package icu.yeguo.apigateway.batch;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MicroBatcherTest {
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final List<List<Integer>> batches = new ArrayList<>();
+    private final AtomicInteger singles = new AtomicInteger();
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    void requestsWithinWindowShareOneCall() throws Exception {
+        MicroBatcher<Integer, Integer> batcher = batcher(TimeUnit.MILLISECONDS.toNanos(50), 3,
+                CompletableFuture::completedFuture);
+        CompletableFuture<Integer> first = batcher.submit(1);
+        CompletableFuture<Integer> second = batcher.submit(2);
+        // 攒满 3 个立即发出，不等窗口
+        CompletableFuture<Integer> third = batcher.submit(3);
+        assertEquals(10, first.get(1, TimeUnit.SECONDS));
+        assertEquals(30, third.get(1, TimeUnit.SECONDS));
+        CompletableFuture<Integer> fourth = batcher.submit(4);
+        assertEquals(40, fourth.get(1, TimeUnit.SECONDS));
+        assertEquals(20, second.get());
+
+        assertEquals(List.of(List.of(1, 2, 3)), batches);
+        // 窗口内只有一个请求时走单个调用
+        assertEquals(1, singles.get());
+        assertEquals(2, batcher.getCallCount());
+        assertEquals(4, batcher.getItemCount());
+    }
+
+    @Test
+    void failedBatchFallsBackToSingleCalls() throws Exception {
+        MicroBatcher<Integer, Integer> batcher = batcher(TimeUnit.MILLISECONDS.toNanos(50), 2,
+                results -> CompletableFuture.failedFuture(new IllegalStateException("冲突")));
+        CompletableFuture<Integer> first = batcher.submit(1);
+        CompletableFuture<Integer> second = batcher.submit(2);
+        assertEquals(10, first.get(1, TimeUnit.SECONDS));
+        assertEquals(20, second.get(1, TimeUnit.SECONDS));
+        assertEquals(2, singles.get());
+    }
+
+    private MicroBatcher<Integer, Integer> batcher(long windowNanos, int maxSize,
+                                                   Function<List<Integer>, CompletableFuture<List<Integer>>> respond) {
+        return new MicroBatcher<>("test", windowNanos, maxSize, scheduler,
+                items -> {
+                    synchronized (batches) {
+                        batches.add(items);
+                    }
+                    List<Integer> results = new ArrayList<>();
+                    for (Integer item : items) {
+                        results.add(item * 10);
+                    }
+                    return respond.apply(results);
+                },
+                item -> {
+                    singles.incrementAndGet();
+                    return CompletableFuture.completedFuture(item * 10);
+                });
+    }
+}
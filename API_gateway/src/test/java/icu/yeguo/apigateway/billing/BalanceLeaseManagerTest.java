@@ -0,0 +1,138 @@
+package icu.yeguo.apigateway.billing;
+
+import icu.yeguo.apicommon.service.CommonAsyncService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.support.GenericApplicationContext;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BalanceLeaseManagerTest {
+
+    private CommonAsyncService commonAsyncService;
+    private BalanceLeaseManager manager;
+
+    @BeforeEach
+    void setUp() {
+        commonAsyncService = mock(CommonAsyncService.class);
+        when(commonAsyncService.releaseGoldCoins(anyString(), anyLong(), anyLong(), anyList()))
+                .thenReturn(CompletableFuture.completedFuture(true));
+        manager = new BalanceLeaseManager(10, 0, 60, 600, 10);
+        ReflectionTestUtils.setField(manager, "commonAsyncService", commonAsyncService);
+    }
+
+    @Test
+    void deductsLocallyUntilLeaseRunsOut() {
+        when(commonAsyncService.leaseGoldCoins(anyString(), eq(1L), eq(10L)))
+                .thenReturn(CompletableFuture.completedFuture(10L), CompletableFuture.completedFuture(0L));
+
+        for (int i = 0; i < 5; i++) {
+            assertTrue(manager.deduct(1L, 2).block());
+        }
+        assertFalse(manager.deduct(1L, 2).block());
+        verify(commonAsyncService, times(2)).leaseGoldCoins(anyString(), eq(1L), eq(10L));
+    }
+
+    @Test
+    void returnsUnusedBalanceOnShutdown() {
+        when(commonAsyncService.leaseGoldCoins(anyString(), eq(1L), eq(10L)))
+                .thenReturn(CompletableFuture.completedFuture(10L));
+
+        assertTrue(manager.deduct(1L, 3).block());
+        manager.refund(1L, 3);
+        assertTrue(manager.deduct(1L, 4).block());
+        manager.onApplicationEvent(new ContextClosedEvent(new GenericApplicationContext()));
+
+        verify(commonAsyncService).releaseGoldCoins(anyString(), eq(1L), eq(6L), anyList());
+        assertEquals(0, manager.getBudgetCount());
+    }
+
+    @Test
+    void settlesEachChargeAfterShutdown() {
+        manager.onApplicationEvent(new ContextClosedEvent(new GenericApplicationContext()));
+        when(commonAsyncService.leaseGoldCoins(anyString(), eq(1L), eq(4L)))
+                .thenReturn(CompletableFuture.completedFuture(4L), CompletableFuture.completedFuture(1L));
+
+        // 关闭后只租用本次扣费的数额并立即结清
+        assertTrue(manager.deduct(1L, 4).block());
+        verify(commonAsyncService).releaseGoldCoins(anyString(), eq(1L), eq(0L), anyList());
+        // 余额不足 租到的部分退回
+        assertFalse(manager.deduct(1L, 4).block());
+        verify(commonAsyncService).releaseGoldCoins(anyString(), eq(1L), eq(1L), anyList());
+        assertEquals(0, manager.getBudgetCount());
+    }
+
+    @Test
+    void retriesFailedReleaseWithSameId() throws InterruptedException {
+        BalanceLeaseManager idleManager = new BalanceLeaseManager(10, 0, 0, 600, 10);
+        ReflectionTestUtils.setField(idleManager, "commonAsyncService", commonAsyncService);
+        when(commonAsyncService.leaseGoldCoins(anyString(), eq(1L), eq(10L)))
+                .thenReturn(CompletableFuture.completedFuture(10L));
+        when(commonAsyncService.releaseGoldCoins(anyString(), anyLong(), anyLong(), anyList()))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("rpc")),
+                        CompletableFuture.failedFuture(new IllegalStateException("rpc")),
+                        CompletableFuture.completedFuture(true));
+
+        assertTrue(idleManager.deduct(1L, 3).block());
+        Thread.sleep(2);
+        idleManager.releaseIdle();
+
+        ArgumentCaptor<String> releaseIds = ArgumentCaptor.forClass(String.class);
+        verify(commonAsyncService, timeout(2000).times(3))
+                .releaseGoldCoins(releaseIds.capture(), eq(1L), eq(7L), anyList());
+        // 重试沿用同一个归还id 后台按此幂等
+        assertEquals(1, releaseIds.getAllValues().stream().distinct().count());
+        verify(commonAsyncService, timeout(2000).times(3))
+                .releaseGoldCoins(anyString(), anyLong(), anyLong(), anyList());
+        waitUntilReleased(idleManager);
+        assertEquals(0, idleManager.getPendingReleaseCount());
+    }
+
+    @Test
+    void finishesFailedReleaseOnShutdownWithSameId() throws InterruptedException {
+        BalanceLeaseManager idleManager = new BalanceLeaseManager(10, 0, 0, 600, 60000);
+        ReflectionTestUtils.setField(idleManager, "commonAsyncService", commonAsyncService);
+        when(commonAsyncService.leaseGoldCoins(anyString(), eq(1L), eq(10L)))
+                .thenReturn(CompletableFuture.completedFuture(10L));
+        when(commonAsyncService.releaseGoldCoins(anyString(), anyLong(), anyLong(), anyList()))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("rpc")),
+                        CompletableFuture.completedFuture(true));
+
+        assertTrue(idleManager.deduct(1L, 3).block());
+        Thread.sleep(2);
+        idleManager.releaseIdle();
+        assertEquals(1, idleManager.getPendingReleaseCount());
+        // 重试间隔未到时关闭，关闭流程用同一个归还id同步归还
+        idleManager.onApplicationEvent(new ContextClosedEvent(new GenericApplicationContext()));
+
+        ArgumentCaptor<String> releaseIds = ArgumentCaptor.forClass(String.class);
+        verify(commonAsyncService, times(2)).releaseGoldCoins(releaseIds.capture(), eq(1L), eq(7L), anyList());
+        List<String> ids = releaseIds.getAllValues();
+        assertEquals(ids.get(0), ids.get(1));
+        assertEquals(0, idleManager.getPendingReleaseCount());
+    }
+
+    private static void waitUntilReleased(BalanceLeaseManager manager) {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (manager.getPendingReleaseCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.onSpinWait();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package icu.yeguo.apigateway.body;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MultipartFieldScannerTest {
+
+    private static final String BOUNDARY = "----WebKitFormBoundary7MA4YWxkTrZu0gW";
+    private static final Set<String> FIELDS = Set.of("accessKey", "signature");
+
+    private static byte[] body(byte[] file) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(("preamble\r\n--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"qr.png\"\r\n"
+                + "Content-Type: image/png\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+        out.writeBytes(file);
+        out.writeBytes(("\r\n--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"accessKey\"\r\n\r\n"
+                + "7F48461FA9DB04287F8DF2C21CE39BB7"
+                + "\r\n--" + BOUNDARY + "\r\n"
+                + "content-disposition: form-data; name=signature\r\n\r\n"
+                + "0b5e4c5d6a7a1f1d2c3b4a5968778695"
+                + "\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.UTF_8));
+        return out.toByteArray();
+    }
+
+    @Test
+    void extractsFieldsAtEverySplitPosition() {
+        // 文件内容中包含分隔符前缀，考察部分匹配回退
+        byte[] file = ("\r\n--" + BOUNDARY.substring(0, 10) + "\r\n----\r\n-").getBytes(StandardCharsets.UTF_8);
+        byte[] bytes = body(file);
+        for (int split = 0; split <= bytes.length; split++) {
+            MultipartFieldScanner scanner = new MultipartFieldScanner(BOUNDARY, FIELDS);
+            scanner.feed(bytes, 0, split);
+            scanner.feed(bytes, split, bytes.length - split);
+            assertTrue(scanner.isComplete(), "split at " + split);
+            assertEquals("7F48461FA9DB04287F8DF2C21CE39BB7", scanner.getField("accessKey"));
+            assertEquals("0b5e4c5d6a7a1f1d2c3b4a5968778695", scanner.getField("signature"));
+        }
+    }
+
+    @Test
+    void stopsAtCloseDelimiterWhenFieldMissing() {
+        String body = "--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"accessKey\"\r\n\r\n"
+                + "ak\r\n--" + BOUNDARY + "--\r\n";
+        MultipartFieldScanner scanner = new MultipartFieldScanner(BOUNDARY, FIELDS);
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        assertTrue(scanner.feed(bytes, 0, bytes.length));
+        assertEquals("ak", scanner.getField("accessKey"));
+        assertNull(scanner.getField("signature"));
+    }
+
+    @Test
+    void ignoresOversizedValue() {
+        String body = "--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"accessKey\"\r\n\r\n"
+                + "x".repeat(100) + "\r\n--" + BOUNDARY + "--\r\n";
+        MultipartFieldScanner scanner = new MultipartFieldScanner(BOUNDARY, FIELDS, 16);
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        scanner.feed(bytes, 0, bytes.length);
+        assertNull(scanner.getField("accessKey"));
+    }
+
+    @Test
+    void parsesQuotedBoundary() {
+        assertEquals(BOUNDARY, MultipartFieldScanner.getBoundary("multipart/form-data; boundary=\"" + BOUNDARY + "\""));
+        assertNull(MultipartFieldScanner.getBoundary("application/json"));
+    }
+
+    @Test
+    void forwardsOriginalBuffersUnchanged() {
+        byte[] file = new byte[256 * 1024];
+        Arrays.fill(file, (byte) '-');
+        byte[] bytes = body(file);
+        List<DataBuffer> chunks = new ArrayList<>();
+        for (int i = 0; i < bytes.length; i += 8192) {
+            chunks.add(DefaultDataBufferFactory.sharedInstance.wrap(
+                    Arrays.copyOfRange(bytes, i, Math.min(bytes.length, i + 8192))));
+        }
+        ScannedBody scannedBody = ScannedBody.scan(Flux.fromIterable(chunks),
+                new MultipartFieldScanner(BOUNDARY, FIELDS)).block();
+        assertNotNull(scannedBody);
+        assertEquals("7F48461FA9DB04287F8DF2C21CE39BB7", scannedBody.getField("accessKey"));
+
+        DataBuffer joined = DataBufferUtils.join(scannedBody.getBody()).block();
+        assertNotNull(joined);
+        byte[] forwarded = new byte[joined.readableByteCount()];
+        joined.read(forwarded);
+        assertArrayEquals(bytes, forwarded);
+    }
+}
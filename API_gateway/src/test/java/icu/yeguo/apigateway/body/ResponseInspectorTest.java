@@ -0,0 +1,56 @@
+package icu.yeguo.apigateway.body;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static icu.yeguo.apigateway.body.ResponseInspector.Outcome.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ResponseInspectorTest {
+
+    private static ResponseInspector.Outcome inspect(String content, int split) {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        ResponseInspector inspector = new ResponseInspector();
+        ResponseInspector.Outcome outcome = inspector.feed(bytes, 0, split);
+        if (outcome == null) {
+            outcome = inspector.feed(bytes, split, bytes.length - split);
+        }
+        return outcome != null ? outcome : inspector.finish();
+    }
+
+    private static void assertOutcome(ResponseInspector.Outcome expected, String content) {
+        int length = content.getBytes(StandardCharsets.UTF_8).length;
+        for (int split = 0; split <= length; split++) {
+            assertEquals(expected, inspect(content, split), content + " split at " + split);
+        }
+    }
+
+    @Test
+    void classifiesTopLevelCode() {
+        assertOutcome(SUCCESS, "{\"code\":200,\"result\":{\"city\":\"北京\"},\"msg\":\"ok\"}");
+        assertOutcome(FAILURE, " {\"code\" : 500, \"msg\":\"上游错误\"}");
+        assertOutcome(SUCCESS, "{\"result\":{\"code\":500,\"list\":[{\"code\":1}]},\"msg\":\"a\\\"code\\\"\",\"code\":200}");
+        assertOutcome(SUCCESS, "{\"code\":\"200\"}");
+        assertOutcome(SUCCESS, "{\"code\":200}");
+    }
+
+    @Test
+    void missingCodeIsFailure() {
+        assertOutcome(FAILURE, "{\"result\":null,\"msg\":\"code\"}");
+        assertOutcome(FAILURE, "{\"code\":null}");
+    }
+
+    @Test
+    void detectsSvgPrefix() {
+        assertOutcome(SUCCESS, "<svg width=\"100\" xmlns=\"http://www.w3.org/2000/svg\"><rect/></svg>");
+        assertOutcome(UNKNOWN, "<html><body>error</body></html>");
+    }
+
+    @Test
+    void unparseableIsUnknown() {
+        assertOutcome(UNKNOWN, "Internal Server Error");
+        assertOutcome(UNKNOWN, "[1,2,3]");
+        assertOutcome(UNKNOWN, "{\"code\":");
+    }
+}
@@ -0,0 +1,52 @@
+package icu.yeguo.apigateway.cache;
+
+import icu.yeguo.apicommon.model.dto.InterfaceRoute;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResponseCacheTest {
+
+    private final ResponseCache responseCache = new ResponseCache(1024 * 1024, 1024, 0.1);
+
+    @Test
+    void keyIgnoresCredentialsAndParameterOrder() {
+        String first = responseCache.key(MockServerHttpRequest
+                .get("/api/weather?city=hangzhou&accessKey=a&signature=s&day=1").build());
+        String second = responseCache.key(MockServerHttpRequest
+                .get("/api/weather?day=1&signature=t&city=hangzhou&accessKey=b").build());
+        assertEquals("/api/weather?city=hangzhou&day=1", first);
+        assertEquals(first, second);
+    }
+
+    @Test
+    void onlyGetWithTtlIsCacheable() {
+        InterfaceRoute route = new InterfaceRoute();
+        route.setCacheTtl(60);
+        assertTrue(responseCache.isCacheable(MockServerHttpRequest.get("/api/weather").build(), route));
+        assertFalse(responseCache.isCacheable(MockServerHttpRequest.post("/api/weather").build(), route));
+        route.setCacheTtl(0);
+        assertFalse(responseCache.isCacheable(MockServerHttpRequest.get("/api/weather").build(), route));
+    }
+
+    @Test
+    void entriesExpireSlightlyEarly() {
+        InterfaceRoute route = new InterfaceRoute();
+        route.setCacheTtl(100);
+        for (int i = 0; i < 20; i++) {
+            responseCache.put("k" + i, route, MediaType.APPLICATION_JSON, "{}".getBytes(StandardCharsets.UTF_8));
+            CachedResponse cached = responseCache.get("k" + i);
+            assertNotNull(cached);
+            assertTrue(cached.getTtlNanos() <= TimeUnit.SECONDS.toNanos(100));
+            assertTrue(cached.getTtlNanos() >= TimeUnit.SECONDS.toNanos(90));
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package icu.yeguo.apigateway.cache;
+
+import icu.yeguo.apigateway.body.ResponseInspector;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SingleFlightTest {
+
+    private final SingleFlight singleFlight = new SingleFlight(1000);
+
+    @Test
+    void followersShareLeaderResponse() {
+        SingleFlight.Flight leader = singleFlight.join("/api/weather?city=hangzhou");
+        SingleFlight.Flight follower = singleFlight.join("/api/weather?city=hangzhou");
+        assertTrue(leader.isLeader());
+        assertFalse(follower.isLeader());
+
+        SharedResponse response = new SharedResponse(HttpStatus.OK, MediaType.APPLICATION_JSON, new byte[0],
+                ResponseInspector.Outcome.SUCCESS);
+        leader.complete(response);
+        assertSame(response, follower.await().block().orElseThrow());
+        // 结束后新的请求重新访问上游
+        assertTrue(singleFlight.join("/api/weather?city=hangzhou").isLeader());
+    }
+
+    @Test
+    void followersFallBackWhenLeaderFails() {
+        SingleFlight.Flight leader = singleFlight.join("/api/ip");
+        SingleFlight.Flight follower = singleFlight.join("/api/ip");
+        leader.complete(null);
+        assertSame(Optional.empty(), follower.await().block());
+    }
+}
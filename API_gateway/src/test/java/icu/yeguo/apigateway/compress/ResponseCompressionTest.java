@@ -0,0 +1,47 @@
+package icu.yeguo.apigateway.compress;
+
+import icu.yeguo.apicommon.model.dto.InterfaceRoute;
+import icu.yeguo.apigateway.route.RouteTable;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ResponseCompressionTest {
+
+    private final ResponseCompression compression = new ResponseCompression(true, 1024,
+            List.of("application/json", "text/*"));
+    private final InterfaceRoute route = new InterfaceRoute();
+
+    @BeforeEach
+    void setUp() {
+        RouteTable routeTable = mock(RouteTable.class);
+        when(routeTable.get("http://localhost:8081/api/image")).thenReturn(route);
+        ReflectionTestUtils.setField(compression, "routeTable", routeTable);
+        ReflectionTestUtils.setField(compression, "baseUrl", "http://localhost:8081");
+    }
+
+    @Test
+    void compressesTextTypesOnly() {
+        assertTrue(compression.shouldCompress("/api/today", "application/json;charset=UTF-8", null));
+        assertTrue(compression.shouldCompress("/api/today", "text/html", null));
+        assertFalse(compression.shouldCompress("/api/today", "image/png", null));
+        assertFalse(compression.shouldCompress("/api/today", null, null));
+        // 上游已压缩的不再压缩
+        assertFalse(compression.shouldCompress("/api/today", "application/json", "gzip"));
+    }
+
+    @Test
+    void interfaceCanOptOut() {
+        route.setCompressible(1);
+        assertTrue(compression.shouldCompress("/api/image", "application/json", null));
+        route.setCompressible(0);
+        assertFalse(compression.shouldCompress("/api/image", "application/json", null));
+    }
+}
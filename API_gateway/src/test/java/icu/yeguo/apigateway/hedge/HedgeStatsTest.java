@@ -0,0 +1,39 @@
+package icu.yeguo.apigateway.hedge;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HedgeStatsTest {
+
+    @Test
+    void p95AvailableAfterMinSamples() {
+        HedgeStats stats = new HedgeStats(0.05, 50);
+        for (int i = 1; i < 50; i++) {
+            stats.record(i);
+        }
+        assertEquals(-1, stats.getP95());
+        for (int i = 50; i <= 100; i++) {
+            stats.record(i);
+        }
+        // 100 个样本 1~100，最近一次重新计算在第 96 个样本
+        long p95 = stats.getP95();
+        assertTrue(p95 >= 90 && p95 <= 95, "p95:" + p95);
+    }
+
+    @Test
+    void hedgesLimitedByBudget() {
+        HedgeStats stats = new HedgeStats(0.05, 50);
+        int hedged = 0;
+        for (int i = 0; i < 1000; i++) {
+            stats.onRequest();
+            if (stats.tryHedge()) {
+                hedged++;
+            }
+        }
+        assertEquals(50, hedged, 3);
+        assertFalse(stats.tryHedge());
+    }
+}
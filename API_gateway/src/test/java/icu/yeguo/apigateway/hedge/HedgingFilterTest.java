@@ -0,0 +1,289 @@
+package icu.yeguo.apigateway.hedge;
+
+import icu.yeguo.apicommon.model.dto.InterfaceRoute;
+import icu.yeguo.apigateway.route.RouteTable;
+import icu.yeguo.apigateway.route.UpstreamPool;
+import icu.yeguo.apigateway.route.UpstreamPoolFilter;
+import icu.yeguo.apigateway.route.UpstreamPools;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.NettyRoutingFilter;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Mono;
+import reactor.netty.Connection;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.client.PrematureCloseException;
+import reactor.netty.http.server.HttpServer;
+
+import java.net.ServerSocket;
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.CLIENT_RESPONSE_CONN_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR;
+
+/**
+ * 两个桩上游，UpstreamPoolFilter 选出原请求实例，HedgingFilter 在 p95(50ms)后向另一个实例对冲
+ */
+class HedgingFilterTest {
+
+    private static final String PATH = "/api/weather";
+    private static final long P95_MILLIS = 50;
+    private static final HttpClient HTTP_CLIENT = HttpClient.create();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final InterfaceRoute route = new InterfaceRoute();
+    private HedgingFilter hedgingFilter;
+    private UpstreamPoolFilter upstreamPoolFilter;
+    private UpstreamPools upstreamPools;
+    private DisposableServer primaryServer;
+    private DisposableServer hedgeServer;
+
+    @BeforeAll
+    static void warmUp() {
+        // 首次请求要初始化事件循环和连接池，耗时远超对冲延迟
+        DisposableServer server = HttpServer.create()
+                .host("127.0.0.1")
+                .port(0)
+                .handle((req, res) -> res.sendString(Mono.just("ok")))
+                .bindNow();
+        try {
+            HTTP_CLIENT.get().uri("http://127.0.0.1:" + server.port()).responseContent().aggregate().asString()
+                    .block(Duration.ofSeconds(5));
+        } finally {
+            server.disposeNow();
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        route.setId(1L);
+        route.setUrl("http://gateway" + PATH);
+        route.setIsIdempotent(1);
+        RouteTable routeTable = mock(RouteTable.class);
+        when(routeTable.get(route.getUrl())).thenReturn(route);
+        NettyRoutingFilter nettyRoutingFilter = mock(NettyRoutingFilter.class);
+        when(nettyRoutingFilter.getHeadersFilters()).thenReturn(List.of());
+
+        hedgingFilter = new HedgingFilter(true, 1, 1, 10, meterRegistry);
+        ReflectionTestUtils.setField(hedgingFilter, "baseUrl", "http://gateway");
+        ReflectionTestUtils.setField(hedgingFilter, "routeTable", routeTable);
+        ReflectionTestUtils.setField(hedgingFilter, "httpClient", HTTP_CLIENT);
+        ReflectionTestUtils.setField(hedgingFilter, "nettyRoutingFilter", nettyRoutingFilter);
+        ReflectionTestUtils.setField(hedgingFilter, "httpClientProperties", new HttpClientProperties());
+        // 已有耗时样本，p95 为 50ms
+        HedgeStats hedgeStats = new HedgeStats(1, 1);
+        hedgeStats.record(TimeUnit.MILLISECONDS.toNanos(P95_MILLIS));
+        Map<Long, HedgeStats> stats = getStats();
+        stats.put(route.getId(), hedgeStats);
+        upstreamPoolFilter = new UpstreamPoolFilter();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<Long, HedgeStats> getStats() {
+        return (Map<Long, HedgeStats>) ReflectionTestUtils.getField(hedgingFilter, "stats");
+    }
+
+    @AfterEach
+    void tearDown() {
+        for (DisposableServer server : new DisposableServer[]{primaryServer, hedgeServer}) {
+            if (server != null) {
+                server.disposeNow();
+            }
+        }
+    }
+
+    /**
+     * 桩上游：等待 delay 后返回 200，fail 为 true 时等待后直接断开连接
+     */
+    private static DisposableServer stub(String name, Duration delay, boolean fail, AtomicInteger arrivals,
+                                         CountDownLatch closed) {
+        return HttpServer.create()
+                .host("127.0.0.1")
+                .port(0)
+                .handle((req, res) -> {
+                    arrivals.incrementAndGet();
+                    res.withConnection(connection -> connection.onDispose(closed::countDown));
+                    if (fail) {
+                        return Mono.delay(delay).then(Mono.fromRunnable(
+                                () -> res.withConnection(Connection::dispose))).then(Mono.never());
+                    }
+                    return Mono.delay(delay).then(res.header("X-Upstream", name).sendString(Mono.just(name)).then());
+                })
+                .bindNow();
+    }
+
+    private static URI uri(DisposableServer server) {
+        return URI.create("http://127.0.0.1:" + server.port());
+    }
+
+    private static URI closedPort() throws Exception {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return URI.create("http://127.0.0.1:" + socket.getLocalPort());
+        }
+    }
+
+    /**
+     * 对冲实例先被摘除，UpstreamPoolFilter 只会选 primary 作为原请求实例，对冲时仍会选中它
+     */
+    private UpstreamPool pool(URI primary, URI hedge) {
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("yeguo.gateway.upstream.pools.default[0]", primary.toString())
+                .withProperty("yeguo.gateway.upstream.pools.default[1]", hedge.toString());
+        upstreamPools = new UpstreamPools(environment, 10000);
+        ReflectionTestUtils.setField(hedgingFilter, "upstreamPools", upstreamPools);
+        ReflectionTestUtils.setField(upstreamPoolFilter, "upstreamPools", upstreamPools);
+        UpstreamPool pool = upstreamPools.get(UpstreamPools.DEFAULT_POOL);
+        pool.getInstances()[1].eject(10000);
+        return pool;
+    }
+
+    /**
+     * UpstreamPoolFilter -> HedgingFilter -> 读取生效响应的响应体
+     */
+    private MockServerWebExchange forward(AtomicReference<String> body) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get(PATH + "?city=beijing"));
+        exchange.getAttributes().put(GATEWAY_REQUEST_URL_ATTR,
+                URI.create(UpstreamPools.SCHEME + "://" + UpstreamPools.DEFAULT_POOL + PATH + "?city=beijing"));
+        // 与网关的过滤器链一样在订阅时才执行
+        GatewayFilterChain write = e -> Mono.defer(() -> {
+            Connection connection = e.getAttribute(CLIENT_RESPONSE_CONN_ATTR);
+            return connection.inbound().receive().aggregate().asString().doOnNext(body::set).then();
+        });
+        upstreamPoolFilter.filter(exchange, e -> hedgingFilter.filter(e, write)).block(Duration.ofSeconds(5));
+        return exchange;
+    }
+
+    private static void awaitOutstanding(UpstreamPool pool) throws InterruptedException {
+        // doFinally 在完成信号传给 block 之后执行
+        for (int i = 0; i < 100 && outstanding(pool) != 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, outstanding(pool));
+    }
+
+    private static int outstanding(UpstreamPool pool) {
+        int total = 0;
+        for (UpstreamPool.Instance instance : pool.getInstances()) {
+            total += instance.getOutstanding();
+        }
+        return total;
+    }
+
+    private double counter(String name) {
+        return meterRegistry.counter(name).count();
+    }
+
+    @Test
+    void hedgeWinsAndPrimaryConnectionDisposed() throws Exception {
+        AtomicInteger primaryArrivals = new AtomicInteger();
+        AtomicInteger hedgeArrivals = new AtomicInteger();
+        CountDownLatch primaryClosed = new CountDownLatch(1);
+        primaryServer = stub("primary", Duration.ofSeconds(2), false, primaryArrivals, primaryClosed);
+        hedgeServer = stub("hedge", Duration.ZERO, false, hedgeArrivals, new CountDownLatch(1));
+        UpstreamPool pool = pool(uri(primaryServer), uri(hedgeServer));
+        AtomicReference<String> body = new AtomicReference<>();
+
+        MockServerWebExchange exchange = forward(body);
+
+        // 原请求 2s 后才返回，生效的是对冲请求
+        assertEquals("hedge", body.get());
+        assertEquals("hedge", exchange.getResponse().getHeaders().getFirst("X-Upstream"));
+        assertSame(pool.getInstances()[1], routedInstance(exchange, pool));
+        assertEquals(1, primaryArrivals.get());
+        assertEquals(1, hedgeArrivals.get());
+        // 原请求被取消，连接关闭
+        assertTrue(primaryClosed.await(1, TimeUnit.SECONDS));
+        assertEquals(1, counter("yeguo.gateway.hedge.requests"));
+        assertEquals(1, counter("yeguo.gateway.hedge.wins"));
+        awaitOutstanding(pool);
+    }
+
+    private static UpstreamPool.Instance routedInstance(MockServerWebExchange exchange, UpstreamPool pool) {
+        URI url = exchange.getAttribute(GATEWAY_REQUEST_URL_ATTR);
+        for (UpstreamPool.Instance instance : pool.getInstances()) {
+            if (instance.getUri().getPort() == url.getPort()) {
+                return instance;
+            }
+        }
+        return null;
+    }
+
+    @Test
+    void primaryWinsBeforeDelayWithoutHedge() throws Exception {
+        AtomicInteger primaryArrivals = new AtomicInteger();
+        AtomicInteger hedgeArrivals = new AtomicInteger();
+        primaryServer = stub("primary", Duration.ZERO, false, primaryArrivals, new CountDownLatch(1));
+        hedgeServer = stub("hedge", Duration.ZERO, false, hedgeArrivals, new CountDownLatch(1));
+        UpstreamPool pool = pool(uri(primaryServer), uri(hedgeServer));
+        AtomicReference<String> body = new AtomicReference<>();
+
+        MockServerWebExchange exchange = forward(body);
+
+        assertEquals("primary", body.get());
+        assertSame(pool.getInstances()[0], routedInstance(exchange, pool));
+        // 超过对冲延迟后也不会再发对冲请求
+        Thread.sleep(P95_MILLIS * 3);
+        assertEquals(1, primaryArrivals.get());
+        assertEquals(0, hedgeArrivals.get());
+        assertEquals(0, counter("yeguo.gateway.hedge.requests"));
+        awaitOutstanding(pool);
+    }
+
+    @Test
+    void bothFailPropagatesPrimaryError() throws Exception {
+        // 对冲实例连接被拒绝先失败，原请求之后被上游断开，按原请求的错误处理
+        primaryServer = stub("primary", Duration.ofMillis(P95_MILLIS * 4), true, new AtomicInteger(),
+                new CountDownLatch(1));
+        UpstreamPool pool = pool(uri(primaryServer), closedPort());
+        AtomicReference<String> body = new AtomicReference<>();
+
+        RuntimeException e = assertThrows(RuntimeException.class, () -> forward(body));
+
+        // block 把受检异常包装为 ReactiveException
+        assertInstanceOf(PrematureCloseException.class, Exceptions.unwrap(e));
+        assertEquals(1, counter("yeguo.gateway.hedge.requests"));
+        assertEquals(0, counter("yeguo.gateway.hedge.wins"));
+        awaitOutstanding(pool);
+    }
+
+    @Test
+    void recordsLatencyFromClientRequestStart() throws Exception {
+        primaryServer = stub("primary", Duration.ofSeconds(2), false, new AtomicInteger(), new CountDownLatch(1));
+        hedgeServer = stub("hedge", Duration.ZERO, false, new AtomicInteger(), new CountDownLatch(1));
+        pool(uri(primaryServer), uri(hedgeServer));
+        HedgeStats hedgeStats = new HedgeStats(1, 1);
+        hedgeStats.record(TimeUnit.MILLISECONDS.toNanos(P95_MILLIS));
+        getStats().put(route.getId(), hedgeStats);
+
+        forward(new AtomicReference<>());
+
+        // 对冲生效，本次样本包含对冲延迟，不是对冲请求自身的耗时
+        long[] samples = (long[]) ReflectionTestUtils.getField(hedgeStats, "samples");
+        assertEquals(2L, ReflectionTestUtils.getField(hedgeStats, "count"));
+        assertTrue(samples[1] >= TimeUnit.MILLISECONDS.toNanos(P95_MILLIS));
+    }
+}
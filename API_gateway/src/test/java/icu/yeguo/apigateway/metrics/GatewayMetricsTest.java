@@ -0,0 +1,34 @@
+package icu.yeguo.apigateway.metrics;
+
+import icu.yeguo.apigateway.accesslog.AccessLog;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class GatewayMetricsTest {
+
+    @Test
+    void reusesTimersPerStageInterfaceAndResult() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        GatewayMetrics metrics = new GatewayMetrics(registry);
+
+        metrics.record(GatewayMetrics.STAGE_ROUTE, 1L, 100);
+        metrics.record(GatewayMetrics.STAGE_ROUTE, 1L, 100);
+        metrics.record(GatewayMetrics.STAGE_ROUTE, 2L, 100);
+        metrics.record(GatewayMetrics.STAGE_ROUTE, null, 100);
+        assertEquals(2, registry.get("yeguo.gateway.stage").tag("interface", "1").timer().count());
+        assertEquals(1, registry.get("yeguo.gateway.stage").tag("interface", "none").timer().count());
+
+        AccessLog accessLog = new AccessLog();
+        accessLog.setInterfaceInfoId(1L);
+        accessLog.setResult("success");
+        metrics.recordRequest(accessLog);
+        metrics.recordRequest(accessLog);
+        accessLog.setResult(null);
+        metrics.recordRequest(accessLog);
+        assertEquals(2, registry.get("yeguo.gateway.requests").tag("result", "success").timer().count());
+        assertEquals(1, registry.get("yeguo.gateway.requests").tag("result", "unknown").timer().count());
+        assertEquals(5, registry.getMeters().size());
+    }
+}
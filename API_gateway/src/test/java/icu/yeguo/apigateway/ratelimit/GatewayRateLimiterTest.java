@@ -0,0 +1,35 @@
+package icu.yeguo.apigateway.ratelimit;
+
+import icu.yeguo.apicommon.model.dto.InterfaceRoute;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+class GatewayRateLimiterTest {
+
+    @SuppressWarnings("unchecked")
+    private static GatewayRateLimiter localLimiter() {
+        return new GatewayRateLimiter("local", 0, 0, 100, mock(ObjectProvider.class), mock(ObjectProvider.class));
+    }
+
+    private static InterfaceRoute route(int rateLimit) {
+        InterfaceRoute route = new InterfaceRoute();
+        route.setId(1L);
+        route.setRateLimit(rateLimit);
+        return route;
+    }
+
+    @Test
+    void sharesBucketUntilRateLimitChanges() {
+        GatewayRateLimiter limiter = localLimiter();
+        for (int i = 0; i < 2; i++) {
+            assertTrue(limiter.acquireInterface(route(2)).block());
+        }
+        assertFalse(limiter.acquireInterface(route(2)).block());
+        // 限额变更后换成新的桶
+        assertTrue(limiter.acquireInterface(route(3)).block());
+    }
+}
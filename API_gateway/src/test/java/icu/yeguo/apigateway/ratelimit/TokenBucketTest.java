@@ -0,0 +1,31 @@
+package icu.yeguo.apigateway.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenBucketTest {
+
+    @Test
+    void allowsBurstThenRefillsAtRate() {
+        TokenBucket bucket = new TokenBucket(10, 5);
+        long now = 0;
+        for (int i = 0; i < 5; i++) {
+            assertTrue(bucket.tryAcquire(now));
+        }
+        assertFalse(bucket.tryAcquire(now));
+        // 10/s 即每 100ms 补充一个令牌
+        now += TimeUnit.MILLISECONDS.toNanos(100);
+        assertTrue(bucket.tryAcquire(now));
+        assertFalse(bucket.tryAcquire(now));
+        // 空闲足够久后最多恢复到 burst
+        now += TimeUnit.SECONDS.toNanos(10);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(bucket.tryAcquire(now));
+        }
+        assertFalse(bucket.tryAcquire(now));
+    }
+}
@@ -0,0 +1,55 @@
+package icu.yeguo.apigateway.resilience;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdaptiveLimiterTest {
+
+    private static final long RTT = TimeUnit.MILLISECONDS.toNanos(10);
+
+    /**
+     * 占满上限后完成一次调用
+     */
+    private static void saturatedCall(AdaptiveLimiter limiter, long rttNanos, boolean dropped) {
+        while (limiter.tryAcquire()) {
+            // 占满
+        }
+        limiter.release(rttNanos, dropped);
+        while (limiter.getInflight() > 0) {
+            limiter.release(-1, false);
+        }
+    }
+
+    @Test
+    void growsWhileLatencyStableAndShrinksWhenItRises() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(10, 2, 100, 1.5, 0);
+        for (int i = 0; i < 50; i++) {
+            saturatedCall(limiter, RTT, false);
+        }
+        int grown = limiter.getLimit();
+        assertTrue(grown > 10, "耗时稳定时上限应增大:" + grown);
+        // 耗时升高到基准的 4 倍，上限收缩
+        for (int i = 0; i < 10; i++) {
+            saturatedCall(limiter, RTT * 4, false);
+        }
+        assertTrue(limiter.getLimit() < grown, "耗时升高时上限应减小:" + limiter.getLimit());
+    }
+
+    @Test
+    void backsOffOnDropAndIgnoresIdleSamples() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(20, 2, 100, 1.5, 0);
+        saturatedCall(limiter, -1, true);
+        assertEquals(18, limiter.getLimit());
+        // 并发远未用满时不根据耗时调整
+        for (int i = 0; i < 50; i++) {
+            assertTrue(limiter.tryAcquire());
+            limiter.release(RTT * (i % 2 == 0 ? 1 : 10), false);
+        }
+        assertEquals(18, limiter.getLimit());
+        assertEquals(0, limiter.getInflight());
+    }
+}
@@ -0,0 +1,164 @@
+package icu.yeguo.apigateway.resilience;
+
+import icu.yeguo.apicommon.model.dto.InterfaceRoute;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import reactor.core.Disposable;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class UpstreamGuardTest {
+
+    private static InterfaceRoute route(long id) {
+        InterfaceRoute route = new InterfaceRoute();
+        route.setId(id);
+        return route;
+    }
+
+    private static ConcurrencyLimiters limiters(boolean enabled) {
+        return new ConcurrencyLimiters(enabled, 2, 2, 10, 1.5, 1, 50);
+    }
+
+    private static UpstreamPermit admitted(UpstreamGuard guard, long id) {
+        AtomicReference<UpstreamPermit> permit = new AtomicReference<>();
+        StepVerifier.create(guard.enter(route(id)))
+                .assertNext(p -> {
+                    assertNull(p.getRejection());
+                    permit.set(p);
+                })
+                .verifyComplete();
+        return permit.get();
+    }
+
+    private static void assertRejected(UpstreamGuard guard, long id, String rejection) {
+        StepVerifier.create(guard.enter(route(id)))
+                .assertNext(p -> assertEquals(rejection, p.getRejection()))
+                .verifyComplete();
+    }
+
+    @Test
+    void opensAfterUpstreamFailuresOnly() {
+        UpstreamGuard guard = new UpstreamGuard(50, 5000, 100, 4, 4, 60000, 1, 10, limiters(false));
+        // 没有访问上游的请求不计入统计
+        for (int i = 0; i < 10; i++) {
+            admitted(guard, 1).release();
+        }
+        for (int i = 0; i < 4; i++) {
+            UpstreamPermit permit = admitted(guard, 1);
+            permit.upstreamStarted();
+            permit.upstreamCompleted(i % 2 == 0 ? HttpStatus.BAD_GATEWAY : null,
+                    i % 2 == 0 ? null : new TimeoutException());
+            permit.release();
+        }
+        assertRejected(guard, 1, UpstreamPermit.REJECTED_CIRCUIT_OPEN);
+        // 其他接口不受影响
+        admitted(guard, 2).release();
+    }
+
+    @Test
+    void rejectsWhenBulkheadFullUntilReleased() {
+        UpstreamGuard guard = new UpstreamGuard(50, 5000, 100, 4, 4, 60000, 1, 2, limiters(false));
+        UpstreamPermit first = admitted(guard, 1);
+        UpstreamPermit second = admitted(guard, 1);
+        assertRejected(guard, 1, UpstreamPermit.REJECTED_BULKHEAD_FULL);
+        first.release();
+        // 重复归还无效
+        first.release();
+        UpstreamPermit third = admitted(guard, 1);
+        assertRejected(guard, 1, UpstreamPermit.REJECTED_BULKHEAD_FULL);
+        second.release();
+        third.release();
+    }
+
+    @Test
+    void rejectsWhenQueueTimesOut() {
+        ConcurrencyLimiters limiters = limiters(true);
+        UpstreamGuard guard = new UpstreamGuard(50, 5000, 100, 4, 4, 60000, 1, 10, limiters);
+        UpstreamPermit first = admitted(guard, 1);
+        UpstreamPermit second = admitted(guard, 1);
+        // 上限为 2，排队等待 50ms 超时后拒绝
+        StepVerifier.create(guard.enter(route(1)))
+                .expectSubscription()
+                .expectNoEvent(Duration.ofMillis(30))
+                .assertNext(p -> assertEquals(UpstreamPermit.REJECTED_CONCURRENCY_LIMITED, p.getRejection()))
+                .verifyComplete();
+        AdaptiveLimiter limiter = limiters.get(1L);
+        assertEquals(2, limiter.getInflight());
+        assertEquals(0, limiter.getQueued());
+        first.release();
+        second.release();
+        assertEquals(0, limiter.getInflight());
+    }
+
+    @Test
+    void admitsQueuedRequestWhenReleased() {
+        UpstreamGuard guard = new UpstreamGuard(50, 5000, 100, 4, 4, 60000, 1, 10, limiters(true));
+        UpstreamPermit first = admitted(guard, 1);
+        UpstreamPermit second = admitted(guard, 1);
+        StepVerifier.create(guard.enter(route(1)))
+                .expectSubscription()
+                .then(first::release)
+                .assertNext(p -> {
+                    assertNull(p.getRejection());
+                    p.release();
+                })
+                .verifyComplete();
+        second.release();
+    }
+
+    @Test
+    void rejectsWithoutQueueingWhenQueueFull() {
+        ConcurrencyLimiters limiters = limiters(true);
+        UpstreamGuard guard = new UpstreamGuard(50, 5000, 100, 4, 4, 60000, 1, 10, limiters);
+        UpstreamPermit first = admitted(guard, 1);
+        UpstreamPermit second = admitted(guard, 1);
+        Disposable queued = guard.enter(route(1)).subscribe();
+        // 队列已满(1 个)时立即拒绝，不等到排队超时
+        StepVerifier.create(guard.enter(route(1)))
+                .assertNext(p -> assertEquals(UpstreamPermit.REJECTED_CONCURRENCY_LIMITED, p.getRejection()))
+                .expectComplete()
+                .verify(Duration.ofMillis(20));
+        queued.dispose();
+        first.release();
+        second.release();
+        assertEquals(0, limiters.get(1L).getInflight());
+    }
+
+    @Test
+    void releasesPermitsWhenCancelledWhileQueued() throws InterruptedException {
+        ConcurrencyLimiters limiters = limiters(true);
+        UpstreamGuard guard = new UpstreamGuard(50, 5000, 100, 4, 4, 1, 1, 10, limiters);
+        for (int i = 0; i < 4; i++) {
+            UpstreamPermit permit = admitted(guard, 1);
+            permit.upstreamStarted();
+            permit.upstreamCompleted(HttpStatus.BAD_GATEWAY, null);
+            permit.release();
+        }
+        Thread.sleep(5);
+        // 半开状态只允许 1 个试探请求，它在排队时被取消
+        // 上游耗时样本可能调高了上限，占满当前上限让请求排队
+        AdaptiveLimiter limiter = limiters.get(1L);
+        int held = 0;
+        while (limiter.tryAcquire()) {
+            held++;
+        }
+        StepVerifier.create(guard.enter(route(1)))
+                .expectSubscription()
+                .thenCancel()
+                .verify();
+        assertEquals(0, limiter.getQueued());
+        for (int i = 0; i < held; i++) {
+            limiter.release(-1, false);
+        }
+        assertEquals(0, limiter.getInflight());
+        // 熔断器试探名额已归还
+        admitted(guard, 1).release();
+        assertEquals(0, limiter.getInflight());
+    }
+}
@@ -0,0 +1,56 @@
+package icu.yeguo.apigateway.route;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class UpstreamPoolTest {
+
+    private final UpstreamPool pool = new UpstreamPool("default",
+            List.of(URI.create("http://10.0.0.1:8082"), URI.create("http://10.0.0.2:8082")));
+
+    @Test
+    void choosesInstanceWithFewerOutstandingRequests() {
+        UpstreamPool.Instance busy = pool.getInstances()[0];
+        UpstreamPool.Instance idle = pool.getInstances()[1];
+        busy.acquire();
+        busy.acquire();
+        for (int i = 0; i < 20; i++) {
+            assertSame(idle, pool.choose());
+        }
+        // 排除空闲实例时只能选繁忙实例
+        assertSame(busy, pool.choose(idle));
+    }
+
+    @Test
+    void skipsEjectedInstanceUntilAllEjected() {
+        UpstreamPool.Instance first = pool.getInstances()[0];
+        UpstreamPool.Instance second = pool.getInstances()[1];
+        second.acquire();
+        first.eject(60_000);
+        assertSame(second, pool.choose());
+        // 全部摘除时仍选择未完成请求最少的实例
+        second.eject(60_000);
+        assertSame(first, pool.choose());
+    }
+
+    @Test
+    void singleInstanceCannotBeExcluded() {
+        UpstreamPool single = new UpstreamPool("single", List.of(URI.create("http://10.0.0.3:8082")));
+        UpstreamPool.Instance instance = single.choose();
+        assertSame(instance, single.choose());
+        assertNull(single.choose(instance));
+    }
+
+    @Test
+    void resolveKeepsPathAndQuery() {
+        URI resolved = UpstreamPoolFilter.resolve(URI.create("pool://default/api/common/today?city=%E6%9D%AD"),
+                URI.create("http://10.0.0.1:8082"));
+        assertEquals("http://10.0.0.1:8082/api/common/today?city=%E6%9D%AD", resolved.toString());
+    }
+}
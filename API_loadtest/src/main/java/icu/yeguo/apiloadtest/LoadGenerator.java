@@ -0,0 +1,185 @@
+package icu.yeguo.apiloadtest;
+
+import icu.yeguo.apicommon.utils.SignatureUtil;
+import icu.yeguo.apiloadtest.stub.StubCommonService;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 开环压测：按固定速率在计划时间发出请求，不等待上一个请求完成，各接口轮流请求
+ * 延迟从计划发出时间开始计算，客户端或网关跟不上时排队时间也计入，避免协调遗漏(coordinated omission)
+ */
+@Slf4j
+public final class LoadGenerator {
+
+    private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+    /**
+     * 连接失败、超时等没有响应状态码的失败
+     */
+    public static final int ERROR_STATUS = -1;
+
+    private final HttpClient httpClient;
+    private final ConnectionProvider connectionProvider;
+    private final LoadTestOptions options;
+    private final List<Target> targets = new ArrayList<>();
+    private final AtomicLong inFlight = new AtomicLong();
+    private final AtomicBoolean errorLogged = new AtomicBoolean();
+    /**
+     * 计划发出时间早于该时间的请求属于预热，结果丢弃
+     */
+    private volatile long warmupEnd;
+
+    public LoadGenerator(int gatewayPort, List<StubInterface> interfaces, LoadTestOptions options) {
+        this.options = options;
+        this.connectionProvider = ConnectionProvider.builder("loadtest")
+                .maxConnections(options.getConnections())
+                .pendingAcquireMaxCount(-1)
+                .build();
+        this.httpClient = HttpClient.create(connectionProvider)
+                .baseUrl("http://127.0.0.1:" + gatewayPort)
+                .responseTimeout(Duration.ofMillis(options.getTimeout()));
+        String signature = SignatureUtil.sign(StubCommonService.ACCESS_KEY + StubCommonService.SECRET_KEY);
+        for (StubInterface stubInterface : interfaces) {
+            targets.add(new Target(stubInterface.getName(), stubInterface.getPath()
+                    + "?accessKey=" + StubCommonService.ACCESS_KEY + "&signature=" + signature,
+                    stubInterface.getIdempotent() == 1));
+        }
+    }
+
+    /**
+     * 预热后压测指定时长，等待未完成的请求结束，返回各接口结果
+     */
+    public List<Result> run() {
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / options.getRate();
+        long start = System.nanoTime();
+        warmupEnd = start + TimeUnit.SECONDS.toNanos(options.getWarmup());
+        long end = warmupEnd + TimeUnit.SECONDS.toNanos(options.getDuration());
+        long sent = 0;
+        log.info("开始压测，速率:{}次/s，预热:{}s，时长:{}s", options.getRate(), options.getWarmup(),
+                options.getDuration());
+        while (true) {
+            long intended = start + sent * intervalNanos;
+            if (intended >= end) {
+                break;
+            }
+            long wait = intended - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            send(targets.get((int) (sent % targets.size())), intended, sent);
+            sent++;
+        }
+        long drainDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(options.getTimeout());
+        while (inFlight.get() > 0 && System.nanoTime() < drainDeadline) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+        long measuredNanos = end - warmupEnd;
+        List<Result> results = new ArrayList<>();
+        for (Target target : targets) {
+            results.add(target.result(measuredNanos));
+        }
+        connectionProvider.disposeLater().block(Duration.ofSeconds(10));
+        return results;
+    }
+
+    private void send(Target target, long intended, long sequence) {
+        inFlight.incrementAndGet();
+        httpClient.get()
+                .uri(target.unique ? target.uri + "&seq=" + sequence : target.uri)
+                .responseSingle((response, body) -> body.asByteArray()
+                        .defaultIfEmpty(new byte[0])
+                        .map(bytes -> response.status()))
+                .subscribe(status -> target.complete(intended, status.code()),
+                        e -> {
+                            if (errorLogged.compareAndSet(false, true)) {
+                                log.warn("压测请求失败，之后的失败只计数", e);
+                            }
+                            target.complete(intended, ERROR_STATUS);
+                        });
+    }
+
+    private final class Target {
+        private final String name;
+        private final String uri;
+        /**
+         * 幂等接口每个请求带不同的参数，避免被网关合并成一次上游请求
+         */
+        private final boolean unique;
+        private final Recorder recorder = new Recorder(HIGHEST_TRACKABLE_NANOS, 3);
+        private final Map<Integer, LongAdder> errors = new ConcurrentHashMap<>();
+
+        private Target(String name, String uri, boolean unique) {
+            this.name = name;
+            this.uri = uri;
+            this.unique = unique;
+        }
+
+        private void complete(long intended, int status) {
+            inFlight.decrementAndGet();
+            if (intended < warmupEnd) {
+                return;
+            }
+            if (status == HttpResponseStatus.OK.code()) {
+                recorder.recordValue(Math.min(System.nanoTime() - intended, HIGHEST_TRACKABLE_NANOS));
+            } else {
+                errors.computeIfAbsent(status, key -> new LongAdder()).increment();
+            }
+        }
+
+        private Result result(long measuredNanos) {
+            Map<Integer, Long> errorCounts = new TreeMap<>();
+            errors.forEach((status, count) -> errorCounts.put(status, count.sum()));
+            return new Result(name, recorder.getIntervalHistogram(), errorCounts, measuredNanos);
+        }
+    }
+
+    @Getter
+    public static final class Result {
+        private final String name;
+        private final Histogram histogram;
+        /**
+         * 各状态码的失败次数
+         */
+        private final Map<Integer, Long> errors;
+        private final long measuredNanos;
+
+        private Result(String name, Histogram histogram, Map<Integer, Long> errors, long measuredNanos) {
+            this.name = name;
+            this.histogram = histogram;
+            this.errors = errors;
+            this.measuredNanos = measuredNanos;
+        }
+
+        public long getErrorCount() {
+            long count = 0;
+            for (long value : errors.values()) {
+                count += value;
+            }
+            return count;
+        }
+
+        /**
+         * 成功请求的吞吐(次/s)
+         */
+        public double getThroughput() {
+            return histogram.getTotalCount() * 1e9 / measuredNanos;
+        }
+    }
+}
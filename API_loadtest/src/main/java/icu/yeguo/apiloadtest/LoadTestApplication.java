@@ -0,0 +1,122 @@
+package icu.yeguo.apiloadtest;
+
+import icu.yeguo.apigateway.ApiGatewayApplication;
+import icu.yeguo.apigateway.route.RouteTable;
+import icu.yeguo.apiloadtest.stub.StubCommonService;
+import icu.yeguo.apiloadtest.stub.StubConfiguration;
+import icu.yeguo.apiloadtest.stub.StubUpstream;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 网关全链路压测：进程内启动上游桩、后台服务桩(Dubbo injvm)和网关，对网关发起开环压测，按接口输出延迟分位数和吞吐
+ * 不需要 Nacos、MySQL 和第三方接口；injvm 调用不经过网络，Dubbo 的网络开销不在结果内
+ * <p>
+ * java -jar API_loadtest/target/API_loadtest-0.0.1.jar --loadtest.rate=2000 --loadtest.duration=60
+ */
+@Slf4j
+public class LoadTestApplication {
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        LoadTestOptions options = LoadTestOptions.parse(args);
+        List<StubInterface> interfaces = StubInterface.parse(options.getInterfaces());
+        List<StubUpstream> upstreams = new ArrayList<>();
+        try {
+            List<String> upstreamUrls = new ArrayList<>();
+            for (int i = 0; i < Math.max(options.getUpstreams(), 1); i++) {
+                StubUpstream upstream = new StubUpstream(interfaces, options.getUpstreamThreads(),
+                        options.getUpstreamTailPercent(), options.getUpstreamTailMillis());
+                upstreams.add(upstream);
+                upstreamUrls.add("http://127.0.0.1:" + upstream.getPort());
+            }
+            Map<String, String> properties = new LinkedHashMap<>();
+            properties.put("server.port", "0");
+            properties.put("yeguo.gateway.upstream.pools.default", String.join(",", upstreamUrls));
+            properties.put("dubbo.registry.address", "N/A");
+            properties.put("dubbo.consumer.scope", "local");
+            properties.put("dubbo.consumer.check", "false");
+            properties.put("loadtest.interfaces", options.getInterfaces());
+            // 所有请求共用一个 accessKey，默认不按 accessKey 限流
+            properties.put("yeguo.gateway.rate-limit.key-rate", "0");
+            // 关闭逐请求的访问日志输出，避免日志成为瓶颈
+            properties.put("logging.level.ACCESS_LOG", "off");
+            // 命令行中的网关配置优先
+            properties.putAll(options.getGatewayProperties());
+            List<String> gatewayArgs = new ArrayList<>();
+            properties.forEach((name, value) -> gatewayArgs.add("--" + name + "=" + value));
+
+            ConfigurableApplicationContext context = new SpringApplicationBuilder(ApiGatewayApplication.class,
+                    StubConfiguration.class)
+                    .run(gatewayArgs.toArray(new String[0]));
+            try {
+                awaitRoutes(context.getBean(RouteTable.class));
+                int gatewayPort = ((WebServerApplicationContext) context).getWebServer().getPort();
+                List<LoadGenerator.Result> results = new LoadGenerator(gatewayPort, interfaces, options).run();
+                report(results, System.out);
+                write(results, Paths.get(options.getOutput()));
+                System.out.println("后台桩调用次数 " + context.getBean(StubCommonService.class).summary());
+            } finally {
+                context.close();
+            }
+        } finally {
+            upstreams.forEach(StubUpstream::close);
+        }
+    }
+
+    /**
+     * 启动时首次加载路由表早于桩服务暴露，压测前等待路由表加载完成
+     */
+    private static void awaitRoutes(RouteTable routeTable) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (!routeTable.isLoaded()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("路由表加载超时");
+            }
+            Thread.sleep(200);
+            routeTable.refresh();
+        }
+    }
+
+    private static void report(List<LoadGenerator.Result> results, PrintStream out) {
+        out.printf("%-12s %10s %8s %10s %10s %10s %10s %10s %10s  %s%n", "接口", "成功", "失败", "吞吐/s",
+                "p50(ms)", "p90(ms)", "p99(ms)", "p99.9(ms)", "max(ms)", "失败状态码(-1 为无响应)");
+        for (LoadGenerator.Result result : results) {
+            Histogram histogram = result.getHistogram();
+            out.printf("%-12s %10d %8d %10.1f %10.2f %10.2f %10.2f %10.2f %10.2f  %s%n", result.getName(),
+                    histogram.getTotalCount(), result.getErrorCount(), result.getThroughput(),
+                    millis(histogram.getValueAtPercentile(50)), millis(histogram.getValueAtPercentile(90)),
+                    millis(histogram.getValueAtPercentile(99)), millis(histogram.getValueAtPercentile(99.9)),
+                    millis(histogram.getMaxValue()), result.getErrors().isEmpty() ? "" : result.getErrors());
+        }
+    }
+
+    /**
+     * 每个接口输出完整的延迟分布(.hgrm，单位 ms)，可用 HdrHistogram 的绘图工具对比多次结果
+     */
+    private static void write(List<LoadGenerator.Result> results, Path output) throws IOException {
+        Files.createDirectories(output);
+        for (LoadGenerator.Result result : results) {
+            try (PrintStream out = new PrintStream(Files.newOutputStream(output.resolve(result.getName() + ".hgrm")))) {
+                result.getHistogram().outputPercentileDistribution(out, 1e6);
+            }
+        }
+        log.info("延迟分布已输出到:{}", output.toAbsolutePath());
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+}
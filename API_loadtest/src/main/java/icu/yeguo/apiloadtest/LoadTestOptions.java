@@ -0,0 +1,108 @@
+package icu.yeguo.apiloadtest;
+
+import lombok.Getter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 压测参数，均以 --loadtest. 开头；其余参数原样传给网关，可覆盖网关配置(如 --yeguo.gateway.billing.mode=lease)
+ */
+@Getter
+public final class LoadTestOptions {
+    /**
+     * 总请求速率(次/s)，按固定间隔发出请求，不等待上一个请求完成
+     */
+    private int rate = 1000;
+    /**
+     * 计入结果的压测时长(s)
+     */
+    private int duration = 30;
+    /**
+     * 预热时长(s)，预热期间的结果丢弃
+     */
+    private int warmup = 5;
+    private String interfaces = "fast:0:256,slow:50:1024,large:5:262144";
+    /**
+     * 压测客户端最大连接数
+     */
+    private int connections = 500;
+    /**
+     * 上游桩的工作线程数，0-不限；设置后上游同时处理的请求数有上限，超出的排队，用于压测过载时的表现
+     */
+    private int upstreamThreads = 0;
+    /**
+     * 上游桩实例数，多个实例组成网关的 default 实例池
+     */
+    private int upstreams = 1;
+    /**
+     * 上游长尾：每个请求有 upstreamTailPercent% 的概率额外延迟 upstreamTailMillis，格式 百分比:延迟(ms)
+     */
+    private double upstreamTailPercent = 0;
+    private long upstreamTailMillis = 0;
+    /**
+     * 单个请求超时时间(ms)
+     */
+    private long timeout = 10000;
+    /**
+     * 各接口延迟分布(.hgrm)的输出目录
+     */
+    private String output = "loadtest-result";
+    private final Map<String, String> gatewayProperties = new LinkedHashMap<>();
+
+    public static LoadTestOptions parse(String[] args) {
+        LoadTestOptions options = new LoadTestOptions();
+        for (String arg : args) {
+            int index = arg.indexOf('=');
+            if (!arg.startsWith("--") || index < 0) {
+                throw new IllegalArgumentException("参数格式为 --name=value，实际为:" + arg);
+            }
+            if (!arg.startsWith("--loadtest.")) {
+                options.gatewayProperties.put(arg.substring(2, index), arg.substring(index + 1));
+                continue;
+            }
+            String name = arg.substring("--loadtest.".length(), index);
+            String value = arg.substring(index + 1);
+            switch (name) {
+                case "rate":
+                    options.rate = Integer.parseInt(value);
+                    break;
+                case "duration":
+                    options.duration = Integer.parseInt(value);
+                    break;
+                case "warmup":
+                    options.warmup = Integer.parseInt(value);
+                    break;
+                case "interfaces":
+                    options.interfaces = value;
+                    break;
+                case "connections":
+                    options.connections = Integer.parseInt(value);
+                    break;
+                case "upstream-threads":
+                    options.upstreamThreads = Integer.parseInt(value);
+                    break;
+                case "upstreams":
+                    options.upstreams = Integer.parseInt(value);
+                    break;
+                case "upstream-tail":
+                    String[] tail = value.split(":");
+                    if (tail.length != 2) {
+                        throw new IllegalArgumentException("上游长尾格式为 百分比:延迟(ms)，实际为:" + value);
+                    }
+                    options.upstreamTailPercent = Double.parseDouble(tail[0]);
+                    options.upstreamTailMillis = Long.parseLong(tail[1]);
+                    break;
+                case "timeout":
+                    options.timeout = Long.parseLong(value);
+                    break;
+                case "output":
+                    options.output = value;
+                    break;
+                default:
+                    throw new IllegalArgumentException("未知的压测参数:" + arg);
+            }
+        }
+        return options;
+    }
+}
@@ -0,0 +1,54 @@
+package icu.yeguo.apiloadtest;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 压测用的桩接口，格式 name:延迟(ms):响应大小(字节)[:缓存时间(s)[:是否幂等]]，多个用逗号分隔
+ * 例如 fast:0:256,slow:50:1024,cached:20:4096:60,hedged:50:1024:0:1
+ */
+@Getter
+public final class StubInterface {
+    private final long id;
+    private final String name;
+    private final long latencyMillis;
+    private final int responseBytes;
+    private final int cacheTtl;
+    /**
+     * 1-幂等，网关会对慢请求发出对冲请求；压测时每个请求带不同参数，不会被合并
+     */
+    private final int idempotent;
+
+    private StubInterface(long id, String name, long latencyMillis, int responseBytes, int cacheTtl,
+                          int idempotent) {
+        this.id = id;
+        this.name = name;
+        this.latencyMillis = latencyMillis;
+        this.responseBytes = responseBytes;
+        this.cacheTtl = cacheTtl;
+        this.idempotent = idempotent;
+    }
+
+    public String getPath() {
+        return "/api/loadtest/" + name;
+    }
+
+    public static List<StubInterface> parse(String spec) {
+        List<StubInterface> interfaces = new ArrayList<>();
+        long id = 1;
+        for (String item : spec.split(",")) {
+            String[] parts = item.trim().split(":");
+            if (parts.length < 3) {
+                throw new IllegalArgumentException("桩接口格式为 name:延迟(ms):响应大小(字节)[:缓存时间(s)[:是否幂等]]，实际为:"
+                        + item);
+            }
+            int cacheTtl = parts.length > 3 ? Integer.parseInt(parts[3]) : 0;
+            int idempotent = parts.length > 4 ? Integer.parseInt(parts[4]) : 0;
+            interfaces.add(new StubInterface(id++, parts[0], Long.parseLong(parts[1]), Integer.parseInt(parts[2]),
+                    cacheTtl, idempotent));
+        }
+        return interfaces;
+    }
+}
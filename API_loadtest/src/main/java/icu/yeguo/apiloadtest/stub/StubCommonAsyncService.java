@@ -0,0 +1,78 @@
+package icu.yeguo.apiloadtest.stub;
+
+import icu.yeguo.apicommon.model.dto.AuthPrincipal;
+import icu.yeguo.apicommon.model.dto.Charge;
+import icu.yeguo.apicommon.service.CommonAsyncService;
+import org.apache.dubbo.config.annotation.DubboService;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 与后台 CommonAsyncServiceImpl 一致，委托给 CommonService 桩
+ */
+@DubboService
+public class StubCommonAsyncService implements CommonAsyncService {
+
+    private final StubCommonService commonService;
+
+    public StubCommonAsyncService(StubCommonService commonService) {
+        this.commonService = commonService;
+    }
+
+    @Override
+    public CompletableFuture<AuthPrincipal> getAuthPrincipal(String accessKey) {
+        return CompletableFuture.completedFuture(commonService.getAuthPrincipal(accessKey));
+    }
+
+    @Override
+    public CompletableFuture<Map<String, AuthPrincipal>> getAuthPrincipals(Collection<String> accessKeys) {
+        return CompletableFuture.completedFuture(commonService.getAuthPrincipals(accessKeys));
+    }
+
+    @Override
+    public CompletableFuture<Long> invokingCount(long interfaceInfoId) {
+        return CompletableFuture.completedFuture(commonService.invokingCount(interfaceInfoId));
+    }
+
+    @Override
+    public CompletableFuture<Void> recordInvocations(Map<Long, Long> counts) {
+        commonService.recordInvocations(counts);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public CompletableFuture<Long> getInterfaceInfoId(String url) {
+        return CompletableFuture.completedFuture(commonService.getInterfaceInfoId(url));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> deductGoldCoin(String requestId, Long userId, Long interfaceInfoId,
+                                                     Long amount) {
+        return CompletableFuture.completedFuture(
+                commonService.deductGoldCoin(requestId, userId, interfaceInfoId, amount));
+    }
+
+    @Override
+    public CompletableFuture<List<Boolean>> deductGoldCoins(List<Charge> charges) {
+        return CompletableFuture.completedFuture(commonService.deductGoldCoins(charges));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> returnGoldCoins(String requestId) {
+        return CompletableFuture.completedFuture(commonService.returnGoldCoins(requestId));
+    }
+
+    @Override
+    public CompletableFuture<Long> leaseGoldCoins(String leaseId, Long userId, Long amount) {
+        return CompletableFuture.completedFuture(commonService.leaseGoldCoins(leaseId, userId, amount));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> releaseGoldCoins(String releaseId, Long userId, Long amount,
+                                                       List<String> leaseIds) {
+        return CompletableFuture.completedFuture(commonService.releaseGoldCoins(releaseId, userId, amount, leaseIds));
+    }
+}
@@ -0,0 +1,177 @@
+package icu.yeguo.apiloadtest.stub;
+
+import icu.yeguo.apicommon.model.dto.AuthPrincipal;
+import icu.yeguo.apicommon.model.dto.Charge;
+import icu.yeguo.apicommon.model.dto.InterfaceRoute;
+import icu.yeguo.apicommon.service.CommonService;
+import icu.yeguo.apicommon.utils.SignatureUtil;
+import icu.yeguo.apiloadtest.StubInterface;
+import org.apache.dubbo.config.annotation.DubboService;
+import org.springframework.beans.factory.annotation.Value;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 代替后台的 CommonService 桩，通过 injvm 协议提供给网关，不依赖 Nacos 和 MySQL
+ * 只有一个余额无限的压测用户，扣费、返还、计数只做统计
+ */
+@DubboService
+public class StubCommonService implements CommonService {
+
+    public static final String ACCESS_KEY = "loadtest-access-key";
+    public static final String SECRET_KEY = "loadtest-secret-key";
+    private static final long USER_ID = 1L;
+
+    private final String baseUrl;
+    private final List<StubInterface> interfaces;
+
+    private final LongAdder deducted = new LongAdder();
+    private final LongAdder returned = new LongAdder();
+    private final LongAdder invoked = new LongAdder();
+    private final LongAdder leased = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+
+    public StubCommonService(@Value("${yeguo.gateway.base-url}") String baseUrl,
+                             @Value("${loadtest.interfaces}") String interfaces) {
+        this.baseUrl = baseUrl;
+        this.interfaces = StubInterface.parse(interfaces);
+    }
+
+    @Override
+    public String sayHello(String name) {
+        return "hello " + name;
+    }
+
+    @Override
+    public AuthPrincipal getAuthPrincipal(String accessKey) {
+        if (!ACCESS_KEY.equals(accessKey)) {
+            return null;
+        }
+        return new AuthPrincipal(USER_ID, ACCESS_KEY, SignatureUtil.sign(ACCESS_KEY + SECRET_KEY),
+                SignatureUtil.replayKey(SECRET_KEY), 0, Long.MAX_VALUE);
+    }
+
+    @Override
+    public Map<String, AuthPrincipal> getAuthPrincipals(Collection<String> accessKeys) {
+        batches.increment();
+        Map<String, AuthPrincipal> principals = new HashMap<>();
+        for (String accessKey : accessKeys) {
+            AuthPrincipal principal = getAuthPrincipal(accessKey);
+            if (principal != null) {
+                principals.put(accessKey, principal);
+            }
+        }
+        return principals;
+    }
+
+    @Override
+    public String generateSignature(String message) {
+        return SignatureUtil.sign(message);
+    }
+
+    @Override
+    public Long invokingCount(long interfaceInfoId) {
+        invoked.increment();
+        return 0L;
+    }
+
+    @Override
+    public void recordInvocations(Map<Long, Long> counts) {
+        batches.increment();
+        counts.values().forEach(invoked::add);
+    }
+
+    @Override
+    public Long getInterfaceInfoId(String url) {
+        for (StubInterface stubInterface : interfaces) {
+            if ((baseUrl + stubInterface.getPath()).equals(url)) {
+                return stubInterface.getId();
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public boolean deductGoldCoin(String requestId, Long userId, Long interfaceInfoId, Long amount) {
+        deducted.increment();
+        return true;
+    }
+
+    @Override
+    public List<Boolean> deductGoldCoins(List<Charge> charges) {
+        batches.increment();
+        deducted.add(charges.size());
+        return new ArrayList<>(Collections.nCopies(charges.size(), Boolean.TRUE));
+    }
+
+    @Override
+    public boolean returnGoldCoins(String requestId) {
+        returned.increment();
+        return true;
+    }
+
+    @Override
+    public long leaseGoldCoins(String leaseId, Long userId, Long amount) {
+        leased.increment();
+        return amount;
+    }
+
+    @Override
+    public boolean releaseGoldCoins(String releaseId, Long userId, Long amount, List<String> leaseIds) {
+        return true;
+    }
+
+    @Override
+    public List<InterfaceRoute> listInterfaceRoutes() {
+        List<InterfaceRoute> routes = new ArrayList<>();
+        for (StubInterface stubInterface : interfaces) {
+            InterfaceRoute route = new InterfaceRoute();
+            route.setId(stubInterface.getId());
+            route.setUrl(baseUrl + stubInterface.getPath());
+            route.setMethod("GET");
+            route.setInterfaceStatus(1);
+            route.setRequiredGoldCoins(1L);
+            route.setRateLimit(0);
+            route.setCacheTtl(stubInterface.getCacheTtl());
+            route.setIsIdempotent(stubInterface.getIdempotent());
+            routes.add(route);
+        }
+        return routes;
+    }
+
+    @Override
+    public String getInterfaceRouteVersion() {
+        return "loadtest";
+    }
+
+    @Override
+    public List<String> listHotAccessKeys(int limit) {
+        return limit > 0 ? List.of(ACCESS_KEY) : List.of();
+    }
+
+    @Override
+    public List<Long> listHotInterfaceIds(int limit) {
+        List<Long> ids = new ArrayList<>();
+        for (StubInterface stubInterface : interfaces) {
+            if (ids.size() >= limit) {
+                break;
+            }
+            ids.add(stubInterface.getId());
+        }
+        return ids;
+    }
+
+    /**
+     * 压测期间后台收到的调用次数
+     */
+    public String summary() {
+        return String.format("扣费:%d 返还:%d 计数:%d 租约:%d 批量调用:%d", deducted.sum(), returned.sum(),
+                invoked.sum(), leased.sum(), batches.sum());
+    }
+}
@@ -0,0 +1,12 @@
+package icu.yeguo.apiloadtest.stub;
+
+import org.apache.dubbo.config.spring.context.annotation.DubboComponentScan;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 与网关一起启动，注册后台服务桩
+ */
+@Configuration
+@DubboComponentScan("icu.yeguo.apiloadtest.stub")
+public class StubConfiguration {
+}
@@ -0,0 +1,86 @@
+package icu.yeguo.apiloadtest.stub;
+
+import icu.yeguo.apiloadtest.StubInterface;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 代替 API_interface 和第三方接口的上游桩，按配置的延迟返回固定大小的成功响应
+ * 指定工作线程数时按 API_interface 的方式阻塞等待，同时处理的请求数不超过线程数，超出的排队，用于模拟上游过载
+ * 指定长尾时按比例随机给请求追加延迟，模拟第三方接口的偶发慢请求
+ */
+@Slf4j
+public final class StubUpstream implements AutoCloseable {
+
+    private final DisposableServer server;
+    private final Scheduler workers;
+
+    /**
+     * @param threads     工作线程数，0-不阻塞，不限并发
+     * @param tailPercent 追加延迟的请求比例(%)
+     * @param tailMillis  追加的延迟(ms)
+     */
+    public StubUpstream(List<StubInterface> interfaces, int threads, double tailPercent, long tailMillis) {
+        this.workers = threads > 0 ? Schedulers.newBoundedElastic(threads, Integer.MAX_VALUE, "stub-upstream")
+                : null;
+        this.server = HttpServer.create()
+                .host("127.0.0.1")
+                .port(0)
+                .route(routes -> {
+                    for (StubInterface stubInterface : interfaces) {
+                        byte[] body = body(stubInterface.getResponseBytes());
+                        routes.get(stubInterface.getPath(), (request, response) -> {
+                            long latencyMillis = stubInterface.getLatencyMillis();
+                            if (tailPercent > 0 && ThreadLocalRandom.current().nextDouble() * 100 < tailPercent) {
+                                latencyMillis += tailMillis;
+                            }
+                            Duration latency = Duration.ofMillis(latencyMillis);
+                            Mono<byte[]> delayed;
+                            if (workers != null) {
+                                delayed = Mono.fromCallable(() -> {
+                                    Thread.sleep(latency.toMillis());
+                                    return body;
+                                }).subscribeOn(workers);
+                            } else {
+                                delayed = latency.isZero() ? Mono.just(body) : Mono.delay(latency).thenReturn(body);
+                            }
+                            return response.header("Content-Type", "application/json")
+                                    .sendByteArray(delayed);
+                        });
+                    }
+                })
+                .bindNow();
+        log.info("上游桩已启动，端口:{}，工作线程数:{}", server.port(), threads > 0 ? threads : "不限");
+    }
+
+    public int getPort() {
+        return server.port();
+    }
+
+    /**
+     * 与真实接口一致的成功响应，result 填充到指定大小
+     */
+    private static byte[] body(int size) {
+        String prefix = "{\"code\":200,\"msg\":\"ok\",\"result\":\"";
+        String suffix = "\"}";
+        int padding = Math.max(0, size - prefix.length() - suffix.length());
+        return (prefix + "x".repeat(padding) + suffix).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() {
+        server.disposeNow();
+        if (workers != null) {
+            workers.dispose();
+        }
+    }
+}
@@ -34,12 +34,18 @@ CREATE TABLE IF NOT EXISTS `interface_info`
     `invoking_count`      bigint(20) unsigned                                      NOT NULL DEFAULT '0' COMMENT '调用次数',
     `avatar_url`          varchar(1024) CHARACTER SET utf8 COLLATE utf8_unicode_ci NOT NULL DEFAULT 'https://cdn.jsdelivr.net/gh/ye-guo/Images/images/2.jpg' COMMENT '接口头像',
     `required_gold_coins` bigint(20) unsigned                                      NOT NULL DEFAULT '1' COMMENT '调用一次所需金币',
+    `rate_limit`          int(10) unsigned                                         NOT NULL DEFAULT '0' COMMENT '每秒最大请求数 0-不限流',
+    `cache_ttl`           int(10) unsigned                                         NOT NULL DEFAULT '0' COMMENT '响应缓存时间(s) 0-不缓存',
+    `is_idempotent`       tinyint(3) unsigned                                      NOT NULL DEFAULT '0' COMMENT '是否幂等 0-否 1-是',
+    `upstream_pool`       varchar(64)                                              NOT NULL DEFAULT 'default' COMMENT '上游实例池，对应网关 yeguo.gateway.upstream.pools 中的名称',
+    `compressible`        tinyint(3) unsigned                                      NOT NULL DEFAULT '1' COMMENT '是否压缩响应 0-否 1-是，图片等已压缩的响应设为 0',
     `request_header`      text CHARACTER SET utf8 COLLATE utf8_unicode_ci COMMENT '请求头',
     `response_header`     text CHARACTER SET utf8 COLLATE utf8_unicode_ci COMMENT '响应头',
     `create_time`         datetime                                                 NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
     `update_time`         datetime                                                 NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
     `is_deleted`          tinyint(3) unsigned                                      NOT NULL DEFAULT '0' COMMENT '逻辑删除 0-正常 1 删除',
-    PRIMARY KEY (`id`)
+    PRIMARY KEY (`id`),
+    KEY `idx_url` (`url`(255))
 ) ENGINE = InnoDB
   AUTO_INCREMENT = 1
   DEFAULT CHARSET = utf8
@@ -47,6 +53,29 @@ CREATE TABLE IF NOT EXISTS `interface_info`
 
 -- 数据导出被取消选择。
 
+-- 导出  表 api.billing_ledger 结构
+CREATE TABLE IF NOT EXISTS `billing_ledger`
+(
+    `id`                bigint(20) unsigned                                   NOT NULL AUTO_INCREMENT COMMENT '自增长id',
+    `request_id`        varchar(64) CHARACTER SET utf8 COLLATE utf8_unicode_ci NOT NULL COMMENT '网关请求id',
+    `user_id`           bigint(20) unsigned                                   NOT NULL COMMENT '用户id',
+    `interface_info_id` bigint(20) unsigned                                   NOT NULL COMMENT '接口id 0-余额租约/租约归还',
+    `amount`            bigint(20) unsigned                                   NOT NULL COMMENT '扣除金币数',
+    `status`            tinyint(3) unsigned                                   NOT NULL DEFAULT '0' COMMENT '状态 0-已扣费/租约未结清 1-已返还 2-租约已结清',
+    `create_time`       datetime                                              NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    `update_time`       datetime                                              NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+    PRIMARY KEY (`id`),
+    UNIQUE KEY `uk_request_id` (`request_id`),
+    KEY `idx_user_id` (`user_id`),
+    KEY `idx_create_time` (`create_time`),
+    KEY `idx_lease` (`interface_info_id`, `status`, `create_time`)
+) ENGINE = InnoDB
+  AUTO_INCREMENT = 1
+  DEFAULT CHARSET = utf8
+  COLLATE = utf8_unicode_ci COMMENT ='扣费流水表';
+
+-- 数据导出被取消选择。
+
 -- 导出  表 api.order_info 结构
 CREATE TABLE IF NOT EXISTS `order_info`
 (